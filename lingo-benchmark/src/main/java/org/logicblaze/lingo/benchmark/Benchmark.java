@@ -0,0 +1,160 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.benchmark;
+
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+import edu.emory.mathcs.backport.java.util.concurrent.helpers.Utils;
+
+/**
+ * A simple micro benchmark which times a number of operations performed by a
+ * number of threads after a warm up period to let the JIT compile the hot
+ * paths.
+ * 
+ * @version $Revision$
+ */
+public abstract class Benchmark {
+    private final String name;
+    private int threads = 1;
+    private int warmupOperations = 2000;
+    private int operations = 20000;
+
+    public Benchmark(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Runs the benchmark, printing and returning the number of operations per
+     * second
+     */
+    public double run() throws Exception {
+        setUp();
+        try {
+            execute(warmupOperations);
+            long elapsed = execute(operations);
+            long totalOperations = (long) operations * threads;
+            double seconds = elapsed / 1000000000.0;
+            double throughput = totalOperations / seconds;
+            double latency = (elapsed / 1000.0) * threads / totalOperations;
+            System.out.println(name + " threads: " + threads + " operations: " + totalOperations + " time: " + (elapsed / 1000000L) + " ms throughput: "
+                    + (long) throughput + " ops/sec mean latency: " + ((long) (latency * 10)) / 10.0 + " us");
+            return throughput;
+        }
+        finally {
+            tearDown();
+        }
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads which concurrently perform the operations
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getOperations() {
+        return operations;
+    }
+
+    /**
+     * Sets the number of timed operations performed by each thread
+     */
+    public void setOperations(int operations) {
+        this.operations = operations;
+    }
+
+    public int getWarmupOperations() {
+        return warmupOperations;
+    }
+
+    /**
+     * Sets the number of operations performed by each thread before the timed
+     * operations
+     */
+    public void setWarmupOperations(int warmupOperations) {
+        this.warmupOperations = warmupOperations;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected void setUp() throws Exception {
+    }
+
+    protected void tearDown() throws Exception {
+    }
+
+    /**
+     * Performs a single operation
+     * 
+     * @param thread
+     *            the index of the thread performing the operation
+     * @param iteration
+     *            the index of the operation within the thread
+     */
+    protected abstract void operation(int thread, int iteration) throws Exception;
+
+    /**
+     * Performs the given number of operations on each thread returning the
+     * elapsed time in nanoseconds
+     */
+    protected long execute(final int count) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threads);
+        final Exception[] failure = new Exception[1];
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            new Thread(name + "-" + i) {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < count; j++) {
+                            operation(thread, j);
+                        }
+                    }
+                    catch (Exception e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                    finally {
+                        end.countDown();
+                    }
+                }
+            }.start();
+        }
+        long startTime = Utils.nanoTime();
+        start.countDown();
+        end.await();
+        long elapsed = Utils.nanoTime() - startTime;
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        return elapsed;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.benchmark;
+
+import org.logicblaze.lingo.jms.marshall.DefaultMarshaller;
+import org.logicblaze.lingo.jms.marshall.XStreamMarshaller;
+import org.logicblaze.lingo.util.DefaultTimeoutMap;
+import org.logicblaze.lingo.util.HashedWheelTimeoutMap;
+import org.logicblaze.lingo.util.LongTimeoutMap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs the benchmarks of the remoting hot paths. The names of the benchmarks
+ * to run can be passed as arguments, otherwise all of them are run.
+ * 
+ * @version $Revision$
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) {
+        Benchmarks benchmarks = new Benchmarks();
+        try {
+            benchmarks.run(args);
+        }
+        catch (Exception e) {
+            System.out.println("Caught: " + e);
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    public void run(String[] names) throws Exception {
+        List benchmarks = createBenchmarks();
+        for (Iterator iter = benchmarks.iterator(); iter.hasNext();) {
+            Benchmark benchmark = (Benchmark) iter.next();
+            if (isIncluded(benchmark, names)) {
+                benchmark.run();
+            }
+        }
+    }
+
+    protected List createBenchmarks() {
+        List answer = new ArrayList();
+        answer.add(new RemotingBenchmark("requestResponse.default.singleThreaded", new DefaultMarshaller(), false, false));
+        answer.add(new RemotingBenchmark("requestResponse.default.multiplexing", new DefaultMarshaller(), true, false));
+        answer.add(threads(new RemotingBenchmark("requestResponse.default.multiplexing.concurrent", new DefaultMarshaller(), true, false), 8));
+        answer.add(new RemotingBenchmark("requestResponse.xstream.multiplexing", new XStreamMarshaller(), true, false));
+        answer.add(new RemotingBenchmark("oneWay.default.singleThreaded", new DefaultMarshaller(), false, true));
+        answer.add(new RemotingBenchmark("oneWay.default.multiplexing", new DefaultMarshaller(), true, true));
+        answer.add(new TopicJoinBenchmark("topicJoin.3servers", 3));
+        answer.add(new TimeoutMapBenchmark("timeoutMap.default", new DefaultTimeoutMap(null, 1000L)));
+        answer.add(threads(new TimeoutMapBenchmark("timeoutMap.default.concurrent", new DefaultTimeoutMap(null, 1000L)), 8));
+        answer.add(new TimeoutMapBenchmark("timeoutMap.hashedWheel", new HashedWheelTimeoutMap(null, 1000L)));
+        answer.add(threads(new TimeoutMapBenchmark("timeoutMap.hashedWheel.concurrent", new HashedWheelTimeoutMap(null, 1000L)), 8));
+        answer.add(new LongTimeoutMapBenchmark("timeoutMap.long", new LongTimeoutMap(null, 1000L)));
+        answer.add(threads(new LongTimeoutMapBenchmark("timeoutMap.long.concurrent", new LongTimeoutMap(null, 1000L)), 8));
+        return answer;
+    }
+
+    protected Benchmark threads(Benchmark benchmark, int threads) {
+        benchmark.setThreads(threads);
+        return benchmark;
+    }
+
+    protected boolean isIncluded(Benchmark benchmark, String[] names) {
+        if (names.length == 0) {
+            return true;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (benchmark.getName().startsWith(names[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
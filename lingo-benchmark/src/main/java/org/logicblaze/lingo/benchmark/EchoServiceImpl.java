@@ -0,0 +1,53 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.benchmark;
+
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicLong;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @version $Revision$
+ */
+public class EchoServiceImpl implements EchoService {
+    private final String name;
+    private final AtomicLong pingCount = new AtomicLong();
+
+    public EchoServiceImpl(String name) {
+        this.name = name;
+    }
+
+    public String echo(String text) {
+        return text;
+    }
+
+    public void ping(String text) {
+        pingCount.incrementAndGet();
+    }
+
+    public Set getNames() {
+        Set answer = new HashSet();
+        answer.add(name);
+        return answer;
+    }
+
+    public long getPingCount() {
+        return pingCount.get();
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.benchmark;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.logicblaze.lingo.SimpleMetadataStrategy;
+import org.logicblaze.lingo.jms.JmsProducerConfig;
+import org.logicblaze.lingo.jms.JmsProxyFactoryBean;
+import org.logicblaze.lingo.jms.JmsServiceExporter;
+import org.logicblaze.lingo.jms.impl.SingleThreadedRequestor;
+import org.logicblaze.lingo.jms.marshall.Marshaller;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.Session;
+
+/**
+ * Measures the cost of invoking a method on a remote service through a proxy
+ * using an embedded, non persistent broker.
+ * 
+ * @version $Revision$
+ */
+public class RemotingBenchmark extends Benchmark {
+    public static final String BROKER_URL = "vm://localhost?broker.persistent=false";
+
+    private final Marshaller marshaller;
+    private final boolean multiplexing;
+    private final boolean oneWay;
+    private String payload;
+    private ConnectionFactory connectionFactory;
+    private JmsServiceExporter exporter;
+    private JmsProxyFactoryBean factory;
+    private EchoService proxy;
+
+    /**
+     * Creates a new benchmark
+     * 
+     * @param name
+     *            the name of the benchmark
+     * @param marshaller
+     *            the marshaller used by both the client and the server
+     * @param multiplexing
+     *            whether a multiplexing requestor is used rather than a single
+     *            threaded requestor which can only be used by one thread
+     * @param oneWay
+     *            whether one way methods are invoked rather than request
+     *            response methods
+     */
+    public RemotingBenchmark(String name, Marshaller marshaller, boolean multiplexing, boolean oneWay) {
+        super(name);
+        this.marshaller = marshaller;
+        this.multiplexing = multiplexing;
+        this.oneWay = oneWay;
+        setPayloadSize(100);
+    }
+
+    /**
+     * Sets the number of characters in the text sent with each invocation
+     */
+    public void setPayloadSize(int size) {
+        StringBuffer buffer = new StringBuffer(size);
+        for (int i = 0; i < size; i++) {
+            buffer.append((char) ('a' + (i % 26)));
+        }
+        payload = buffer.toString();
+    }
+
+    public void setThreads(int threads) {
+        if (!multiplexing && threads > 1) {
+            throw new IllegalArgumentException("A single threaded requestor can only be used by one thread");
+        }
+        super.setThreads(threads);
+    }
+
+    protected void setUp() throws Exception {
+        connectionFactory = createConnectionFactory();
+        Destination destination = new ActiveMQQueue("org.logicblaze.lingo.benchmark." + getName());
+
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(EchoService.class);
+        exporter.setService(new EchoServiceImpl(getName()));
+        exporter.setConnectionFactory(connectionFactory);
+        exporter.setDestination(destination);
+        exporter.setMarshaller(marshaller);
+        exporter.afterPropertiesSet();
+
+        factory = new JmsProxyFactoryBean();
+        factory.setServiceInterface(EchoService.class);
+        factory.setConnectionFactory(connectionFactory);
+        factory.setDestination(destination);
+        factory.setMarshaller(marshaller);
+        // lets make void methods one way
+        factory.setMetadataStrategy(new SimpleMetadataStrategy(true));
+        if (!multiplexing) {
+            JmsProducerConfig config = new JmsProducerConfig();
+            Connection connection = config.createConnection(connectionFactory);
+            Session session = config.createSession(connection);
+            factory.setRequestor(new SingleThreadedRequestor(connection, session, config.createMessageProducer(session), destination, true));
+        }
+        factory.afterPropertiesSet();
+        proxy = (EchoService) factory.getObject();
+    }
+
+    protected void tearDown() throws Exception {
+        factory.destroy();
+        exporter.destroy();
+    }
+
+    protected void operation(int thread, int iteration) throws Exception {
+        if (oneWay) {
+            proxy.ping(payload);
+        }
+        else {
+            String answer = proxy.echo(payload);
+            if (answer.length() != payload.length()) {
+                throw new IllegalStateException("Invalid response: " + answer);
+            }
+        }
+    }
+
+    protected ConnectionFactory createConnectionFactory() {
+        return new ActiveMQConnectionFactory(BROKER_URL);
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.benchmark;
+
+import org.logicblaze.lingo.util.TimeoutMap;
+
+/**
+ * Measures the cost of the put, get and remove operations performed on a
+ * {@link TimeoutMap} for each request, with one of the threads periodically
+ * purging the map as the scheduled purge task would.
+ * 
+ * @version $Revision$
+ */
+public class TimeoutMapBenchmark extends Benchmark {
+    private final TimeoutMap map;
+    private int purgeInterval = 1000;
+    private Object value = new Object();
+
+    public TimeoutMapBenchmark(String name, TimeoutMap map) {
+        super(name);
+        this.map = map;
+        setOperations(200000);
+        setWarmupOperations(20000);
+    }
+
+    public int getPurgeInterval() {
+        return purgeInterval;
+    }
+
+    /**
+     * Sets the number of operations the first thread performs between each
+     * purge of the map
+     */
+    public void setPurgeInterval(int purgeInterval) {
+        this.purgeInterval = purgeInterval;
+    }
+
+    protected void operation(int thread, int iteration) throws Exception {
+        String key = thread + ":" + iteration;
+        map.put(key, value, 60000L);
+        if (map.get(key) != value) {
+            throw new IllegalStateException("Value not found for key: " + key);
+        }
+        map.remove(key);
+        if (thread == 0 && iteration % purgeInterval == 0) {
+            map.purge();
+        }
+    }
+}
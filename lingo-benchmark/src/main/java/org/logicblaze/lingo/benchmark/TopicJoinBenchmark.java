@@ -0,0 +1,94 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.benchmark;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.logicblaze.lingo.DefaultResultJoinStrategy;
+import org.logicblaze.lingo.SimpleMetadataStrategy;
+import org.logicblaze.lingo.jms.JmsProxyFactoryBean;
+import org.logicblaze.lingo.jms.JmsServiceExporter;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+
+import java.util.Set;
+
+/**
+ * Measures the cost of invoking a method on many servers over a topic and
+ * joining their results together.
+ * 
+ * @version $Revision$
+ */
+public class TopicJoinBenchmark extends Benchmark {
+    private final int serverCount;
+    private JmsServiceExporter[] exporters;
+    private JmsProxyFactoryBean factory;
+    private EchoService proxy;
+
+    public TopicJoinBenchmark(String name, int serverCount) {
+        super(name);
+        this.serverCount = serverCount;
+        setOperations(2000);
+        setWarmupOperations(200);
+    }
+
+    protected void setUp() throws Exception {
+        ConnectionFactory connectionFactory = new ActiveMQConnectionFactory(RemotingBenchmark.BROKER_URL);
+        Destination destination = new ActiveMQTopic("org.logicblaze.lingo.benchmark." + getName());
+
+        exporters = new JmsServiceExporter[serverCount];
+        for (int i = 0; i < serverCount; i++) {
+            exporters[i] = new JmsServiceExporter();
+            exporters[i].setServiceInterface(EchoService.class);
+            exporters[i].setService(new EchoServiceImpl("server" + i));
+            exporters[i].setConnectionFactory(connectionFactory);
+            exporters[i].setDestination(destination);
+            exporters[i].afterPropertiesSet();
+        }
+
+        // lets unblock as soon as every server has responded
+        DefaultResultJoinStrategy joinStrategy = new DefaultResultJoinStrategy();
+        joinStrategy.setMinimumResults(serverCount);
+        joinStrategy.setMaximumResults(serverCount);
+        SimpleMetadataStrategy metadataStrategy = new SimpleMetadataStrategy(true);
+        metadataStrategy.setResultJoinStrategy(joinStrategy);
+
+        factory = new JmsProxyFactoryBean();
+        factory.setServiceInterface(EchoService.class);
+        factory.setConnectionFactory(connectionFactory);
+        factory.setDestination(destination);
+        factory.setMetadataStrategy(metadataStrategy);
+        factory.afterPropertiesSet();
+        proxy = (EchoService) factory.getObject();
+    }
+
+    protected void tearDown() throws Exception {
+        factory.destroy();
+        for (int i = 0; i < exporters.length; i++) {
+            exporters[i].destroy();
+        }
+    }
+
+    protected void operation(int thread, int iteration) throws Exception {
+        Set names = proxy.getNames();
+        if (names.size() != serverCount) {
+            throw new IllegalStateException("Expected " + serverCount + " results but got: " + names);
+        }
+    }
+}
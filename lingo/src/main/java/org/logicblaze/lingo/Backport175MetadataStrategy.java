@@ -18,6 +18,7 @@
 package org.logicblaze.lingo;
 
 import org.codehaus.backport175.reader.Annotations;
+import org.logicblaze.lingo.annotations.Cacheable;
 import org.logicblaze.lingo.annotations.EndSession;
 import org.logicblaze.lingo.annotations.OneWay;
 
@@ -53,6 +54,22 @@ public class Backport175MetadataStrategy extends SimpleMetadataStrategy {
         return super.isOneWayMethod(method);
     }
 
+    protected long getCacheTimeToLive(Method method) {
+        Cacheable cacheable = (Cacheable) Annotations.getAnnotation(Cacheable.class, method);
+        if (cacheable != null) {
+            return cacheable.timeToLive();
+        }
+        return super.getCacheTimeToLive(method);
+    }
+
+    protected int getCacheMaximumSize(Method method) {
+        Cacheable cacheable = (Cacheable) Annotations.getAnnotation(Cacheable.class, method);
+        if (cacheable != null) {
+            return cacheable.maximumSize();
+        }
+        return super.getCacheMaximumSize(method);
+    }
+
     protected boolean isStateful(Method method) {
         // TODO
         return super.isStateful(method);
@@ -18,13 +18,15 @@
 package org.logicblaze.lingo;
 
 import org.aopalliance.intercept.MethodInvocation;
-import org.logicblaze.lingo.util.LRUCache;
+import org.logicblaze.lingo.util.BoundedConcurrentCache;
 
 import java.lang.reflect.Method;
 import java.util.Map;
 
 /**
- * Provides caching of metadata for performance.
+ * Provides caching of metadata for performance. By default the cache is a
+ * {@link BoundedConcurrentCache} so that lookups by concurrent invocations do
+ * not block.
  * 
  * @version $Revision$
  */
@@ -46,10 +48,16 @@ public class CachingMetadataStrategy implements MetadataStrategy {
     }
 
     public MethodMetadata getMethodMetadata(Method method) {
-        MethodMetadata answer = (MethodMetadata) getCache().get(method);
+        Map map = cache;
+        if (map == null) {
+            map = getCache();
+        }
+        MethodMetadata answer = (MethodMetadata) map.get(method);
         if (answer == null) {
             answer = proxy.getMethodMetadata(method);
-            getCache().put(method, answer);
+            if (answer != null) {
+                map.put(method, answer);
+            }
         }
         return answer;
     }
@@ -60,14 +68,17 @@ public class CachingMetadataStrategy implements MetadataStrategy {
 
     // Properties
     // -------------------------------------------------------------------------
-    public Map getCache() {
+    public synchronized Map getCache() {
         if (cache == null) {
             cache = createCache();
         }
         return cache;
     }
 
-    public void setCache(Map cache) {
+    /**
+     * Sets the cache of metadata which must be safe for concurrent use
+     */
+    public synchronized void setCache(Map cache) {
         this.cache = cache;
     }
 
@@ -82,6 +93,6 @@ public class CachingMetadataStrategy implements MetadataStrategy {
     // Implementation methods
     // -------------------------------------------------------------------------
     protected Map createCache() {
-        return new LRUCache(getCacheSize());
+        return new BoundedConcurrentCache(getCacheSize());
     }
 }
@@ -30,10 +30,11 @@ import java.util.Map;
  * 
  * @version $Revision$
  */
-public class DefaultResultJoinStrategy implements ResultJoinStrategy {
+public class DefaultResultJoinStrategy implements TimeoutResultJoinStrategy {
 
     private int minimumResults = 1;
     private int maximumResults = 0;
+    private long timeout = 2000;
 
     /*
      * (non-Javadoc)
@@ -93,7 +94,7 @@ public class DefaultResultJoinStrategy implements ResultJoinStrategy {
 		if (currentResult == null) {
 			// if we don't have a result then continue waiting
 			return false;
-		} else if (waitSoFarMillis > 2000) {
+		} else if (waitSoFarMillis >= timeout) {
 			// we've exceeded the default timeout
 			return true;
 		} else {
@@ -101,7 +102,14 @@ public class DefaultResultJoinStrategy implements ResultJoinStrategy {
 			return false;
 		}
 	}
-	
+
+    public long getUnblockTimeout(RemoteInvocationResult currentResult) {
+        if (currentResult == null) {
+            return -1;
+        }
+        return timeout;
+    }
+
     public int getMaximumResults() {
         return maximumResults;
     }
@@ -118,4 +126,17 @@ public class DefaultResultJoinStrategy implements ResultJoinStrategy {
         this.minimumResults = minimiumResults;
     }
 
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the amount of time in milliseconds after which the calling thread
+     * is unblocked with the results received so far if there are not yet
+     * enough results to unblock it
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
 }
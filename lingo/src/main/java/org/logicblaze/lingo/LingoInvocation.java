@@ -29,6 +29,8 @@ public class LingoInvocation extends RemoteInvocation {
     private static final long serialVersionUID = -7584977401796151266L;
     
     private MethodMetadata metadata;
+    private int methodId;
+    private int methodTableHash;
 
     public LingoInvocation(MethodInvocation methodInvocation, MethodMetadata metadata) {
         super(methodInvocation);
@@ -50,4 +52,28 @@ public class LingoInvocation extends RemoteInvocation {
     public MethodMetadata getMetadata() {
         return metadata;
     }
+
+    /**
+     * Returns the ID of the method in the server's {@link MethodTable} or 0 if
+     * the method is identified by its name and parameter types
+     */
+    public int getMethodId() {
+        return methodId;
+    }
+
+    public void setMethodId(int methodId) {
+        this.methodId = methodId;
+    }
+
+    /**
+     * Returns the hash of the {@link MethodTable} which the
+     * {@link #getMethodId() method ID} was taken from
+     */
+    public int getMethodTableHash() {
+        return methodTableHash;
+    }
+
+    public void setMethodTableHash(int methodTableHash) {
+        this.methodTableHash = methodTableHash;
+    }
 }
@@ -18,31 +18,41 @@
 package org.logicblaze.lingo;
 
 import org.aopalliance.intercept.MethodInvocation;
+import org.logicblaze.lingo.util.BoundedConcurrentCache;
 import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationFactory;
 
 import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * A factory of remote invocation instances which includes the extra Lingo
- * metadata.
+ * metadata. Factories which add attributes to each invocation should override
+ * {@link #createRemoteInvocation(MethodInvocation, MethodMetadata)} which is
+ * used by clients that have already looked up the metadata of the method.
  * 
  * @version $Revision$
  */
 public class LingoRemoteInvocationFactory implements RemoteInvocationFactory {
     private static final MethodMetadata DEFAULT_METHOD_METADATA = new MethodMetadata(false);
+    private static final int DEFAULT_CACHE_SIZE = 5000;
 
     private MetadataStrategy metadataStrategy;
-    private Map cache = new HashMap();
+    private Map cache = new BoundedConcurrentCache(DEFAULT_CACHE_SIZE);
 
     public LingoRemoteInvocationFactory(MetadataStrategy metadataStrategy) {
         this.metadataStrategy = metadataStrategy;
     }
 
     public RemoteInvocation createRemoteInvocation(MethodInvocation methodInvocation) {
-        MethodMetadata metadata = getMethodMetadata(methodInvocation);
+        return createRemoteInvocation(methodInvocation, getMethodMetadata(methodInvocation));
+    }
+
+    /**
+     * Creates the invocation using the given metadata of the invoked method so
+     * that it does not have to be looked up again
+     */
+    public RemoteInvocation createRemoteInvocation(MethodInvocation methodInvocation, MethodMetadata metadata) {
         return new LingoInvocation(methodInvocation, metadata);
     }
 
@@ -54,8 +64,18 @@ public class LingoRemoteInvocationFactory implements RemoteInvocationFactory {
         this.metadataStrategy = metadataStrategy;
     }
 
-    protected synchronized MethodMetadata getMethodMetadata(MethodInvocation methodInvocation) {
-        Method method = methodInvocation.getMethod();
+    /**
+     * Returns the metadata of the invoked method, which is cached in a
+     * concurrent map so that concurrent invocations do not block
+     */
+    protected MethodMetadata getMethodMetadata(MethodInvocation methodInvocation) {
+        return getMethodMetadata(methodInvocation.getMethod());
+    }
+
+    /**
+     * Returns the metadata of the given method
+     */
+    public MethodMetadata getMethodMetadata(Method method) {
         MethodMetadata answer = (MethodMetadata) cache.get(method);
         if (answer == null) {
             if (metadataStrategy == null) {
@@ -65,7 +85,9 @@ public class LingoRemoteInvocationFactory implements RemoteInvocationFactory {
             else {
                 answer = metadataStrategy.getMethodMetadata(method);
             }
-            cache.put(method, answer);
+            if (answer != null) {
+                cache.put(method, answer);
+            }
         }
         return answer;
     }
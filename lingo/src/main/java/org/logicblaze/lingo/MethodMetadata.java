@@ -32,6 +32,8 @@ public class MethodMetadata implements Serializable {
     private boolean stateful;
     private boolean endSession;
     private boolean[] remoteParameters;
+    private transient long cacheTimeToLive;
+    private transient int cacheMaximumSize;
 
     public MethodMetadata(boolean oneWay) {
         this(oneWay, null);
@@ -49,6 +51,12 @@ public class MethodMetadata implements Serializable {
         this.endSession = endSession;
     }
 
+    public MethodMetadata(boolean oneWay, boolean[] remoteParameters, boolean stateful, boolean endSession, long cacheTimeToLive, int cacheMaximumSize) {
+        this(oneWay, remoteParameters, stateful, endSession);
+        this.cacheTimeToLive = cacheTimeToLive;
+        this.cacheMaximumSize = cacheMaximumSize;
+    }
+
     public boolean isOneWay() {
         return oneWay;
     }
@@ -76,4 +84,28 @@ public class MethodMetadata implements Serializable {
         return endSession;
     }
 
+    /**
+     * Returns true if the results of this method can be cached by the client
+     */
+    public boolean isCacheable() {
+        return cacheTimeToLive > 0 && !oneWay;
+    }
+
+    /**
+     * Returns the number of milliseconds a result of this method can be cached
+     * for by the client or 0 if it is not cacheable. This is only available on
+     * the client as it is not sent to the server.
+     */
+    public long getCacheTimeToLive() {
+        return cacheTimeToLive;
+    }
+
+    /**
+     * Returns the maximum number of results of this method, for different
+     * arguments, which are cached by the client
+     */
+    public int getCacheMaximumSize() {
+        return cacheMaximumSize;
+    }
+
 }
@@ -0,0 +1,147 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Represents a table of the methods of a service interface, ordered by their
+ * signatures, so that a method can be identified in a request by a small
+ * integer rather than by its name and parameter types. Method IDs start at 1
+ * so that an ID of 0 on a {@link LingoInvocation} means no ID is used.
+ * 
+ * <p/> The client obtains the signatures of the server's table when a proxy
+ * is created and uses {@link #createMethodIds(Class, String[])} to map each of
+ * its methods onto the server's IDs. Each invocation by ID also carries the
+ * {@link #getHash() hash} of the table so that the server can detect that its
+ * table has changed since the IDs were negotiated.
+ * 
+ * @version $Revision$
+ */
+public class MethodTable {
+
+    private static final Comparator SIGNATURE_COMPARATOR = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            return getSignature((Method) o1).compareTo(getSignature((Method) o2));
+        }
+    };
+
+    private final Method[] methods;
+    private final String[] signatures;
+    private final int hash;
+
+    public MethodTable(Class type) {
+        this.methods = type.getMethods();
+        Arrays.sort(methods, SIGNATURE_COMPARATOR);
+        this.signatures = new String[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            signatures[i] = getSignature(methods[i]);
+        }
+        this.hash = createHash(signatures);
+    }
+
+    /**
+     * Returns the hash of the table with the given signatures which is never 0
+     * so that 0 can be used to mean no table
+     */
+    public static int createHash(String[] signatures) {
+        int answer = 1;
+        for (int i = 0; i < signatures.length; i++) {
+            answer = 31 * answer + signatures[i].hashCode();
+        }
+        return answer != 0 ? answer : 1;
+    }
+
+    /**
+     * Returns the signature of the method which is used to match methods
+     * between the client and server
+     */
+    public static String getSignature(Method method) {
+        return getSignature(method.getName(), method.getParameterTypes());
+    }
+
+    /**
+     * Returns the signature of the method with the given name and parameter
+     * types
+     */
+    public static String getSignature(String methodName, Class[] parameterTypes) {
+        StringBuffer buffer = new StringBuffer(methodName);
+        buffer.append('(');
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            buffer.append(parameterTypes[i].getName());
+        }
+        buffer.append(')');
+        return buffer.toString();
+    }
+
+    /**
+     * Creates a map of the methods of the given type to the ID of the method
+     * of the same signature in the given table signatures. Methods which are
+     * not present in the signatures are not included in the map.
+     * 
+     * @return a map of {@link Method} to {@link Integer} IDs
+     */
+    public static Map createMethodIds(Class type, String[] signatures) {
+        Map indexes = new HashMap();
+        for (int i = 0; i < signatures.length; i++) {
+            indexes.put(signatures[i], new Integer(i + 1));
+        }
+        Map answer = new HashMap();
+        Method[] methods = type.getMethods();
+        for (int i = 0; i < methods.length; i++) {
+            Integer id = (Integer) indexes.get(getSignature(methods[i]));
+            if (id != null) {
+                answer.put(methods[i], id);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the method for the given ID or null if the ID is not valid
+     */
+    public Method getMethod(int methodId) {
+        if (methodId < 1 || methodId > methods.length) {
+            return null;
+        }
+        return methods[methodId - 1];
+    }
+
+    /**
+     * Returns the hash of the signatures of the table which identifies the
+     * version of the table
+     */
+    public int getHash() {
+        return hash;
+    }
+
+    public String[] getSignatures() {
+        return signatures;
+    }
+
+    public int size() {
+        return methods.length;
+    }
+}
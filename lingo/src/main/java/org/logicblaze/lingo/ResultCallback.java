@@ -0,0 +1,40 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo;
+
+/**
+ * A callback which can be passed as the last parameter of a method on a
+ * client side service interface so that the method returns immediately and the
+ * callback is notified when the result arrives. The server exports the method
+ * without the callback parameter.
+ * 
+ * @version $Revision$
+ */
+public interface ResultCallback {
+
+    /**
+     * Invoked with the value returned by the remote method
+     */
+    void onResult(Object value);
+
+    /**
+     * Invoked if the remote method threw an exception or the response could
+     * not be processed
+     */
+    void onException(Throwable exception);
+}
@@ -0,0 +1,41 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo;
+
+import java.util.Iterator;
+
+/**
+ * An {@link Iterator} over the results of a method invoked on many servers,
+ * such as when invoking a method over a topic. Each result is returned as soon
+ * as it arrives; the iteration ends when no result has arrived within the
+ * multiple response timeout or the iterator is cancelled.
+ * 
+ * <p/> If a server responded with an exception then {@link #next()} throws
+ * it, wrapping checked exceptions in a
+ * {@link org.springframework.remoting.RemoteAccessException}.
+ * 
+ * @version $Revision$
+ */
+public interface ResultIterator extends Iterator {
+
+    /**
+     * Stops waiting for any more results, discarding any results which have
+     * arrived but not yet been returned
+     */
+    void cancel();
+}
@@ -38,6 +38,9 @@ import java.util.Set;
  * {@link EventListener} are assumed to be remote and so a remote proxy is used
  * to allow remote notifications and asynchronous messaging.
  * 
+ * <p/> The results of methods whose names are in the
+ * {@link #setCacheableMethods(Set) cacheableMethods} are cached by the client.
+ * 
  * @version $Revision$
  */
 public class SimpleMetadataStrategy implements MetadataStrategy {
@@ -46,6 +49,9 @@ public class SimpleMetadataStrategy implements MetadataStrategy {
     private boolean oneWayForVoidMethods;
     private Set remoteTypes;
     private ResultJoinStrategy resultJoinStrategy = new DefaultResultJoinStrategy();
+    private Set cacheableMethods;
+    private long cacheTimeToLive = 60000L;
+    private int cacheMaximumSize = 1000;
 
     public SimpleMetadataStrategy() {
     }
@@ -65,7 +71,7 @@ public class SimpleMetadataStrategy implements MetadataStrategy {
                 remoteParams[i] = isRemoteParameter(method, parameterTypes[i], i);
             }
         }
-        return new MethodMetadata(oneway, remoteParams, isStateful(method), isEndSession(method));
+        return new MethodMetadata(oneway, remoteParams, isStateful(method), isEndSession(method), getCacheTimeToLive(method), getCacheMaximumSize(method));
     }
 
     public boolean isOneWayForVoidMethods() {
@@ -100,6 +106,42 @@ public class SimpleMetadataStrategy implements MetadataStrategy {
         this.remoteTypes = remoteTypes;
     }
 
+    public Set getCacheableMethods() {
+        return cacheableMethods;
+    }
+
+    /**
+     * Sets the names of the side effect free methods whose results can be
+     * cached by the client
+     */
+    public void setCacheableMethods(Set cacheableMethods) {
+        this.cacheableMethods = cacheableMethods;
+    }
+
+    public long getCacheTimeToLive() {
+        return cacheTimeToLive;
+    }
+
+    /**
+     * Sets the number of milliseconds the results of cacheable methods are
+     * cached for
+     */
+    public void setCacheTimeToLive(long cacheTimeToLive) {
+        this.cacheTimeToLive = cacheTimeToLive;
+    }
+
+    public int getCacheMaximumSize() {
+        return cacheMaximumSize;
+    }
+
+    /**
+     * Sets the maximum number of results of each cacheable method which are
+     * cached
+     */
+    public void setCacheMaximumSize(int cacheMaximumSize) {
+        this.cacheMaximumSize = cacheMaximumSize;
+    }
+
     public boolean isRemoteParameter(Method method, Class parameterType, int index) {
         for (Iterator iter = getRemoteTypes().iterator(); iter.hasNext();) {
             Class type = (Class) iter.next();
@@ -115,11 +157,20 @@ public class SimpleMetadataStrategy implements MetadataStrategy {
     protected boolean isOneWayMethod(Method method) {
         boolean oneway = false;
         if (oneWayForVoidMethods) {
-            oneway = method.getReturnType().equals(void.class) && method.getExceptionTypes().length == 0;
+            oneway = method.getReturnType().equals(void.class) && method.getExceptionTypes().length == 0 && !hasResultCallback(method);
         }
         return oneway;
     }
 
+    /**
+     * Returns true if the last parameter is a {@link ResultCallback} which
+     * receives the result of the method
+     */
+    protected boolean hasResultCallback(Method method) {
+        Class[] parameterTypes = method.getParameterTypes();
+        return parameterTypes.length > 0 && parameterTypes[parameterTypes.length - 1] == ResultCallback.class;
+    }
+
     /**
      * Returns true if this method completes a callback object
      */
@@ -135,6 +186,21 @@ public class SimpleMetadataStrategy implements MetadataStrategy {
         return false;
     }
 
+    /**
+     * Returns the number of milliseconds the results of the method can be
+     * cached for or 0 if the method is not cacheable
+     */
+    protected long getCacheTimeToLive(Method method) {
+        if (cacheableMethods != null && cacheableMethods.contains(method.getName()) && !method.getReturnType().equals(void.class)) {
+            return cacheTimeToLive;
+        }
+        return 0L;
+    }
+
+    protected int getCacheMaximumSize(Method method) {
+        return cacheMaximumSize;
+    }
+
     protected void populateDefaultRemoteTypes(Set remoteTypes) {
         remoteTypes.add(Remote.class);
         remoteTypes.add(EventListener.class);
@@ -0,0 +1,39 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo;
+
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+/**
+ * A {@link ResultJoinStrategy} which knows in advance how long after the
+ * request was sent {@link #unblockAfterTimeout(RemoteInvocationResult, long)}
+ * will unblock the calling thread, so that the caller can sleep until exactly
+ * that deadline rather than polling the strategy.
+ * 
+ * @version $Revision$
+ */
+public interface TimeoutResultJoinStrategy extends ResultJoinStrategy {
+
+    /**
+     * Returns the amount of time in milliseconds since the request was sent
+     * after which the calling thread should be unblocked given the current
+     * result, or a negative value if the caller should wait until another
+     * response arrives.
+     */
+    public abstract long getUnblockTimeout(RemoteInvocationResult currentResult);
+}
@@ -0,0 +1,32 @@
+/**
+ * 
+ * Copyright 2005 LogicBlaze, Inc. http://www.logicblaze.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ **/
+package org.logicblaze.lingo.annotations;
+
+/**
+ * An annotation used to mark a side effect free method whose results can be
+ * cached by the client for the given time to live in milliseconds, keeping at
+ * most the given number of results for different arguments.
+ * 
+ * @version $Revision$
+ */
+public interface Cacheable {
+
+    long timeToLive();
+
+    int maximumSize();
+}
@@ -46,6 +46,8 @@ public class JmsClient {
     private ConnectionFactory connectionFactory;
     private Destination destination;
     private JmsProducer producer;
+    private JmsProducerPool producerPool;
+    private boolean pooledProducer;
     private MessageConsumer consumer;
     private Marshaller marshaller = new DefaultMarshaller();
     private JmsProducerConfig config = new JmsProducerConfig();
@@ -142,7 +144,12 @@ public class JmsClient {
                 consumer.close();
             }
             if (producer != null) {
-                producer.close();
+                if (pooledProducer) {
+                    producerPool.returnProducer(producer);
+                }
+                else {
+                    producer.close();
+                }
             }
         }
         catch (JMSException e) {
@@ -151,6 +158,7 @@ public class JmsClient {
         finally {
             consumer = null;
             producer = null;
+            pooledProducer = false;
         }
     }
 
@@ -188,10 +196,16 @@ public class JmsClient {
 
     public JmsProducer getProducer() throws JMSException {
         if (producer == null) {
-            if (connectionFactory == null) {
-                throw new IllegalArgumentException("No producer or connectionFactory property configured");
+            if (producerPool != null) {
+                producer = producerPool.borrowProducer();
+                pooledProducer = true;
+            }
+            else if (connectionFactory == null) {
+                throw new IllegalArgumentException("No producer, producerPool or connectionFactory property configured");
+            }
+            else {
+                producer = DefaultJmsProducer.newInstance(connectionFactory, config);
             }
-            producer = DefaultJmsProducer.newInstance(connectionFactory, config);
         }
         return producer;
     }
@@ -200,6 +214,19 @@ public class JmsClient {
         this.producer = producer;
     }
 
+    public JmsProducerPool getProducerPool() {
+        return producerPool;
+    }
+
+    /**
+     * Sets the pool from which the producer is borrowed if no producer is
+     * explicitly configured. The producer is returned to the pool when this
+     * client is closed.
+     */
+    public void setProducerPool(JmsProducerPool producerPool) {
+        this.producerPool = producerPool;
+    }
+
     public JmsProducerConfig getConfig() {
         return config;
     }
@@ -18,6 +18,10 @@
 
 package org.logicblaze.lingo.jms;
 
+import edu.emory.mathcs.backport.java.util.concurrent.Future;
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledThreadPoolExecutor;
+
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.commons.logging.Log;
@@ -27,12 +31,25 @@ import org.logicblaze.lingo.LingoRemoteInvocationFactory;
 import org.logicblaze.lingo.MetadataStrategy;
 import org.logicblaze.lingo.MetadataStrategyHelper;
 import org.logicblaze.lingo.MethodMetadata;
+import org.logicblaze.lingo.MethodTable;
+import org.logicblaze.lingo.ResultCallback;
+import org.logicblaze.lingo.ResultIterator;
 import org.logicblaze.lingo.ResultJoinStrategy;
 import org.logicblaze.lingo.jms.impl.AsyncReplyHandler;
+import org.logicblaze.lingo.jms.impl.AsyncResultHandler;
+import org.logicblaze.lingo.jms.impl.ChunkedResultIterator;
+import org.logicblaze.lingo.jms.impl.ConcurrentMultiplexingRequestor;
+import org.logicblaze.lingo.jms.impl.InvocationPlan;
 import org.logicblaze.lingo.jms.impl.MultiplexingRequestor;
+import org.logicblaze.lingo.jms.impl.OneWayBatcher;
+import org.logicblaze.lingo.jms.impl.RequestCoalescer;
+import org.logicblaze.lingo.jms.impl.ResultCache;
 import org.logicblaze.lingo.jms.impl.ResultJoinHandler;
+import org.logicblaze.lingo.jms.impl.StreamingResultHandler;
 import org.logicblaze.lingo.jms.marshall.DefaultMarshaller;
 import org.logicblaze.lingo.jms.marshall.Marshaller;
+import org.logicblaze.lingo.jmx.MethodStatistics;
+import org.logicblaze.lingo.jmx.ServiceMetrics;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
@@ -41,13 +58,19 @@ import org.springframework.remoting.support.RemoteInvocationBasedAccessor;
 import org.springframework.remoting.support.RemoteInvocationFactory;
 import org.springframework.remoting.support.RemoteInvocationResult;
 
+import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.DeliveryMode;
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
 import javax.jms.Topic;
 
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.WeakHashMap;
@@ -67,6 +90,7 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
 
     private Map remoteObjects = new WeakHashMap();
     private Requestor requestor;
+    private RequestorPool requestorPool;
     private Destination destination;
     private Destination responseDestination;
     private String correlationID;
@@ -74,6 +98,8 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
     private ConnectionFactory connectionFactory;
     private String jmsType;
     private Map messageProperties;
+    private String[] messagePropertyNames;
+    private Object[] messagePropertyValues;
     private int jmsExpiration = -1;
     private JmsProducerConfig producerConfig = new JmsProducerConfig();
     private MetadataStrategy metadataStrategy;
@@ -81,6 +107,25 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
     private long responseTimeout = 30000L;
     private long multipleResponseTimeout = 5000L;
     private long remoteReferenceTimeout = 60000L;
+    private int concurrentProducers;
+    private boolean sharedReplyQueue;
+    private boolean negotiateMethodIds;
+    private long methodTableTimeout = 5000L;
+    private volatile Map methodIds;
+    private int methodTableHash;
+    private ServiceMetrics metrics;
+    private int oneWayBatchSize;
+    private long oneWayBatchLingerTime = 10L;
+    private OneWayBatcher oneWayBatcher;
+    private int resultChunkSize;
+    private int resultChunkWindow = JmsServiceExporterMessageListener.DEFAULT_CHUNK_WINDOW;
+    private ResultCache resultCache;
+    private Destination cacheInvalidationTopic;
+    private Connection invalidationConnection;
+    private boolean coalesceRequests;
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+    private Map invocationPlans = Collections.EMPTY_MAP;
+    private ScheduledExecutorService timeoutExecutor;
 
     public JmsClientInterceptor() {
         setRemoteInvocationFactory(createRemoteInvocationFactory());
@@ -107,8 +152,13 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
             invocationFactory.setMetadataStrategy(getMetadataStrategy());
         }
         if (requestor == null) {
-            if (connectionFactory == null) {
-                throw new IllegalArgumentException("requestor or connectionFactory is required");
+            if (requestorPool != null) {
+                if (destination == null) {
+                    throw new IllegalArgumentException("destination is required when using a requestorPool");
+                }
+            }
+            else if (connectionFactory == null) {
+                throw new IllegalArgumentException("requestor, requestorPool or connectionFactory is required");
             }
             else {
                 requestor = createRequestor();
@@ -118,42 +168,76 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
             // default to standard JMS marshaling
             marshaller = new DefaultMarshaller();
         }
+        if (getServiceInterface() != null) {
+            invocationPlans = createInvocationPlans(getServiceInterface());
+        }
+        if (negotiateMethodIds && getServiceInterface() != null) {
+            methodIds = negotiateMethodIds();
+        }
+        if (oneWayBatchSize > 1 && oneWayBatcher == null) {
+            if (marshaller instanceof DefaultMarshaller && ((DefaultMarshaller) marshaller).getHeaderMarshaller() != null) {
+                throw new IllegalArgumentException("oneWayBatchSize cannot be used with a headerMarshaller as headers cannot be added to individual invocations in a batch");
+            }
+            oneWayBatcher = createOneWayBatcher();
+        }
+        if (cacheInvalidationTopic != null && invalidationConnection == null) {
+            invalidationConnection = subscribeToInvalidations();
+        }
     }
 
     public Object invoke(MethodInvocation methodInvocation) throws Throwable {
-        if (AopUtils.isToStringMethod(methodInvocation.getMethod())) {
-            return "JMS invoker proxy for service URL [" + getServiceUrl() + "]";
+        Method method = methodInvocation.getMethod();
+        InvocationPlan plan = (InvocationPlan) invocationPlans.get(method);
+        if (plan == null) {
+            if (AopUtils.isToStringMethod(method)) {
+                return "JMS invoker proxy for service URL [" + getServiceUrl() + "]";
+            }
+            plan = createInvocationPlan(method);
+        }
+        if (metrics == null) {
+            return doInvoke(methodInvocation, plan, null);
         }
-        LingoInvocation invocation = (LingoInvocation) createRemoteInvocation(methodInvocation);
-        MethodMetadata metadata = invocation.getMetadata();
-        replaceRemoteReferences(invocation, metadata);
+        MethodStatistics statistics = metrics.getMethodStatistics(methodInvocation.getMethod());
+        statistics.start();
+        long startTime = MethodStatistics.currentTime();
+        boolean error = true;
         try {
-            Message requestMessage = marshaller.createRequestMessage(requestor, invocation);
-            populateHeaders(requestMessage);
-            if (metadata.isOneWay()) {
-                requestor.send(destination, requestMessage);
-                return null;
-            }
-            else if (!isMultipleResponse(methodInvocation, metadata)) {
-                Message response = requestor.request(destination, requestMessage, getResponseTimeout());
-                RemoteInvocationResult result = marshaller.extractInvocationResult(response);
-                return recreateRemoteInvocationResult(result);
-            }
-            else {
-                ResultJoinHandler handler = createResultJoinHandler(methodInvocation, metadata);
-                requestor.request(destination, requestMessage, handler, getMultipleResponseTimeout());
-                RemoteInvocationResult result = handler.waitForResult();
-                return recreateRemoteInvocationResult(result);
-            }
+            Object answer = doInvoke(methodInvocation, plan, statistics);
+            error = false;
+            return answer;
         }
-        catch (JMSException e) {
-            log.warn("Remote access error: " + methodInvocation, e);
-            throw new RemoteAccessException("Cannot access JMS invoker remote service at [" + getServiceUrl() + "]", e);
+        finally {
+            statistics.end(MethodStatistics.currentTime() - startTime, error);
         }
     }
 
     public void destroy() throws Exception {
-        requestor.close();
+        if (invalidationConnection != null) {
+            invalidationConnection.close();
+            invalidationConnection = null;
+        }
+        if (oneWayBatcher != null) {
+            oneWayBatcher.close();
+            returnRequestor(oneWayBatcher.getRequestor());
+        }
+        if (requestor != null) {
+            requestor.close();
+        }
+        synchronized (this) {
+            if (timeoutExecutor != null) {
+                timeoutExecutor.shutdownNow();
+                timeoutExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * Sends any one way invocations which are waiting to be sent in a batch
+     */
+    public void flushOneWayBatches() throws JMSException {
+        if (oneWayBatcher != null) {
+            oneWayBatcher.flush();
+        }
     }
 
     // Properties
@@ -166,6 +250,19 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
         this.requestor = requestor;
     }
 
+    public RequestorPool getRequestorPool() {
+        return requestorPool;
+    }
+
+    /**
+     * Sets the pool from which a requestor is borrowed for each request if no
+     * requestor is explicitly configured. This allows many proxies to share a
+     * bounded number of connections and sessions.
+     */
+    public void setRequestorPool(RequestorPool requestorPool) {
+        this.requestorPool = requestorPool;
+    }
+
     public Destination getDestination() {
         return destination;
     }
@@ -240,6 +337,22 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
      */
     public void setMessageProperties(Map messageProperties) {
         this.messageProperties = messageProperties;
+        if (messageProperties == null) {
+            messagePropertyNames = null;
+            messagePropertyValues = null;
+        }
+        else {
+            String[] names = new String[messageProperties.size()];
+            Object[] values = new Object[names.length];
+            int i = 0;
+            for (Iterator iter = messageProperties.entrySet().iterator(); iter.hasNext(); i++) {
+                Map.Entry entry = (Map.Entry) iter.next();
+                names[i] = entry.getKey().toString();
+                values[i] = entry.getValue();
+            }
+            messagePropertyNames = names;
+            messagePropertyValues = values;
+        }
     }
 
     public Marshaller getMarshaller() {
@@ -362,9 +475,458 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
         this.responseTimeout = responseTimeout;
     }
 
+    public int getConcurrentProducers() {
+        return concurrentProducers;
+    }
+
+    /**
+     * Sets the number of sessions and producers used to send requests when a
+     * default {@link Requestor} is created. A value greater than 1 allows many
+     * threads to send requests concurrently while still sharing a single
+     * response consumer.
+     */
+    public void setConcurrentProducers(int concurrentProducers) {
+        this.concurrentProducers = concurrentProducers;
+    }
+
+    public boolean isSharedReplyQueue() {
+        return sharedReplyQueue;
+    }
+
+    /**
+     * Sets whether a default {@link Requestor} should consume its responses
+     * from the reply queues shared by all of the requestors in the JVM using
+     * the same connection factory, rather than creating its own temporary
+     * queue and consumer. This is ignored if a responseDestination is
+     * configured and should not be combined with a fixed correlationID as the
+     * correlation ID is used to route the responses.
+     */
+    public void setSharedReplyQueue(boolean sharedReplyQueue) {
+        this.sharedReplyQueue = sharedReplyQueue;
+    }
+
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics used to record the number of invocations and the time
+     * spent in each phase of the invocations of each method or null if no
+     * metrics are recorded
+     */
+    public void setMetrics(ServiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getOneWayBatchSize() {
+        return oneWayBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of one way invocations which are sent together
+     * in a single message. A value greater than 1 enables batching so that one
+     * way methods return before the invocation is sent. Stateful one way
+     * methods are never batched as they need their own group headers and any
+     * pending batch is sent before a request is made.
+     */
+    public void setOneWayBatchSize(int oneWayBatchSize) {
+        this.oneWayBatchSize = oneWayBatchSize;
+    }
+
+    public long getOneWayBatchLingerTime() {
+        return oneWayBatchLingerTime;
+    }
+
+    /**
+     * Sets the maximum amount of time in milliseconds a one way invocation
+     * waits for more invocations to fill its batch before it is sent
+     */
+    public void setOneWayBatchLingerTime(long oneWayBatchLingerTime) {
+        this.oneWayBatchLingerTime = oneWayBatchLingerTime;
+    }
+
+    public boolean isNegotiateMethodIds() {
+        return negotiateMethodIds;
+    }
+
+    /**
+     * Sets whether or not the {@link MethodTable} of the service should be
+     * requested from the server when the proxy is created so that requests
+     * can identify the method by a small integer ID rather than by its name and
+     * parameter types. If the server does not respond the method name and
+     * parameter types are used.
+     */
+    public void setNegotiateMethodIds(boolean negotiateMethodIds) {
+        this.negotiateMethodIds = negotiateMethodIds;
+    }
+
+    public long getMethodTableTimeout() {
+        return methodTableTimeout;
+    }
+
+    /**
+     * Sets the maximum amount of time (in milliseconds) to wait for the server
+     * to respond with its {@link MethodTable}
+     */
+    public void setMethodTableTimeout(long methodTableTimeout) {
+        this.methodTableTimeout = methodTableTimeout;
+    }
+
+    public int getResultChunkSize() {
+        return resultChunkSize;
+    }
+
+    /**
+     * Sets the maximum number of elements in each chunk when the server streams
+     * the result of a method returning an {@link Iterator} or
+     * {@link ResultIterator} back in chunks, which are consumed lazily by the
+     * returned iterator. A value of zero disables chunking.
+     */
+    public void setResultChunkSize(int resultChunkSize) {
+        this.resultChunkSize = resultChunkSize;
+    }
+
+    public int getResultChunkWindow() {
+        return resultChunkWindow;
+    }
+
+    /**
+     * Sets the maximum number of chunks of a streamed result which the server
+     * may send before they are consumed, which bounds the number of elements
+     * buffered by the client
+     */
+    public void setResultChunkWindow(int resultChunkWindow) {
+        this.resultChunkWindow = resultChunkWindow;
+    }
+
+    /**
+     * Returns the cache of the results of cacheable methods, lazily creating it
+     */
+    public synchronized ResultCache getResultCache() {
+        if (resultCache == null) {
+            resultCache = new ResultCache();
+        }
+        return resultCache;
+    }
+
+    /**
+     * Sets the cache of the results of methods which are marked as cacheable by
+     * the {@link MetadataStrategy}, which may be shared by many proxies
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public Destination getCacheInvalidationTopic() {
+        return cacheInvalidationTopic;
+    }
+
+    /**
+     * Sets the topic on which servers publish messages to invalidate the
+     * cached results of cacheable methods
+     */
+    public void setCacheInvalidationTopic(Destination cacheInvalidationTopic) {
+        this.cacheInvalidationTopic = cacheInvalidationTopic;
+    }
+
+    public boolean isCoalesceRequests() {
+        return coalesceRequests;
+    }
+
+    /**
+     * Sets whether identical concurrent invocations of cacheable methods
+     * should share a single request, so that the reply is given to every
+     * caller. This avoids many identical requests being sent when a popular
+     * cached result expires. Methods whose results cannot be shared, such as
+     * those returning an iterator or future, are never coalesced.
+     */
+    public void setCoalesceRequests(boolean coalesceRequests) {
+        this.coalesceRequests = coalesceRequests;
+    }
+
     // Implementation methods
     // -------------------------------------------------------------------------
 
+    /**
+     * Requests the {@link MethodTable} from the server, returning the map of
+     * methods to method IDs or null if the server did not respond
+     */
+    protected Map negotiateMethodIds() {
+        if (getDestination() instanceof Topic || isMultipleResponsesExpected()) {
+            log.warn("Cannot negotiate method IDs when multiple servers may respond on: " + getDestination());
+            return null;
+        }
+        Requestor requestor = null;
+        try {
+            requestor = borrowRequestor();
+            Message requestMessage = marshaller.createObjectMessage(requestor.getSession(), getServiceInterface().getName());
+            requestMessage.setBooleanProperty(JmsServiceExporterMessageListener.METHOD_TABLE_REQUEST, true);
+            populateHeaders(requestMessage);
+            Message response = requestor.request(destination, requestMessage, getMethodTableTimeout());
+            if (response != null) {
+                Object signatures = marshaller.readMessage(response);
+                if (signatures instanceof String[] && response.propertyExists(JmsServiceExporterMessageListener.METHOD_TABLE_HASH)) {
+                    methodTableHash = response.getIntProperty(JmsServiceExporterMessageListener.METHOD_TABLE_HASH);
+                    return MethodTable.createMethodIds(getServiceInterface(), (String[]) signatures);
+                }
+            }
+            log.warn("Invalid method table response: " + response + " so method IDs will not be used");
+        }
+        catch (JMSException e) {
+            log.warn("Failed to negotiate method IDs so they will not be used. Reason: " + e, e);
+        }
+        finally {
+            returnRequestor(requestor);
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the method name and parameter types of the invocation with the
+     * method ID if the server supports the method
+     */
+    protected void useMethodId(LingoInvocation invocation, MethodInvocation methodInvocation, Map ids) {
+        Integer methodId = (Integer) ids.get(methodInvocation.getMethod());
+        if (methodId != null) {
+            invocation.setMethodId(methodId.intValue());
+            invocation.setMethodTableHash(methodTableHash);
+            invocation.setMethodName(null);
+            invocation.setParameterTypes(null);
+        }
+    }
+
+    /**
+     * Creates the plans of how to invoke each method of the service interface
+     * so that they do not need to be worked out on each invocation
+     */
+    protected Map createInvocationPlans(Class serviceInterface) {
+        Map answer = new HashMap();
+        Method[] methods = serviceInterface.getMethods();
+        for (int i = 0; i < methods.length; i++) {
+            Method method = methods[i];
+            if (!AopUtils.isToStringMethod(method)) {
+                answer.put(method, createInvocationPlan(method));
+            }
+        }
+        return answer;
+    }
+
+    protected InvocationPlan createInvocationPlan(Method method) {
+        LingoRemoteInvocationFactory factory = (LingoRemoteInvocationFactory) getRemoteInvocationFactory();
+        return new InvocationPlan(method, factory.getMethodMetadata(method));
+    }
+
+    /**
+     * Performs the remote invocation, recording the time of each phase in the
+     * given statistics if they are not null
+     */
+    protected Object doInvoke(final MethodInvocation methodInvocation, final InvocationPlan plan, final MethodStatistics statistics) throws Throwable {
+        final long time = statistics != null ? MethodStatistics.currentTime() : 0L;
+        MethodMetadata metadata = plan.getMetadata();
+        if (metadata.isCacheable()) {
+            ResultCache.Entry entry = getResultCache().get(methodInvocation.getMethod(), methodInvocation.getArguments());
+            if (entry != null) {
+                return entry.getValue();
+            }
+            if (coalesceRequests && isCoalescable(methodInvocation)) {
+                return requestCoalescer.invoke(methodInvocation.getMethod(), methodInvocation.getArguments(), new RequestCoalescer.Call() {
+                    public Object call() throws Throwable {
+                        return doRemoteInvoke(methodInvocation, plan, statistics, time);
+                    }
+                });
+            }
+        }
+        return doRemoteInvoke(methodInvocation, plan, statistics, time);
+    }
+
+    /**
+     * Sends the invocation to the server, recording the time of each phase in
+     * the given statistics if they are not null
+     */
+    protected Object doRemoteInvoke(MethodInvocation methodInvocation, InvocationPlan plan, MethodStatistics statistics, long time) throws Throwable {
+        MethodMetadata metadata = plan.getMetadata();
+        // lets use the factory so that it can add attributes to the invocation
+        LingoRemoteInvocationFactory factory = (LingoRemoteInvocationFactory) getRemoteInvocationFactory();
+        LingoInvocation invocation = (LingoInvocation) factory.createRemoteInvocation(methodInvocation, metadata);
+        ResultCallback callback = removeResultCallback(invocation);
+        Object[] cacheArguments = null;
+        long cacheGeneration = 0;
+        if (metadata.isCacheable()) {
+            // lets copy the arguments as replacing remote references changes them
+            Object[] arguments = methodInvocation.getArguments();
+            cacheArguments = arguments != null ? (Object[]) arguments.clone() : null;
+            cacheGeneration = getResultCache().getGeneration(methodInvocation.getMethod());
+        }
+        Map ids = methodIds;
+        if (ids != null && isSingleResponse(methodInvocation, metadata, callback)) {
+            useMethodId(invocation, methodInvocation, ids);
+        }
+        Requestor requestor = null;
+        try {
+            requestor = borrowRequestor();
+            replaceRemoteReferences(requestor, invocation, plan);
+            if (oneWayBatcher != null) {
+                if (metadata.isOneWay() && !metadata.isStateful()) {
+                    oneWayBatcher.send(destination, invocation);
+                    MethodStatistics.recordPhase(statistics, MethodStatistics.SEND, time);
+                    return null;
+                }
+                // lets not allow this invocation to overtake any pending one way invocations
+                oneWayBatcher.flush();
+            }
+            Message requestMessage = marshaller.createRequestMessage(requestor, invocation);
+            populateHeaders(requestMessage);
+            time = MethodStatistics.recordPhase(statistics, MethodStatistics.MARSHAL, time);
+            if (metadata.isOneWay()) {
+                requestor.send(destination, requestMessage);
+                MethodStatistics.recordPhase(statistics, MethodStatistics.SEND, time);
+                return null;
+            }
+            else if (isChunked(methodInvocation, metadata, callback)) {
+                ChunkedResultIterator iterator = createChunkedResultIterator(requestor);
+                requestMessage.setIntProperty(JmsServiceExporterMessageListener.RESULT_CHUNK_SIZE, resultChunkSize);
+                requestMessage.setIntProperty(JmsServiceExporterMessageListener.RESULT_CHUNK_WINDOW, resultChunkWindow);
+                requestor.request(destination, requestMessage, iterator, getResponseTimeout());
+                iterator.setCorrelationID(requestMessage.getJMSCorrelationID());
+                MethodStatistics.recordPhase(statistics, MethodStatistics.SEND, time);
+                return iterator;
+            }
+            else if (isStreaming(methodInvocation, metadata, callback)) {
+                StreamingResultHandler handler = createStreamingResultHandler(callback);
+                requestor.request(destination, requestMessage, handler, getMultipleResponseTimeout());
+                MethodStatistics.recordPhase(statistics, MethodStatistics.SEND, time);
+                return callback == null ? handler : null;
+            }
+            else if (callback != null || isAsynchronous(methodInvocation)) {
+                AsyncResultHandler handler = createAsyncResultHandler(callback);
+                requestor.request(destination, requestMessage, handler, getResponseTimeout());
+                handler.scheduleTimeout(getTimeoutExecutor(), getResponseTimeout());
+                MethodStatistics.recordPhase(statistics, MethodStatistics.SEND, time);
+                return isAsynchronous(methodInvocation) ? handler : null;
+            }
+            else if (!isMultipleResponse(methodInvocation, metadata)) {
+                Message response = requestor.request(destination, requestMessage, getResponseTimeout());
+                time = MethodStatistics.recordPhase(statistics, MethodStatistics.WAIT, time);
+                RemoteInvocationResult result = marshaller.extractInvocationResult(response);
+                MethodStatistics.recordPhase(statistics, MethodStatistics.UNMARSHAL, time);
+                if (invocation.getMethodId() > 0 && result.getException() instanceof MethodTableMismatchException) {
+                    // the service has changed since we negotiated the IDs
+                    log.warn("Method IDs will no longer be used as the service has changed: " + result.getException().getMessage());
+                    methodIds = null;
+                    returnRequestor(requestor);
+                    requestor = null;
+                    return doRemoteInvoke(methodInvocation, plan, statistics, time);
+                }
+                Object value = recreateRemoteInvocationResult(result);
+                if (metadata.isCacheable() && callback == null) {
+                    getResultCache().put(methodInvocation.getMethod(), cacheArguments, value, metadata, cacheGeneration);
+                }
+                return value;
+            }
+            else {
+                ResultJoinHandler handler = createResultJoinHandler(methodInvocation, metadata);
+                requestor.request(destination, requestMessage, handler, getMultipleResponseTimeout());
+                RemoteInvocationResult result = handler.waitForResult();
+                MethodStatistics.recordPhase(statistics, MethodStatistics.WAIT, time);
+                return recreateRemoteInvocationResult(result);
+            }
+        }
+        catch (JMSException e) {
+            log.warn("Remote access error: " + methodInvocation, e);
+            throw new RemoteAccessException("Cannot access JMS invoker remote service at [" + getServiceUrl() + "]", e);
+        }
+        finally {
+            returnRequestor(requestor);
+        }
+    }
+
+    /**
+     * Returns true if the calling thread blocks for the single response of the
+     * method. Method IDs are only used for such invocations as they are the
+     * only ones which can be retried by name if the service has changed.
+     */
+    protected boolean isSingleResponse(MethodInvocation methodInvocation, MethodMetadata metadata, ResultCallback callback) {
+        return !metadata.isOneWay() && callback == null && !isAsynchronous(methodInvocation) && !isChunked(methodInvocation, metadata, callback)
+                && !isMultipleResponse(methodInvocation, metadata);
+    }
+
+    /**
+     * Returns true if concurrent callers can share the result of a single
+     * invocation of the method. This is only the case if the result is a value
+     * rather than an {@link Iterator}, {@link ResultIterator} or {@link Future}
+     * which can only be consumed by one caller and the method does not take a
+     * {@link ResultCallback}.
+     */
+    protected boolean isCoalescable(MethodInvocation methodInvocation) {
+        Method method = methodInvocation.getMethod();
+        Class returnType = method.getReturnType();
+        if (returnType == Iterator.class || returnType == ResultIterator.class || returnType == Future.class) {
+            return false;
+        }
+        Class[] parameterTypes = method.getParameterTypes();
+        return parameterTypes.length == 0 || parameterTypes[parameterTypes.length - 1] != ResultCallback.class;
+    }
+
+    /**
+     * Returns true if the method returns a {@link Future} which is completed
+     * when the response arrives rather than blocking the calling thread.
+     */
+    protected boolean isAsynchronous(MethodInvocation methodInvocation) {
+        return methodInvocation.getMethod().getReturnType() == Future.class;
+    }
+
+    /**
+     * Returns true if each result of a method which expects multiple responses
+     * should be passed to the caller as it arrives, rather than being joined
+     * together. This is the case if the method returns an {@link Iterator} or
+     * {@link ResultIterator} or takes a {@link ResultCallback}.
+     */
+    protected boolean isStreaming(MethodInvocation methodInvocation, MethodMetadata metadata, ResultCallback callback) {
+        if (!isMultipleResponse(methodInvocation, metadata)) {
+            return false;
+        }
+        Class returnType = methodInvocation.getMethod().getReturnType();
+        return callback != null || returnType == Iterator.class || returnType == ResultIterator.class;
+    }
+
+    /**
+     * Returns true if the result of the method should be streamed back from a
+     * single server in chunks. This is the case if chunking is enabled and the
+     * method returns an {@link Iterator} or {@link ResultIterator}.
+     */
+    protected boolean isChunked(MethodInvocation methodInvocation, MethodMetadata metadata, ResultCallback callback) {
+        if (resultChunkSize <= 0 || callback != null || isMultipleResponse(methodInvocation, metadata)) {
+            return false;
+        }
+        Class returnType = methodInvocation.getMethod().getReturnType();
+        return returnType == Iterator.class || returnType == ResultIterator.class;
+    }
+
+    /**
+     * If the last parameter of the method is a {@link ResultCallback} then it
+     * is removed from the invocation and returned so that the invocation
+     * matches the method exported by the server
+     */
+    protected ResultCallback removeResultCallback(LingoInvocation invocation) {
+        Class[] parameterTypes = invocation.getParameterTypes();
+        int last = parameterTypes.length - 1;
+        if (last < 0 || parameterTypes[last] != ResultCallback.class) {
+            return null;
+        }
+        Object[] arguments = invocation.getArguments();
+        ResultCallback callback = (ResultCallback) arguments[last];
+        if (callback == null) {
+            throw new IllegalArgumentException("No ResultCallback supplied for method: " + invocation.getMethodName());
+        }
+        Class[] newParameterTypes = new Class[last];
+        Object[] newArguments = new Object[last];
+        System.arraycopy(parameterTypes, 0, newParameterTypes, 0, last);
+        System.arraycopy(arguments, 0, newArguments, 0, last);
+        invocation.setParameterTypes(newParameterTypes);
+        invocation.setArguments(newArguments);
+        return callback;
+    }
+
     /**
      * Returns true if this method expects multiple response messages such as
      * when sending a message over a topic.
@@ -387,12 +949,11 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
         if (jmsPriority >= 0) {
             requestMessage.setJMSPriority(jmsPriority);
         }
-        if (messageProperties != null) {
-            for (Iterator iter = messageProperties.entrySet().iterator(); iter.hasNext();) {
-                Map.Entry entry = (Map.Entry) iter.next();
-                String name = entry.getKey().toString();
-                Object value = entry.getValue();
-                requestMessage.setObjectProperty(name, value);
+        String[] names = messagePropertyNames;
+        if (names != null) {
+            Object[] values = messagePropertyValues;
+            for (int i = 0; i < names.length; i++) {
+                requestMessage.setObjectProperty(names[i], values[i]);
             }
         }
     }
@@ -416,17 +977,20 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
         return result.recreate();
     }
 
-    protected void replaceRemoteReferences(LingoInvocation invocation, MethodMetadata metadata) {
+    protected void replaceRemoteReferences(Requestor requestor, LingoInvocation invocation, InvocationPlan plan) {
+        int[] indexes = plan.getRemoteParameterIndexes();
+        if (indexes.length == 0) {
+            return;
+        }
         Object[] arguments = invocation.getArguments();
-        Class[] parameterTypes = invocation.getParameterTypes();
-        for (int i = 0; i < parameterTypes.length; i++) {
-            if (metadata.isRemoteParameter(i)) {
-                arguments[i] = remoteReference(parameterTypes[i], arguments[i]);
-            }
+        Class[] parameterTypes = plan.getParameterTypes();
+        for (int i = 0; i < indexes.length && indexes[i] < arguments.length; i++) {
+            int index = indexes[i];
+            arguments[index] = remoteReference(requestor, parameterTypes[index], arguments[index]);
         }
     }
 
-    protected Object remoteReference(Class type, Object value) {
+    protected Object remoteReference(Requestor requestor, Class type, Object value) {
         if (value == null) {
             return null;
         }
@@ -437,7 +1001,7 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
         }
         if (requestor instanceof MultiplexingRequestor) {
             MultiplexingRequestor multiplexingRequestor = (MultiplexingRequestor) requestor;
-            multiplexingRequestor.registerHandler(correlationID, createAsyncHandler(value), getRemoteReferenceTimeout());
+            multiplexingRequestor.registerHandler(correlationID, createAsyncHandler(requestor, value), getRemoteReferenceTimeout());
         }
         else {
             throw new IllegalArgumentException("You can only pass remote references with a MultiplexingRequestor");
@@ -447,15 +1011,38 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
 
     protected ResultJoinHandler createResultJoinHandler(MethodInvocation methodInvocation, MethodMetadata metadata) {
         ResultJoinStrategy joinStrategy = getMetadataStrategy().getResultJoinStrategy(methodInvocation, metadata);
-        return new ResultJoinHandler(marshaller, joinStrategy);
+        return new ResultJoinHandler(marshaller, joinStrategy, getMultipleResponseTimeout());
+    }
+
+    protected StreamingResultHandler createStreamingResultHandler(ResultCallback callback) {
+        return new StreamingResultHandler(marshaller, callback, getMultipleResponseTimeout());
+    }
+
+    protected ChunkedResultIterator createChunkedResultIterator(Requestor requestor) {
+        return new ChunkedResultIterator(requestor, marshaller, getResponseTimeout());
     }
 
-    protected AsyncReplyHandler createAsyncHandler(Object value) {
+    /**
+     * Returns the executor used to time out asynchronous requests, lazily
+     * creating it
+     */
+    protected synchronized ScheduledExecutorService getTimeoutExecutor() {
+        if (timeoutExecutor == null) {
+            timeoutExecutor = new ScheduledThreadPoolExecutor(1);
+        }
+        return timeoutExecutor;
+    }
+
+    protected AsyncResultHandler createAsyncResultHandler(ResultCallback callback) {
+        return new AsyncResultHandler(marshaller, callback);
+    }
+
+    protected AsyncReplyHandler createAsyncHandler(Requestor requestor, Object value) {
         AsyncReplyHandler replyHandler = new AsyncReplyHandler(value, marshaller, getMetadataStrategy());
         replyHandler.setConnectionFactory(connectionFactory);
         replyHandler.setMarshaller(marshaller);
         replyHandler.setProducerConfig(producerConfig);
-        replyHandler.setResponseRequestor(getRequestor());
+        replyHandler.setResponseRequestor(requestor);
         replyHandler.setInvocationFactory(getRemoteInvocationFactory());
         try {
             replyHandler.afterPropertiesSet();
@@ -466,7 +1053,67 @@ public class JmsClientInterceptor extends RemoteInvocationBasedAccessor implemen
         return replyHandler;
     }
 
+    protected OneWayBatcher createOneWayBatcher() throws JMSException {
+        return new OneWayBatcher(borrowRequestor(), marshaller, oneWayBatchSize, oneWayBatchLingerTime) {
+            protected void populateHeaders(Message message) throws JMSException {
+                JmsClientInterceptor.this.populateHeaders(message);
+            }
+        };
+    }
+
+    /**
+     * Returns the requestor to use for a request, borrowing one from the
+     * {@link RequestorPool} if no requestor is configured
+     */
+    protected Requestor borrowRequestor() throws JMSException {
+        if (requestor == null && requestorPool != null) {
+            return requestorPool.borrowRequestor();
+        }
+        return requestor;
+    }
+
+    /**
+     * Returns a requestor obtained from {@link #borrowRequestor()} to the
+     * {@link RequestorPool} if it was borrowed from it
+     */
+    protected void returnRequestor(Requestor borrowed) {
+        if (borrowed != null && borrowed != requestor && requestorPool != null) {
+            requestorPool.returnRequestor(borrowed);
+        }
+    }
+
+    /**
+     * Creates a connection which consumes the messages published to the
+     * {@link #setCacheInvalidationTopic(Destination) cacheInvalidationTopic}
+     */
+    protected Connection subscribeToInvalidations() throws JMSException {
+        if (connectionFactory == null) {
+            throw new IllegalArgumentException("connectionFactory is required when using a cacheInvalidationTopic");
+        }
+        Connection connection = connectionFactory.createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(cacheInvalidationTopic);
+            consumer.setMessageListener(getResultCache());
+            connection.start();
+        }
+        catch (JMSException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
     protected Requestor createRequestor() throws JMSException {
+        if (sharedReplyQueue && responseDestination == null) {
+            if (concurrentProducers > 1) {
+                return ConcurrentMultiplexingRequestor.newSharedReplyInstance(connectionFactory, getProducerConfig(), destination, concurrentProducers);
+            }
+            return MultiplexingRequestor.newSharedReplyInstance(connectionFactory, getProducerConfig(), destination);
+        }
+        if (concurrentProducers > 1) {
+            return ConcurrentMultiplexingRequestor.newInstance(connectionFactory, getProducerConfig(), destination, responseDestination, concurrentProducers);
+        }
         return MultiplexingRequestor.newInstance(connectionFactory, getProducerConfig(), destination, responseDestination);
     }
 
@@ -17,6 +17,8 @@
  **/
 package org.logicblaze.lingo.jms;
 
+import javax.jms.JMSException;
+
 /**
  * Represents a pool of JMS producers
  *
@@ -24,7 +26,18 @@ package org.logicblaze.lingo.jms;
  */
 public interface JmsProducerPool {
 
-    public JmsProducer borrowProducer();
+    /**
+     * Borrows a producer from the pool, waiting if the pool is exhausted
+     * 
+     * @throws JMSException
+     *             if a producer could not be created or none became
+     *             available in time
+     */
+    public JmsProducer borrowProducer() throws JMSException;
 
+    /**
+     * Returns a producer previously borrowed from this pool so that it can be
+     * reused
+     */
     public void returnProducer(JmsProducer producer);
 }
@@ -17,6 +17,9 @@
  **/
 package org.logicblaze.lingo.jms;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.logicblaze.lingo.jms.impl.ConcurrentMultiplexingRequestor;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 
@@ -39,23 +42,40 @@ import javax.jms.Topic;
  * @see JmsProxyFactoryBean
  */
 public class JmsServiceExporter extends JmsServiceExporterMessageListener implements InitializingBean, DisposableBean {
+    private static final Log log = LogFactory.getLog(JmsServiceExporter.class);
+
     private Destination destination;
     private MessageConsumer consumer;
+    private Session[] extraSessions = {};
     private String messageSelector;
     private String subscriberName;
     private boolean noLocal;
+    private int concurrentConsumers = 1;
 
     public void afterPropertiesSet() throws Exception {
+        if (concurrentConsumers > 1 && getResponseRequestor() == null && getConnectionFactory() != null) {
+            // lets allow the responses to be sent concurrently too
+            setResponseRequestor(ConcurrentMultiplexingRequestor.newInstance(getConnectionFactory(), getProducerConfig(), null, null, concurrentConsumers));
+        }
         super.afterPropertiesSet();
 
         // do we have a destination specified, if so consume
         if (destination != null) {
             consumer = createConsumer();
             consumer.setMessageListener(this);
+            createExtraConsumers();
         }
     }
 
     public void destroy() throws Exception {
+        for (int i = 0; i < extraSessions.length; i++) {
+            try {
+                extraSessions[i].close();
+            }
+            catch (JMSException e) {
+                log.warn("Failed to close session: " + e, e);
+            }
+        }
         if (consumer != null) {
             consumer.close();
         }
@@ -107,6 +127,23 @@ public class JmsServiceExporter extends JmsServiceExporterMessageListener implem
         this.subscriberName = subscriberName;
     }
 
+    public int getConcurrentConsumers() {
+        return concurrentConsumers;
+    }
+
+    /**
+     * Sets the number of sessions and consumers used to consume requests from
+     * a queue so that requests can be processed concurrently. JMS delivers
+     * messages serially to each session so a value of 1 means requests are
+     * processed one at a time. Messages with the same JMSXGroupID are
+     * dispatched by the broker to the same consumer, so stateful invocations
+     * are still processed in order. Topic subscriptions always use a single
+     * consumer to avoid processing each request more than once.
+     */
+    public void setConcurrentConsumers(int concurrentConsumers) {
+        this.concurrentConsumers = concurrentConsumers;
+    }
+
     // Implementation methods
     // -------------------------------------------------------------------------
 
@@ -115,7 +152,13 @@ public class JmsServiceExporter extends JmsServiceExporterMessageListener implem
      * Factory method to create the consumer
      */
     protected MessageConsumer createConsumer() throws JMSException {
-        Session session = getResponseRequestor().getSession();
+        return createConsumer(getResponseRequestor().getSession());
+    }
+
+    /**
+     * Factory method to create a consumer on the given session
+     */
+    protected MessageConsumer createConsumer(Session session) throws JMSException {
         if (subscriberName != null) {
             if (destination instanceof Topic) {
                 Topic topic = (Topic) destination;
@@ -131,4 +174,24 @@ public class JmsServiceExporter extends JmsServiceExporterMessageListener implem
         }
     }
 
+    /**
+     * Creates the additional sessions and consumers used to process requests
+     * concurrently
+     */
+    protected void createExtraConsumers() throws JMSException {
+        int count = concurrentConsumers - 1;
+        if (count <= 0) {
+            return;
+        }
+        if (destination instanceof Topic) {
+            log.warn("Ignoring concurrentConsumers value of: " + concurrentConsumers + " as the destination is a topic: " + destination);
+            return;
+        }
+        extraSessions = new Session[count];
+        for (int i = 0; i < count; i++) {
+            extraSessions[i] = getProducerConfig().createSession(getResponseRequestor().getConnection());
+            createConsumer(extraSessions[i]).setMessageListener(this);
+        }
+    }
+
 }
@@ -17,6 +17,10 @@
  **/
 package org.logicblaze.lingo.jms;
 
+import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentLinkedQueue;
+import edu.emory.mathcs.backport.java.util.concurrent.ExecutionException;
+import edu.emory.mathcs.backport.java.util.concurrent.Future;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.logicblaze.lingo.LingoInvocation;
@@ -24,12 +28,18 @@ import org.logicblaze.lingo.LingoRemoteInvocationFactory;
 import org.logicblaze.lingo.MetadataStrategy;
 import org.logicblaze.lingo.MetadataStrategyHelper;
 import org.logicblaze.lingo.MethodMetadata;
+import org.logicblaze.lingo.MethodTable;
+import org.logicblaze.lingo.jms.impl.ChunkedResultSender;
 import org.logicblaze.lingo.jms.impl.DefaultJmsProducer;
 import org.logicblaze.lingo.jms.impl.MultiplexingRequestor;
 import org.logicblaze.lingo.jms.marshall.DefaultMarshaller;
 import org.logicblaze.lingo.jms.marshall.Marshaller;
+import org.logicblaze.lingo.jmx.MethodStatistics;
+import org.logicblaze.lingo.jmx.ServiceMetrics;
+import org.logicblaze.lingo.util.HashedWheelTimeoutMap;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.remoting.support.DefaultRemoteInvocationExecutor;
 import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationBasedExporter;
 import org.springframework.remoting.support.RemoteInvocationFactory;
@@ -38,11 +48,17 @@ import org.springframework.remoting.support.RemoteInvocationResult;
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.DeliveryMode;
+import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.jms.Session;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Iterator;
+
 /**
  * A JMS MessageListener that exports the specified service bean as a JMS
  * service endpoint, accessible via a JMS proxy. <p/>
@@ -59,6 +75,69 @@ import javax.jms.Session;
 public class JmsServiceExporterMessageListener extends RemoteInvocationBasedExporter implements MessageListener, InitializingBean, DisposableBean {
     private static final Log log = LogFactory.getLog(JmsServiceExporterMessageListener.class);
 
+    /**
+     * The message property used by clients to request the {@link MethodTable}
+     * of the service
+     */
+    public static final String METHOD_TABLE_REQUEST = "LingoMethodTableRequest";
+
+    /**
+     * The message property of a method table response containing the
+     * {@link MethodTable#getHash() hash} of the table
+     */
+    public static final String METHOD_TABLE_HASH = "LingoMethodTableHash";
+
+    /**
+     * The message property containing the number of one way invocations in a
+     * batch message
+     */
+    public static final String BATCH_SIZE = "LingoBatchSize";
+
+    /**
+     * The message property containing the correlation ID of a request as a
+     * long which is copied to the response
+     */
+    public static final String CORRELATION_ID = "LingoCorrelationID";
+
+    /**
+     * The message property used by clients to request that an
+     * {@link Iterator} or {@link Collection} result is streamed back in chunks
+     * of at most this many elements
+     */
+    public static final String RESULT_CHUNK_SIZE = "LingoResultChunkSize";
+
+    /**
+     * The message property containing the number of chunks which may be sent
+     * before the client grants more credit
+     */
+    public static final String RESULT_CHUNK_WINDOW = "LingoResultChunkWindow";
+
+    /**
+     * The message property identifying the stream a chunk belongs to which is
+     * used as the correlation ID of credit messages
+     */
+    public static final String RESULT_STREAM_ID = "LingoResultStreamID";
+
+    /**
+     * The message property which is true on the last chunk of a result
+     */
+    public static final String LAST_CHUNK = "LingoLastChunk";
+
+    /**
+     * The message property containing the number of further chunks a client
+     * grants to a stream, or zero to cancel the stream
+     */
+    public static final String CHUNK_CREDIT = "LingoChunkCredit";
+
+    public static final int DEFAULT_CHUNK_WINDOW = 4;
+
+    /**
+     * The message property of a cache invalidation message containing the name
+     * of the method whose cached results are invalidated, or no value to
+     * invalidate all cached results
+     */
+    public static final String INVALIDATE_METHOD = "LingoInvalidateMethod";
+
     private Object proxy;
     private ConnectionFactory connectionFactory;
     private Requestor responseRequestor;
@@ -67,6 +146,18 @@ public class JmsServiceExporterMessageListener extends RemoteInvocationBasedExpo
     private Marshaller marshaller;
     private MetadataStrategy metadataStrategy;
     private RemoteInvocationFactory invocationFactory;
+    private volatile MethodTable methodTable;
+    private volatile Method[] invokers;
+    private HashedWheelTimeoutMap remoteProxies;
+    private long remoteReferenceTimeout = 60000L;
+    private int maximumRemoteProxies = 1000;
+    private long resultStreamTimeout = 60000L;
+    private HashedWheelTimeoutMap replyCache;
+    private long replyCacheTimeout = 60000L;
+    private int maximumCachedReplies;
+    private final ConcurrentLinkedQueue cachedReplyKeys = new ConcurrentLinkedQueue();
+    private Destination cacheInvalidationTopic;
+    private ServiceMetrics metrics;
 
     public JmsServiceExporterMessageListener() {
     }
@@ -94,11 +185,24 @@ public class JmsServiceExporterMessageListener extends RemoteInvocationBasedExpo
         if (invocationFactory == null) {
             invocationFactory = new LingoRemoteInvocationFactory(metadataStrategy);
         }
+        getMethodTable();
     }
 
     public void onMessage(Message message) {
         try {
+            if (message.propertyExists(METHOD_TABLE_REQUEST)) {
+                writeMethodTable(message);
+                return;
+            }
+            if (message.propertyExists(BATCH_SIZE)) {
+                doInvokeBatch(message);
+                return;
+            }
+            long time = metrics != null ? MethodStatistics.currentTime() : 0L;
             RemoteInvocation invocation = marshaller.readRemoteInvocation(message);
+            if (metrics != null && invocation != null) {
+                MethodStatistics.recordPhase(getMethodStatistics(invocation), MethodStatistics.UNMARSHAL, time);
+            }
             doInvoke(message, invocation);
         }
         catch (JMSException e) {
@@ -106,6 +210,24 @@ public class JmsServiceExporterMessageListener extends RemoteInvocationBasedExpo
         }
     }
 
+    /**
+     * Tells clients subscribed to the
+     * {@link #setCacheInvalidationTopic(Destination) cacheInvalidationTopic} to
+     * discard their cached results of the methods with the given name, or of
+     * all methods if the name is null
+     */
+    public void invalidateCachedResults(String methodName) throws JMSException {
+        if (cacheInvalidationTopic == null) {
+            throw new IllegalStateException("No cacheInvalidationTopic has been configured");
+        }
+        Requestor requestor = getResponseRequestor();
+        Message message = requestor.getSession().createMessage();
+        if (methodName != null) {
+            message.setStringProperty(INVALIDATE_METHOD, methodName);
+        }
+        requestor.send(cacheInvalidationTopic, message);
+    }
+
     public void destroy() throws Exception {
         if (responseRequestor != null) {
             responseRequestor.close();
@@ -209,23 +331,334 @@ public class JmsServiceExporterMessageListener extends RemoteInvocationBasedExpo
         this.metadataStrategy = metadataStrategy;
     }
 
+    public long getRemoteReferenceTimeout() {
+        return remoteReferenceTimeout;
+    }
+
+    /**
+     * Sets the amount of time a cached proxy to a remote object passed by a
+     * client is kept around after it was last used. This should match the
+     * remoteReferenceTimeout of the clients.
+     */
+    public void setRemoteReferenceTimeout(long remoteReferenceTimeout) {
+        this.remoteReferenceTimeout = remoteReferenceTimeout;
+    }
+
+    public int getMaximumRemoteProxies() {
+        return maximumRemoteProxies;
+    }
+
+    /**
+     * Sets the maximum number of proxies to remote objects passed by clients
+     * which are cached so that they can be reused by later invocations which
+     * pass the same remote object. A value of zero disables the cache.
+     */
+    public void setMaximumRemoteProxies(int maximumRemoteProxies) {
+        this.maximumRemoteProxies = maximumRemoteProxies;
+    }
+
+    public long getReplyCacheTimeout() {
+        return replyCacheTimeout;
+    }
+
+    /**
+     * Sets the amount of time the result of a request is cached so that it
+     * can be replayed if the request is redelivered
+     */
+    public void setReplyCacheTimeout(long replyCacheTimeout) {
+        this.replyCacheTimeout = replyCacheTimeout;
+    }
+
+    public int getMaximumCachedReplies() {
+        return maximumCachedReplies;
+    }
+
+    /**
+     * Sets the maximum number of results which are cached, keyed by the reply
+     * destination and correlation ID of the request, so that a request which
+     * is redelivered by the broker, such as after a failover, is answered with
+     * the cached result rather than invoking the service again.
+     * A value of zero, the default, disables the cache.
+     */
+    public void setMaximumCachedReplies(int maximumCachedReplies) {
+        this.maximumCachedReplies = maximumCachedReplies;
+    }
+
+    public Destination getCacheInvalidationTopic() {
+        return cacheInvalidationTopic;
+    }
+
+    /**
+     * Sets the topic on which messages are published to invalidate the results
+     * cached by clients
+     */
+    public void setCacheInvalidationTopic(Destination cacheInvalidationTopic) {
+        this.cacheInvalidationTopic = cacheInvalidationTopic;
+    }
+
+    public long getResultStreamTimeout() {
+        return resultStreamTimeout;
+    }
+
+    /**
+     * Sets the amount of time a result which is being streamed to a client in
+     * chunks is kept around waiting for the client to ask for more chunks
+     */
+    public void setResultStreamTimeout(long resultStreamTimeout) {
+        this.resultStreamTimeout = resultStreamTimeout;
+    }
+
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics used to record the number of invocations and the time
+     * spent in each phase of the invocations of each method or null if no
+     * metrics are recorded
+     */
+    public void setMetrics(ServiceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the cache of proxies to remote objects, lazily creating it, or
+     * null if caching is disabled
+     */
+    public synchronized HashedWheelTimeoutMap getRemoteProxies() {
+        if (remoteProxies == null && maximumRemoteProxies > 0) {
+            remoteProxies = createRemoteProxyCache();
+        }
+        return remoteProxies;
+    }
+
+    /**
+     * Returns the cache of results of recent requests, lazily creating it, or
+     * null if caching is disabled
+     */
+    public synchronized HashedWheelTimeoutMap getReplyCache() {
+        if (replyCache == null && maximumCachedReplies > 0) {
+            replyCache = createReplyCache();
+        }
+        return replyCache;
+    }
+
+    /**
+     * Returns the table of methods which clients can invoke by ID, which is
+     * created from the service interface when this listener is initialised
+     */
+    public MethodTable getMethodTable() {
+        MethodTable answer = methodTable;
+        if (answer == null) {
+            answer = createMethodTable();
+        }
+        return answer;
+    }
+
     // Implementation methods
     // -------------------------------------------------------------------------
     protected void doInvoke(Message message, RemoteInvocation invocation) throws JMSException {
         if (invocation != null) {
             boolean oneway = false;
+            Method invoker = null;
             if (invocation instanceof LingoInvocation) {
                 LingoInvocation lingoInvocation = (LingoInvocation) invocation;
                 oneway = lingoInvocation.getMetadata().isOneWay();
+                if (lingoInvocation.getMethodId() > 0) {
+                    try {
+                        invoker = resolveMethodId(lingoInvocation);
+                    }
+                    catch (MethodTableMismatchException e) {
+                        if (oneway) {
+                            // there is no one to retry so lets not redeliver it forever
+                            log.warn("Discarding one way invocation: " + e.getMessage());
+                            return;
+                        }
+                        // lets tell the client so that it can retry by name
+                        log.warn("Rejecting invocation: " + e.getMessage());
+                        writeRemoteInvocationResult(message, new RemoteInvocationResult(e));
+                        return;
+                    }
+                }
                 introduceRemoteReferences(lingoInvocation, message);
             }
-            RemoteInvocationResult result = invokeAndCreateResult(invocation, this.proxy);
+            ReplyKey replyKey = null;
             if (!oneway) {
-                writeRemoteInvocationResult(message, result);
+                replyKey = createReplyKey(message);
+                if (replyKey != null && replayCachedResult(message, replyKey)) {
+                    return;
+                }
+            }
+            MethodStatistics statistics = null;
+            long startTime = 0L;
+            if (metrics != null) {
+                statistics = getMethodStatistics(invocation);
+                statistics.start();
+                startTime = MethodStatistics.currentTime();
+            }
+            boolean error = true;
+            try {
+                RemoteInvocationResult result = null;
+                if (invoker != null && getRemoteInvocationExecutor().getClass() == DefaultRemoteInvocationExecutor.class) {
+                    result = invokeAndCreateResult(invoker, invocation.getArguments());
+                }
+                else {
+                    result = invokeAndCreateResult(invocation, this.proxy);
+                }
+                if (!oneway) {
+                    result = completeFutureResult(result);
+                }
+                long time = MethodStatistics.recordPhase(statistics, MethodStatistics.INVOKE, startTime);
+                if (!oneway) {
+                    if (isChunkedResult(message, result)) {
+                        writeChunkedResult(message, result);
+                    }
+                    else {
+                        if (replyKey != null) {
+                            cacheResult(replyKey, result);
+                        }
+                        writeRemoteInvocationResult(message, result);
+                    }
+                    MethodStatistics.recordPhase(statistics, MethodStatistics.SEND, time);
+                }
+                error = result.hasException();
+            }
+            finally {
+                if (statistics != null) {
+                    statistics.end(MethodStatistics.currentTime() - startTime, error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invokes each of the one way invocations in a batch message in order
+     */
+    protected void doInvokeBatch(Message message) throws JMSException {
+        Object body = marshaller.readMessage(message);
+        if (!(body instanceof RemoteInvocation[])) {
+            throw new JMSException("Invalid batch message body: " + body);
+        }
+        RemoteInvocation[] invocations = (RemoteInvocation[]) body;
+        for (int i = 0; i < invocations.length; i++) {
+            // lets not let one failed invocation lose the rest of the batch
+            try {
+                doInvoke(message, invocations[i]);
+            }
+            catch (JMSException e) {
+                log.warn("Failed to invoke batched invocation: " + invocations[i] + ". Reason: " + e, e);
+            }
+            catch (RuntimeException e) {
+                log.warn("Failed to invoke batched invocation: " + invocations[i] + ". Reason: " + e, e);
             }
         }
     }
 
+    /**
+     * Returns the statistics of the method being invoked
+     */
+    protected MethodStatistics getMethodStatistics(RemoteInvocation invocation) {
+        String methodName = invocation.getMethodName();
+        if (methodName == null && invocation instanceof LingoInvocation) {
+            Method method = getMethodTable().getMethod(((LingoInvocation) invocation).getMethodId());
+            if (method != null) {
+                return metrics.getMethodStatistics(MethodTable.getSignature(method));
+            }
+        }
+        Class[] parameterTypes = invocation.getParameterTypes();
+        if (parameterTypes == null) {
+            parameterTypes = new Class[0];
+        }
+        return metrics.getMethodStatistics(MethodTable.getSignature(String.valueOf(methodName), parameterTypes));
+    }
+
+    /**
+     * Creates the table of methods and the methods of the service which
+     * implement them, unless they have already been created
+     */
+    protected synchronized MethodTable createMethodTable() {
+        if (methodTable == null) {
+            Class type = getServiceInterface();
+            if (type == null) {
+                type = proxy.getClass();
+            }
+            MethodTable table = new MethodTable(type);
+            Method[] methods = new Method[table.size()];
+            for (int i = 0; i < methods.length; i++) {
+                Method method = table.getMethod(i + 1);
+                try {
+                    methods[i] = proxy.getClass().getMethod(method.getName(), method.getParameterTypes());
+                }
+                catch (NoSuchMethodException e) {
+                    log.debug("Service does not implement method: " + method);
+                }
+            }
+            // the invokers must be visible before the table
+            invokers = methods;
+            methodTable = table;
+        }
+        return methodTable;
+    }
+
+    /**
+     * Populates the method name and parameter types of an invocation which
+     * only contains a method ID, returning the precomputed method to invoke on
+     * the service
+     * 
+     * @throws MethodTableMismatchException
+     *             if the ID was taken from a different version of the method
+     *             table
+     */
+    protected Method resolveMethodId(LingoInvocation invocation) throws JMSException {
+        int methodId = invocation.getMethodId();
+        MethodTable table = getMethodTable();
+        if (invocation.getMethodTableHash() != table.getHash()) {
+            throw new MethodTableMismatchException("Method ID: " + methodId + " is from method table: " + invocation.getMethodTableHash()
+                    + " but the current method table is: " + table.getHash());
+        }
+        Method method = table.getMethod(methodId);
+        if (method == null) {
+            throw new MethodTableMismatchException("Unknown method ID: " + methodId);
+        }
+        invocation.setMethodName(method.getName());
+        invocation.setParameterTypes(method.getParameterTypes());
+        return invokers[methodId - 1];
+    }
+
+    /**
+     * Invokes the given method on the service, creating the result in the same
+     * way as {@link #invokeAndCreateResult(RemoteInvocation, Object)}
+     */
+    protected RemoteInvocationResult invokeAndCreateResult(Method method, Object[] arguments) {
+        try {
+            return new RemoteInvocationResult(method.invoke(this.proxy, arguments));
+        }
+        catch (Throwable e) {
+            return new RemoteInvocationResult(e);
+        }
+    }
+
+    /**
+     * If the service returned a {@link Future} then lets wait for its value so
+     * that the client receives the value rather than the future
+     */
+    protected RemoteInvocationResult completeFutureResult(RemoteInvocationResult result) {
+        Object value = result.getValue();
+        if (!(value instanceof Future)) {
+            return result;
+        }
+        try {
+            return new RemoteInvocationResult(((Future) value).get());
+        }
+        catch (ExecutionException e) {
+            return new RemoteInvocationResult(new InvocationTargetException(e.getCause()));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new RemoteInvocationResult(e);
+        }
+    }
+
     /**
      * Creates the invocation result response message
      * 
@@ -249,12 +682,22 @@ public class JmsServiceExporterMessageListener extends RemoteInvocationBasedExpo
         }
 
         Message answer = getMarshaller().createResponseMessage(session, result, message);
-
-        // lets preserve the correlation ID
-        answer.setJMSCorrelationID(message.getJMSCorrelationID());
+        copyCorrelationID(message, answer);
         return answer;
     }
 
+    /**
+     * Lets preserve the correlation ID of the request, including the numeric
+     * form if the client sent one
+     */
+    protected void copyCorrelationID(Message request, Message response) throws JMSException {
+        response.setJMSCorrelationID(request.getJMSCorrelationID());
+        Object correlationID = request.getObjectProperty(CORRELATION_ID);
+        if (correlationID instanceof Long) {
+            response.setLongProperty(CORRELATION_ID, ((Long) correlationID).longValue());
+        }
+    }
+
     /**
      * Lets replace any remote object correlation IDs with dynamic proxies
      * 
@@ -273,9 +716,33 @@ public class JmsServiceExporterMessageListener extends RemoteInvocationBasedExpo
     }
 
     protected Object createRemoteProxy(Message message, Class parameterType, Object argument) throws JMSException {
+        if (argument == null) {
+            return null;
+        }
+        HashedWheelTimeoutMap cache = getRemoteProxies();
+        if (cache == null) {
+            return createRemoteProxy(message.getJMSReplyTo(), parameterType, (String) argument);
+        }
+        RemoteProxyKey key = new RemoteProxyKey(message.getJMSReplyTo(), (String) argument, parameterType);
+        Object answer = cache.get(key);
+        if (answer == null) {
+            answer = createRemoteProxy(key.destination, parameterType, key.correlationID);
+            cache.purge();
+            if (cache.size() < maximumRemoteProxies) {
+                cache.put(key, answer, remoteReferenceTimeout);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Factory method to create a proxy to the remote object with the given
+     * correlationID which was passed by the client which consumes from the
+     * given destination
+     */
+    protected Object createRemoteProxy(Destination destination, Class parameterType, String correlationID) throws JMSException {
         JmsProxyFactoryBean factory = new JmsProxyFactoryBean();
-        factory.setDestination(message.getJMSReplyTo());
-        String correlationID = (String) argument;
+        factory.setDestination(destination);
         if (log.isDebugEnabled()) {
             log.debug("Creating a server side remote proxy for correlationID: " + correlationID);
         }
@@ -288,6 +755,74 @@ public class JmsServiceExporterMessageListener extends RemoteInvocationBasedExpo
         return factory.getObject();
     }
 
+    /**
+     * Factory method to create the cache of proxies to remote objects which is
+     * purged as new proxies are added
+     */
+    protected HashedWheelTimeoutMap createRemoteProxyCache() {
+        return new HashedWheelTimeoutMap(null, 1000L);
+    }
+
+    /**
+     * Factory method to create the cache of the results of recent requests
+     * which is purged as new results are added
+     */
+    protected HashedWheelTimeoutMap createReplyCache() {
+        return new HashedWheelTimeoutMap(null, 1000L);
+    }
+
+    /**
+     * Returns the key of the request in the reply cache or null if the result
+     * should not be cached
+     */
+    protected ReplyKey createReplyKey(Message message) throws JMSException {
+        String correlationID = message.getJMSCorrelationID();
+        if (correlationID == null || getReplyCache() == null) {
+            return null;
+        }
+        return new ReplyKey(message.getJMSReplyTo(), correlationID);
+    }
+
+    /**
+     * If the request has been redelivered and its result has already been
+     * cached then lets send it again rather than invoking the service,
+     * returning true if the result was replayed. Only redelivered requests are
+     * replayed as some clients reuse the same correlation ID for many requests.
+     */
+    protected boolean replayCachedResult(Message message, ReplyKey key) throws JMSException {
+        if (!message.getJMSRedelivered()) {
+            return false;
+        }
+        RemoteInvocationResult result = (RemoteInvocationResult) getReplyCache().get(key);
+        if (result == null) {
+            return false;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Replaying cached result for redelivered request: " + key);
+        }
+        writeRemoteInvocationResult(message, result);
+        return true;
+    }
+
+    /**
+     * Caches the result, evicting the oldest results if the cache is full
+     */
+    protected void cacheResult(ReplyKey key, RemoteInvocationResult result) {
+        HashedWheelTimeoutMap cache = getReplyCache();
+        cache.purge();
+        cache.put(key, result, replyCacheTimeout);
+        cachedReplyKeys.add(key);
+        // lets also discard the keys of the results which have expired
+        for (Object eldest = cachedReplyKeys.peek(); eldest != null; eldest = cachedReplyKeys.peek()) {
+            if (cache.size() <= maximumCachedReplies && cache.containsKey(eldest)) {
+                break;
+            }
+            if (cachedReplyKeys.remove(eldest) && !eldest.equals(key)) {
+                cache.remove(eldest);
+            }
+        }
+    }
+
     /**
      * Handle the processing of an exception when processing an inbound messsage
      */
@@ -312,4 +847,145 @@ public class JmsServiceExporterMessageListener extends RemoteInvocationBasedExpo
         Message responseMessage = createResponseMessage(getResponseRequestor().getSession(), message, result);
         getResponseRequestor().send(message.getJMSReplyTo(), responseMessage);
     }
+
+    /**
+     * Returns true if the client asked for the result to be streamed in chunks
+     * and the service returned an {@link Iterator} or {@link Collection}
+     */
+    protected boolean isChunkedResult(Message message, RemoteInvocationResult result) throws JMSException {
+        if (result.hasException() || !message.propertyExists(RESULT_CHUNK_SIZE)) {
+            return false;
+        }
+        Object value = result.getValue();
+        return value instanceof Iterator || value instanceof Collection;
+    }
+
+    /**
+     * Streams the elements of the result to the originator in chunks, sending
+     * further chunks as the client grants credit for them
+     */
+    protected void writeChunkedResult(final Message message, RemoteInvocationResult result) throws JMSException {
+        Object value = result.getValue();
+        Iterator iterator = value instanceof Collection ? ((Collection) value).iterator() : (Iterator) value;
+        int window = DEFAULT_CHUNK_WINDOW;
+        if (message.propertyExists(RESULT_CHUNK_WINDOW)) {
+            window = message.getIntProperty(RESULT_CHUNK_WINDOW);
+        }
+        Requestor requestor = getResponseRequestor();
+        MultiplexingRequestor creditRequestor = null;
+        Destination creditDestination = null;
+        if (requestor instanceof MultiplexingRequestor) {
+            creditRequestor = (MultiplexingRequestor) requestor;
+            creditDestination = creditRequestor.getInboundDestination();
+        }
+        ChunkedResultSender sender = new ChunkedResultSender(requestor, getMarshaller(), message, iterator, message.getIntProperty(RESULT_CHUNK_SIZE),
+                creditDestination) {
+            protected Message createChunkMessage(Session session, RemoteInvocationResult chunk) throws JMSException {
+                return createResponseMessage(session, message, chunk);
+            }
+        };
+        if (creditDestination == null) {
+            sender.start(window);
+            return;
+        }
+        creditRequestor.registerHandler(sender.getStreamID(), sender, resultStreamTimeout);
+        boolean started = false;
+        try {
+            sender.start(window);
+            started = true;
+        }
+        finally {
+            // lets not wait for credit for a stream which has already ended
+            if (!started || sender.isComplete()) {
+                creditRequestor.unregisterHandler(sender.getStreamID());
+            }
+        }
+    }
+
+    /**
+     * Creates the response to a request for the {@link MethodTable} of the
+     * service
+     */
+    protected Message createMethodTableMessage(Session session, Message message) throws JMSException {
+        MethodTable table = getMethodTable();
+        Message answer = getMarshaller().createObjectMessage(session, table.getSignatures());
+        answer.setIntProperty(METHOD_TABLE_HASH, table.getHash());
+        copyCorrelationID(message, answer);
+        return answer;
+    }
+
+    /**
+     * Sends the signatures of the {@link MethodTable} of the service to the
+     * originator
+     */
+    protected void writeMethodTable(Message message) throws JMSException {
+        Message responseMessage = createMethodTableMessage(getResponseRequestor().getSession(), message);
+        getResponseRequestor().send(message.getJMSReplyTo(), responseMessage);
+    }
+
+    /**
+     * The key of a cached result which identifies the request by the
+     * destination the client consumes from and its correlation ID
+     */
+    protected static class ReplyKey {
+        private final Destination destination;
+        private final String correlationID;
+        private final int hashCode;
+
+        public ReplyKey(Destination destination, String correlationID) {
+            this.destination = destination;
+            this.correlationID = correlationID;
+            this.hashCode = (destination != null ? destination.hashCode() : 0) ^ correlationID.hashCode();
+        }
+
+        public boolean equals(Object object) {
+            if (!(object instanceof ReplyKey)) {
+                return false;
+            }
+            ReplyKey that = (ReplyKey) object;
+            return correlationID.equals(that.correlationID) && (destination == null ? that.destination == null : destination.equals(that.destination));
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public String toString() {
+            return "ReplyKey[" + destination + ", " + correlationID + "]";
+        }
+    }
+
+    /**
+     * The key of a cached proxy to a remote object
+     */
+    protected static class RemoteProxyKey {
+        private final Destination destination;
+        private final String correlationID;
+        private final Class type;
+        private final int hashCode;
+
+        public RemoteProxyKey(Destination destination, String correlationID, Class type) {
+            this.destination = destination;
+            this.correlationID = correlationID;
+            this.type = type;
+            this.hashCode = (destination != null ? destination.hashCode() : 0) ^ correlationID.hashCode() ^ type.hashCode();
+        }
+
+        public boolean equals(Object object) {
+            if (!(object instanceof RemoteProxyKey)) {
+                return false;
+            }
+            RemoteProxyKey that = (RemoteProxyKey) object;
+            return correlationID.equals(that.correlationID) && type == that.type
+                    && (destination == null ? that.destination == null : destination.equals(that.destination));
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public String toString() {
+            return "RemoteProxyKey[" + destination + ", " + correlationID + ", " + type.getName() + "]";
+        }
+    }
 }
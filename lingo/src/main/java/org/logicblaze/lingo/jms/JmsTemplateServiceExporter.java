@@ -38,11 +38,12 @@ import javax.jms.Session;
  */
 public class JmsTemplateServiceExporter extends JmsServiceExporterMessageListener implements InitializingBean {
     private JmsTemplate template;
+    private JmsProducerPool producerPool;
 
     public void afterPropertiesSet() throws Exception {
         super.afterPropertiesSet();
-        if (template == null) {
-            throw new IllegalArgumentException("template is required");
+        if (template == null && producerPool == null) {
+            throw new IllegalArgumentException("template or producerPool is required");
         }
     }
 
@@ -60,6 +61,18 @@ public class JmsTemplateServiceExporter extends JmsServiceExporterMessageListene
         this.template = template;
     }
 
+    public JmsProducerPool getProducerPool() {
+        return producerPool;
+    }
+
+    /**
+     * Sets the pool of producers used to send replies back for the request
+     * rather than the JMS template
+     */
+    public void setProducerPool(JmsProducerPool producerPool) {
+        this.producerPool = producerPool;
+    }
+
     /**
      * Send the given RemoteInvocationResult as a JMS message to the originator
      * 
@@ -72,6 +85,16 @@ public class JmsTemplateServiceExporter extends JmsServiceExporterMessageListene
      */
     protected void writeRemoteInvocationResult(final Message message, final RemoteInvocationResult result)
             throws JMSException {
+        if (producerPool != null) {
+            JmsProducer producer = producerPool.borrowProducer();
+            try {
+                producer.send(message.getJMSReplyTo(), createResponseMessage(producer.getSession(), message, result));
+            }
+            finally {
+                producerPool.returnProducer(producer);
+            }
+            return;
+        }
         template.send(message.getJMSReplyTo(), new MessageCreator() {
             public Message createMessage(Session session) throws JMSException {
                 return createResponseMessage(session, message, result);
@@ -79,4 +102,22 @@ public class JmsTemplateServiceExporter extends JmsServiceExporterMessageListene
         });
     }
 
+    protected void writeMethodTable(final Message message) throws JMSException {
+        if (producerPool != null) {
+            JmsProducer producer = producerPool.borrowProducer();
+            try {
+                producer.send(message.getJMSReplyTo(), createMethodTableMessage(producer.getSession(), message));
+            }
+            finally {
+                producerPool.returnProducer(producer);
+            }
+            return;
+        }
+        template.send(message.getJMSReplyTo(), new MessageCreator() {
+            public Message createMessage(Session session) throws JMSException {
+                return createMethodTableMessage(session, message);
+            }
+        });
+    }
+
 }
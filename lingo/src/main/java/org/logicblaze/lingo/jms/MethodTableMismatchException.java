@@ -0,0 +1,37 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import javax.jms.JMSException;
+
+/**
+ * Thrown by a server when an invocation identifies its method by an ID from a
+ * different version of the server's {@link org.logicblaze.lingo.MethodTable},
+ * such as after the service has been redeployed with different methods. The
+ * client should invoke the method by its name instead.
+ * 
+ * @version $Revision$
+ */
+public class MethodTableMismatchException extends JMSException {
+
+    private static final long serialVersionUID = 2946913843518207153L;
+
+    public MethodTableMismatchException(String reason) {
+        super(reason);
+    }
+}
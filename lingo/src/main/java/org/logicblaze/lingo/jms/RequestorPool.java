@@ -17,14 +17,27 @@
  **/
 package org.logicblaze.lingo.jms;
 
+import javax.jms.JMSException;
+
 /**
- * Represents a pool of JMS producers
+ * Represents a pool of requestors
  *
  * @version $Revision$
  */
 public interface RequestorPool {
 
-    public Requestor borrowRequestor();
+    /**
+     * Borrows a requestor from the pool, waiting if the pool is exhausted
+     * 
+     * @throws JMSException
+     *             if a requestor could not be created or none became
+     *             available in time
+     */
+    public Requestor borrowRequestor() throws JMSException;
 
+    /**
+     * Returns a requestor previously borrowed from this pool so that it can be
+     * reused
+     */
     public void returnRequestor(Requestor requestor);
 }
@@ -0,0 +1,135 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import edu.emory.mathcs.backport.java.util.concurrent.Callable;
+import edu.emory.mathcs.backport.java.util.concurrent.FutureTask;
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledFuture;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.logicblaze.lingo.ResultCallback;
+import org.logicblaze.lingo.jms.ReplyHandler;
+import org.logicblaze.lingo.jms.marshall.Marshaller;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * A {@link ReplyHandler} for an asynchronous method invocation which
+ * completes a future with the result of the invocation when the response
+ * arrives and notifies an optional {@link ResultCallback}. If a timeout is
+ * {@link #scheduleTimeout(ScheduledExecutorService, long) scheduled} and no
+ * response arrives in time then the handler is completed with a
+ * {@link RemoteAccessException} instead.
+ * 
+ * @version $Revision$
+ */
+public class AsyncResultHandler extends FutureTask implements ReplyHandler {
+    private static final Log log = LogFactory.getLog(AsyncResultHandler.class);
+
+    private static final Callable EMPTY_CALLABLE = new Callable() {
+        public Object call() throws Exception {
+            return null;
+        }
+    };
+
+    private final Marshaller marshaller;
+    private final ResultCallback callback;
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private volatile ScheduledFuture timeoutTask;
+
+    public AsyncResultHandler(Marshaller marshaller, ResultCallback callback) {
+        super(EMPTY_CALLABLE);
+        this.marshaller = marshaller;
+        this.callback = callback;
+    }
+
+    /**
+     * Completes the handler with an exception if no response has arrived
+     * within the given timeout in milliseconds
+     */
+    public void scheduleTimeout(ScheduledExecutorService executor, final long timeout) {
+        if (timeout <= 0 || completed.get()) {
+            return;
+        }
+        timeoutTask = executor.schedule(new Runnable() {
+            public void run() {
+                complete(null, new RemoteAccessException("No response received within: " + timeout + " millis"));
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean handle(Message message) throws JMSException {
+        ScheduledFuture task = timeoutTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+        Object value = null;
+        Throwable exception = null;
+        try {
+            RemoteInvocationResult result = marshaller.extractInvocationResult(message);
+            value = recreate(result);
+        }
+        catch (Throwable e) {
+            exception = e;
+        }
+        complete(value, exception);
+        return true;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected Object recreate(RemoteInvocationResult result) throws Throwable {
+        return result.recreate();
+    }
+
+    /**
+     * Completes the future and notifies the callback unless the handler has
+     * already been completed, such as by a response arriving after the timeout
+     */
+    protected void complete(Object value, Throwable exception) {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        if (exception != null) {
+            setException(exception);
+        }
+        else {
+            set(value);
+        }
+        if (callback != null) {
+            try {
+                if (exception != null) {
+                    callback.onException(exception);
+                }
+                else {
+                    callback.onResult(value);
+                }
+            }
+            catch (RuntimeException e) {
+                log.warn("Caught exception from callback: " + callback + ". Reason: " + e, e);
+            }
+        }
+    }
+}
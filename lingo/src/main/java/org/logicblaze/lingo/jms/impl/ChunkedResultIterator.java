@@ -0,0 +1,257 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import edu.emory.mathcs.backport.java.util.concurrent.LinkedBlockingQueue;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+import org.logicblaze.lingo.ResultIterator;
+import org.logicblaze.lingo.jms.JmsServiceExporterMessageListener;
+import org.logicblaze.lingo.jms.ReplyHandler;
+import org.logicblaze.lingo.jms.Requestor;
+import org.logicblaze.lingo.jms.marshall.Marshaller;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link ReplyHandler} which receives a result streamed by a
+ * {@link ChunkedResultSender} and makes its elements available lazily via the
+ * {@link ResultIterator} interface. Each time a chunk is consumed the server is
+ * granted credit to send another one, so no more than the window of chunks
+ * requested by the client are buffered at any time. If the server responds
+ * with a single ordinary result then its elements are iterated over instead.
+ * 
+ * <p/> The iterator should only be used by a single thread, though it can be
+ * cancelled from any thread.
+ * 
+ * @version $Revision$
+ */
+public class ChunkedResultIterator implements ReplyHandler, ResultIterator {
+
+    private static final Object[] EMPTY = new Object[0];
+    private static final Chunk END = new Chunk(null, true);
+
+    private final Requestor requestor;
+    private final Marshaller marshaller;
+    private final long timeout;
+    private final LinkedBlockingQueue chunks = new LinkedBlockingQueue();
+    private String correlationID;
+    private volatile String streamID;
+    private volatile Destination creditDestination;
+    private volatile boolean lastReceived;
+    private volatile boolean cancelled;
+    private Object[] elements = EMPTY;
+    private int index;
+    private Throwable failure;
+    private boolean complete;
+
+    /**
+     * Creates a new iterator
+     * 
+     * @param requestor
+     *            the requestor used to send credits to the server
+     * @param marshaller
+     *            the marshaller used to extract the chunks
+     * @param timeout
+     *            the maximum time to wait for the next chunk
+     */
+    public ChunkedResultIterator(Requestor requestor, Marshaller marshaller, long timeout) {
+        this.requestor = requestor;
+        this.marshaller = marshaller;
+        this.timeout = timeout;
+    }
+
+    public boolean handle(Message message) throws JMSException {
+        if (cancelled) {
+            return true;
+        }
+        boolean last = true;
+        if (message.propertyExists(JmsServiceExporterMessageListener.LAST_CHUNK)) {
+            last = message.getBooleanProperty(JmsServiceExporterMessageListener.LAST_CHUNK);
+            if (streamID == null) {
+                creditDestination = message.getJMSReplyTo();
+                streamID = message.getStringProperty(JmsServiceExporterMessageListener.RESULT_STREAM_ID);
+            }
+        }
+        lastReceived = last;
+        chunks.add(new Chunk(marshaller.extractInvocationResult(message), last));
+        return last;
+    }
+
+    public boolean hasNext() {
+        while (index >= elements.length) {
+            if (failure != null) {
+                return true;
+            }
+            if (complete || cancelled) {
+                return false;
+            }
+            Chunk chunk = takeChunk();
+            if (chunk == END) {
+                return false;
+            }
+            complete = chunk.last;
+            elements = EMPTY;
+            index = 0;
+            try {
+                elements = toArray(chunk.result.recreate());
+            }
+            catch (Throwable e) {
+                failure = e;
+            }
+            if (!complete) {
+                sendCredit(1);
+            }
+        }
+        return true;
+    }
+
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (failure != null) {
+            Throwable e = failure;
+            failure = null;
+            complete = true;
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new RemoteAccessException("Remote invocation failed: " + e, e);
+        }
+        // lets not hold onto elements which have been consumed
+        Object answer = elements[index];
+        elements[index++] = null;
+        return answer;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove() not supported");
+    }
+
+    public void cancel() {
+        if (!cancelled) {
+            cancelled = true;
+            chunks.clear();
+            // lets wake up any thread waiting for a chunk
+            chunks.add(END);
+            if (!lastReceived) {
+                sendCredit(0);
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public String getCorrelationID() {
+        return correlationID;
+    }
+
+    /**
+     * Sets the correlation ID of the request so that the iterator can be
+     * registered again to stop it timing out while it is being consumed
+     */
+    public void setCorrelationID(String correlationID) {
+        this.correlationID = correlationID;
+    }
+
+    public String getStreamID() {
+        return streamID;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected Chunk takeChunk() {
+        Object answer = null;
+        try {
+            answer = chunks.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteAccessException("Interrupted waiting for the next chunk of results");
+        }
+        if (answer == null) {
+            throw new RemoteAccessException("Timed out waiting for the next chunk of results after: " + timeout + " millis");
+        }
+        return (Chunk) answer;
+    }
+
+    protected Object[] toArray(Object value) {
+        if (value == null) {
+            return EMPTY;
+        }
+        if (value instanceof Object[]) {
+            return (Object[]) value;
+        }
+        if (value instanceof Collection) {
+            return ((Collection) value).toArray();
+        }
+        return new Object[] { value };
+    }
+
+    /**
+     * Grants the server credit to send more chunks or cancels the stream if the
+     * credit is zero
+     */
+    protected void sendCredit(int credit) {
+        Destination destination = creditDestination;
+        if (destination == null) {
+            // no flow control
+            return;
+        }
+        try {
+            if (credit > 0 && correlationID != null && !lastReceived && requestor instanceof MultiplexingRequestor) {
+                ((MultiplexingRequestor) requestor).registerHandler(correlationID, this, timeout);
+            }
+            Message message = requestor.getSession().createMessage();
+            message.setJMSCorrelationID(streamID);
+            message.setIntProperty(JmsServiceExporterMessageListener.CHUNK_CREDIT, credit);
+            requestor.send(destination, message);
+        }
+        catch (JMSException e) {
+            throw new RemoteAccessException("Failed to send credit to stream: " + streamID + ". Reason: " + e, e);
+        }
+    }
+
+    /**
+     * A chunk of the result
+     */
+    protected static class Chunk {
+        private final RemoteInvocationResult result;
+        private final boolean last;
+
+        public Chunk(RemoteInvocationResult result, boolean last) {
+            this.result = result;
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.logicblaze.lingo.jms.JmsServiceExporterMessageListener;
+import org.logicblaze.lingo.jms.ReplyHandler;
+import org.logicblaze.lingo.jms.Requestor;
+import org.logicblaze.lingo.jms.marshall.Marshaller;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Streams the elements of an {@link Iterator} returned by a service back to
+ * the client as a sequence of chunk messages, each containing an array of up
+ * to chunkSize elements, so that neither side needs to hold the whole result
+ * in memory. <p/> Flow control is credit based; the sender starts with a
+ * window of chunks it may send and the client grants another chunk each time
+ * it consumes one by sending a message to the credit destination with the
+ * stream ID as its correlation ID, which is dispatched to
+ * {@link #handle(Message)}. If there is no credit destination then all the
+ * chunks are sent at once.
+ * 
+ * @version $Revision$
+ */
+public class ChunkedResultSender implements ReplyHandler {
+    private static final Log log = LogFactory.getLog(ChunkedResultSender.class);
+
+    private final Requestor requestor;
+    private final Marshaller marshaller;
+    private final Message requestMessage;
+    private final Iterator iterator;
+    private final int chunkSize;
+    private final Destination creditDestination;
+    private final String streamID;
+    private int credits;
+    private int chunkCount;
+    private boolean complete;
+
+    /**
+     * Creates a new sender
+     * 
+     * @param requestor
+     *            the requestor used to send the chunks
+     * @param marshaller
+     *            the marshaller used to create the chunk messages
+     * @param requestMessage
+     *            the request whose result is being streamed
+     * @param iterator
+     *            the elements of the result
+     * @param chunkSize
+     *            the maximum number of elements in each chunk
+     * @param creditDestination
+     *            the destination on which credits are received or null if
+     *            there is no flow control
+     */
+    public ChunkedResultSender(Requestor requestor, Marshaller marshaller, Message requestMessage, Iterator iterator, int chunkSize,
+            Destination creditDestination) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1 but was: " + chunkSize);
+        }
+        this.requestor = requestor;
+        this.marshaller = marshaller;
+        this.requestMessage = requestMessage;
+        this.iterator = iterator;
+        this.chunkSize = chunkSize;
+        this.creditDestination = creditDestination;
+        this.streamID = requestor.createCorrelationID();
+    }
+
+    /**
+     * Starts streaming, sending up to the given number of chunks before waiting
+     * for credit from the client
+     */
+    public synchronized void start(int window) throws JMSException {
+        credits = creditDestination != null ? window : Integer.MAX_VALUE;
+        sendChunks();
+    }
+
+    /**
+     * Processes a credit message from the client, sending more chunks or
+     * cancelling the stream if the credit is zero or less
+     */
+    public synchronized boolean handle(Message message) throws JMSException {
+        if (complete) {
+            return true;
+        }
+        int credit = message.getIntProperty(JmsServiceExporterMessageListener.CHUNK_CREDIT);
+        if (credit <= 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("Stream: " + streamID + " cancelled by the client after: " + chunkCount + " chunk(s)");
+            }
+            complete = true;
+            return true;
+        }
+        credits += credit;
+        try {
+            sendChunks();
+        }
+        catch (JMSException e) {
+            // the stream cannot continue so lets have the handler removed
+            log.warn("Failed to send chunk of stream: " + streamID + ". Reason: " + e, e);
+            complete = true;
+        }
+        return complete;
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public String getStreamID() {
+        return streamID;
+    }
+
+    public synchronized int getChunkCount() {
+        return chunkCount;
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected void sendChunks() throws JMSException {
+        while (credits > 0 && !complete) {
+            RemoteInvocationResult result;
+            boolean last;
+            try {
+                result = new RemoteInvocationResult(nextChunk());
+                last = !iterator.hasNext();
+            }
+            catch (Throwable e) {
+                result = new RemoteInvocationResult(new InvocationTargetException(e));
+                last = true;
+            }
+            Message message = createChunkMessage(requestor.getSession(), result);
+            message.setStringProperty(JmsServiceExporterMessageListener.RESULT_STREAM_ID, streamID);
+            message.setBooleanProperty(JmsServiceExporterMessageListener.LAST_CHUNK, last);
+            message.setJMSReplyTo(creditDestination);
+            requestor.send(requestMessage.getJMSReplyTo(), message);
+            chunkCount++;
+            credits--;
+            complete = last;
+        }
+    }
+
+    protected Object[] nextChunk() {
+        List elements = new ArrayList(chunkSize);
+        while (elements.size() < chunkSize && iterator.hasNext()) {
+            elements.add(iterator.next());
+        }
+        return elements.toArray();
+    }
+
+    /**
+     * Creates the message for a chunk of the result
+     */
+    protected Message createChunkMessage(Session session, RemoteInvocationResult result) throws JMSException {
+        Message answer = marshaller.createResponseMessage(session, result, requestMessage);
+        answer.setJMSCorrelationID(requestMessage.getJMSCorrelationID());
+        return answer;
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.logicblaze.lingo.jms.JmsProducerConfig;
+import org.logicblaze.lingo.jms.Requestor;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+/**
+ * A {@link MultiplexingRequestor} which shares a single consumer and
+ * correlation map for responses but sends requests through a bounded number of
+ * sessions and producers so that many threads can send concurrently. Each
+ * thread is assigned a sending session in a round robin fashion on first use so
+ * that with no more threads than sessions each thread effectively has its own
+ * session. The session given to the constructor is used as the first of the
+ * sending sessions. Transacted sessions are not supported as nothing would
+ * commit the sends. <p/> This class can be used concurrently by many
+ * different threads at the same time.
+ *
+ * @version $Revision$
+ */
+public class ConcurrentMultiplexingRequestor extends MultiplexingRequestor {
+    private static final Log log = LogFactory.getLog(ConcurrentMultiplexingRequestor.class);
+
+    public static final int DEFAULT_CONCURRENCY = 8;
+
+    private final Session[] sessions;
+    private final MessageProducer[] producers;
+    private final AtomicInteger nextIndex = new AtomicInteger(0);
+    private final ThreadLocal threadIndex = new ThreadLocal() {
+        protected Object initialValue() {
+            int index = (nextIndex.getAndIncrement() & Integer.MAX_VALUE) % sessions.length;
+            return new Integer(index);
+        }
+    };
+
+    public static Requestor newInstance(ConnectionFactory connectionFactory, JmsProducerConfig config, Destination destination, Destination responseDestination,
+            int concurrency) throws JMSException {
+        checkConcurrency(concurrency, config);
+        Connection connection = config.createConnection(connectionFactory);
+        Session session = config.createSession(connection);
+        MessageProducer producer = config.createMessageProducer(session);
+        if (responseDestination == null) {
+            responseDestination = config.createTemporaryDestination(session);
+        }
+        return new ConcurrentMultiplexingRequestor(connection, session, producer, destination, responseDestination, true, config, concurrency);
+    }
+
+    public static Requestor newSharedReplyInstance(ConnectionFactory connectionFactory, JmsProducerConfig config, Destination destination, int concurrency)
+            throws JMSException {
+        checkConcurrency(concurrency, config);
+        Connection connection = config.createConnection(connectionFactory);
+        Session session = config.createSession(connection);
+        MessageProducer producer = config.createMessageProducer(session);
+        return new ConcurrentMultiplexingRequestor(connection, session, producer, connectionFactory, destination, true, config, concurrency);
+    }
+
+    public static Requestor newInstance(ConnectionFactory connectionFactory, JmsProducerConfig config, Destination destination) throws JMSException {
+        return newInstance(connectionFactory, config, destination, null, DEFAULT_CONCURRENCY);
+    }
+
+    public ConcurrentMultiplexingRequestor(Connection connection, Session session, MessageProducer producer, Destination serverDestination,
+            Destination clientDestination, boolean ownsConnection, JmsProducerConfig config, int concurrency) throws JMSException {
+        super(connection, session, producer, serverDestination, clientDestination, ownsConnection);
+        this.sessions = new Session[checkConcurrency(concurrency, config)];
+        this.producers = new MessageProducer[concurrency];
+        createProducers(connection, config);
+    }
+
+    public ConcurrentMultiplexingRequestor(Connection connection, Session session, MessageProducer producer, ConnectionFactory replyConnectionFactory,
+            Destination serverDestination, boolean ownsConnection, JmsProducerConfig config, int concurrency) throws JMSException {
+        super(connection, session, producer, replyConnectionFactory, config, serverDestination, ownsConnection);
+        this.sessions = new Session[checkConcurrency(concurrency, config)];
+        this.producers = new MessageProducer[concurrency];
+        createProducers(connection, config);
+    }
+
+    public synchronized void close() throws JMSException {
+        // the first session is closed by the base class
+        sessions[0] = null;
+        producers[0] = null;
+        for (int i = 1; i < sessions.length; i++) {
+            Session session = sessions[i];
+            if (session != null) {
+                sessions[i] = null;
+                producers[i] = null;
+                try {
+                    session.close();
+                }
+                catch (JMSException e) {
+                    log.warn("Failed to close session: " + e, e);
+                }
+            }
+        }
+        super.close();
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public int getConcurrency() {
+        return sessions.length;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    private static int checkConcurrency(int concurrency, JmsProducerConfig config) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1 but was: " + concurrency);
+        }
+        if (config.isTransactedMode()) {
+            // nothing would commit the sends on the extra sessions
+            throw new IllegalArgumentException("ConcurrentMultiplexingRequestor cannot be used with transacted sessions");
+        }
+        return concurrency;
+    }
+
+    private void createProducers(Connection connection, JmsProducerConfig config) throws JMSException {
+        // lets use the session of the base class as the first stripe
+        sessions[0] = getSession();
+        producers[0] = getMessageProducer();
+        for (int i = 1; i < sessions.length; i++) {
+            sessions[i] = config.createSession(connection);
+            producers[i] = config.createMessageProducer(sessions[i]);
+        }
+    }
+
+    protected void doSend(Destination destination, Message message, long timeToLive) throws JMSException {
+        doSend(destination, message, getDeliveryMode(), getPriority(), timeToLive);
+    }
+
+    protected void doSend(Destination destination, Message message, int deliveryMode, int priority, long timeToLive) throws JMSException {
+        destination = validateDestination(destination);
+        if (log.isDebugEnabled()) {
+            log.debug("Sending message to: " + destination + " message: " + message);
+        }
+        int index = ((Integer) threadIndex.get()).intValue();
+        MessageProducer producer = producers[index];
+        if (producer == null) {
+            throw new JMSException("Requestor is closed");
+        }
+
+        // JMS sessions are single threaded so only one thread at once can use
+        // each session
+        synchronized (producer) {
+            producer.send(destination, message, deliveryMode, priority, timeToLive);
+        }
+    }
+}
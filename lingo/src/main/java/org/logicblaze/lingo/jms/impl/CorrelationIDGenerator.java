@@ -0,0 +1,149 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicLong;
+
+import org.logicblaze.lingo.jms.JmsServiceExporterMessageListener;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * Creates correlation IDs which are unique within the JVM. Each generator is
+ * assigned a unique prefix which occupies the high bits of a long while a
+ * counter occupies the low bits, so that the generator which created a
+ * correlation ID can be found from the ID itself. <p/> The backport atomics
+ * synchronize on Java 1.4, so rather than incrementing a shared counter for
+ * every ID each thread reserves a block of {@link #BLOCK_SIZE} counter values
+ * at a time and allocates IDs from its block without any shared state. So IDs
+ * are unique but are not created in order across threads. <p/> Correlation
+ * IDs are sent as the decimal string of the long in the
+ * <code>JMSCorrelationID</code> header, which JMS requires, and also as a long
+ * message property so that the receiver does not need to parse the string;
+ * so each request still allocates the string and sets the extra property.
+ * 
+ * @version $Revision$
+ */
+public class CorrelationIDGenerator {
+    public static final int COUNTER_BITS = 40;
+    public static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    public static final int BLOCK_SIZE = 256;
+
+    private static final AtomicLong prefixCounter = new AtomicLong();
+
+    private final long prefix;
+    private final AtomicLong counter = new AtomicLong();
+    private final ThreadLocal blocks = new ThreadLocal() {
+        protected Object initialValue() {
+            return new Block();
+        }
+    };
+
+    public CorrelationIDGenerator() {
+        this(prefixCounter.incrementAndGet());
+    }
+
+    public CorrelationIDGenerator(long prefix) {
+        if (prefix <= 0 || prefix > (Long.MAX_VALUE >>> COUNTER_BITS)) {
+            throw new IllegalArgumentException("Invalid correlation ID prefix: " + prefix);
+        }
+        this.prefix = prefix;
+    }
+
+    /**
+     * Returns the next unique correlation ID as a long
+     */
+    public long nextID() {
+        Block block = (Block) blocks.get();
+        if (block.next == block.limit) {
+            block.limit = counter.addAndGet(BLOCK_SIZE) + 1;
+            block.next = block.limit - BLOCK_SIZE;
+        }
+        return (prefix << COUNTER_BITS) | (block.next++ & COUNTER_MASK);
+    }
+
+    /**
+     * Returns the next unique correlation ID as a string
+     */
+    public String createCorrelationID() {
+        return Long.toString(nextID());
+    }
+
+    /**
+     * Sets the next unique correlation ID on the message as both the
+     * <code>JMSCorrelationID</code> and a long property, returning its long
+     * value
+     */
+    public long setCorrelationID(Message message) throws JMSException {
+        long answer = nextID();
+        message.setJMSCorrelationID(Long.toString(answer));
+        message.setLongProperty(JmsServiceExporterMessageListener.CORRELATION_ID, answer);
+        return answer;
+    }
+
+    public long getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Returns the prefix of the generator which created the given correlation
+     * ID
+     */
+    public static long getPrefix(long correlationID) {
+        return correlationID >>> COUNTER_BITS;
+    }
+
+    /**
+     * Returns the long value of the correlation ID of the message, using the
+     * long property if it is present, or -1 if the correlation ID was not
+     * created by a generator
+     */
+    public static long getCorrelationID(Message message) throws JMSException {
+        Object value = message.getObjectProperty(JmsServiceExporterMessageListener.CORRELATION_ID);
+        if (value instanceof Long) {
+            return ((Long) value).longValue();
+        }
+        return parseCorrelationID(message.getJMSCorrelationID());
+    }
+
+    /**
+     * Parses a correlation ID string created by a generator, returning -1 if
+     * the string was not created by a generator
+     */
+    public static long parseCorrelationID(String correlationID) {
+        if (correlationID == null || correlationID.length() == 0) {
+            return -1;
+        }
+        try {
+            long answer = Long.parseLong(correlationID);
+            return getPrefix(answer) > 0 ? answer : -1;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The range of counter values reserved by a thread
+     */
+    private static final class Block {
+        private long next;
+        private long limit;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import org.logicblaze.lingo.jms.JmsProducer;
+import org.logicblaze.lingo.jms.JmsProducerPool;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+/**
+ * A {@link JmsProducerPool} which shares a small number of connections between
+ * many {@link DefaultJmsProducer} instances, each with its own session.
+ * 
+ * @version $Revision$
+ */
+public class DefaultJmsProducerPool extends JmsResourcePool implements JmsProducerPool {
+
+    public DefaultJmsProducerPool() {
+    }
+
+    public DefaultJmsProducerPool(ConnectionFactory connectionFactory) {
+        super(connectionFactory);
+    }
+
+    public JmsProducer borrowProducer() throws JMSException {
+        return (JmsProducer) borrowResource();
+    }
+
+    public void returnProducer(JmsProducer producer) {
+        returnResource(producer);
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected Object createResource(Connection connection) throws JMSException {
+        return DefaultJmsProducer.newInstance(connection, getConfig(), false);
+    }
+
+    protected void closeResource(Object resource) throws JMSException {
+        ((JmsProducer) resource).close();
+    }
+
+    protected boolean isValid(Object resource) {
+        Session session = ((JmsProducer) resource).getSession();
+        if (session == null) {
+            return false;
+        }
+        try {
+            // lets check that the session has not been closed
+            session.getTransacted();
+            return true;
+        }
+        catch (JMSException e) {
+            return false;
+        }
+    }
+}
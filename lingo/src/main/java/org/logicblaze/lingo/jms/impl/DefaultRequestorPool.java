@@ -0,0 +1,96 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import org.logicblaze.lingo.jms.JmsProducerConfig;
+import org.logicblaze.lingo.jms.Requestor;
+import org.logicblaze.lingo.jms.RequestorPool;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+/**
+ * A {@link RequestorPool} of {@link MultiplexingRequestor} instances which
+ * share a small number of connections, each requestor using its own session
+ * and temporary destination for responses. As the requestors are not bound to
+ * a server destination, clients should always specify the destination of
+ * their requests. <p/> A requestor with outstanding requests, such as
+ * asynchronous invocations or remote object references, is not evicted when
+ * it becomes idle.
+ * 
+ * @version $Revision$
+ */
+public class DefaultRequestorPool extends JmsResourcePool implements RequestorPool {
+
+    public DefaultRequestorPool() {
+    }
+
+    public DefaultRequestorPool(ConnectionFactory connectionFactory) {
+        super(connectionFactory);
+    }
+
+    public Requestor borrowRequestor() throws JMSException {
+        return (Requestor) borrowResource();
+    }
+
+    public void returnRequestor(Requestor requestor) {
+        returnResource(requestor);
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected Object createResource(Connection connection) throws JMSException {
+        JmsProducerConfig config = getConfig();
+        Session session = config.createSession(connection);
+        MessageProducer producer = config.createMessageProducer(session);
+        Destination responseDestination = config.createTemporaryDestination(session);
+        MultiplexingRequestor answer = new MultiplexingRequestor(connection, session, producer, null, responseDestination, false);
+        answer.setDeleteTemporaryDestinationsOnClose(true);
+        return answer;
+    }
+
+    protected void closeResource(Object resource) throws JMSException {
+        ((Requestor) resource).close();
+    }
+
+    protected boolean isValid(Object resource) {
+        Session session = ((Requestor) resource).getSession();
+        if (session == null) {
+            return false;
+        }
+        try {
+            // lets check that the session has not been closed
+            session.getTransacted();
+            return true;
+        }
+        catch (JMSException e) {
+            return false;
+        }
+    }
+
+    protected boolean isIdle(Object resource) {
+        if (resource instanceof MultiplexingRequestor) {
+            return ((MultiplexingRequestor) resource).getPendingRequestCount() == 0;
+        }
+        return true;
+    }
+}
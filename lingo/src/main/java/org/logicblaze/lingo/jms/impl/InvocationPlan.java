@@ -0,0 +1,93 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import org.logicblaze.lingo.MethodMetadata;
+
+import java.lang.reflect.Method;
+
+/**
+ * The immutable details of how to invoke a method of a remote service which
+ * are worked out once, when the proxy is created, rather than on every
+ * invocation.
+ * 
+ * @version $Revision$
+ */
+public class InvocationPlan {
+    private static final int[] NO_INDEXES = new int[0];
+
+    private final Method method;
+    private final Class[] parameterTypes;
+    private final MethodMetadata metadata;
+    private final int[] remoteParameterIndexes;
+
+    public InvocationPlan(Method method, MethodMetadata metadata) {
+        this.method = method;
+        this.parameterTypes = method.getParameterTypes();
+        this.metadata = metadata;
+        this.remoteParameterIndexes = remoteParameterIndexes(parameterTypes.length, metadata);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the parameter types of the method which must not be modified
+     */
+    public Class[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public MethodMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Returns the indexes of the parameters which are passed as remote
+     * references, which must not be modified
+     */
+    public int[] getRemoteParameterIndexes() {
+        return remoteParameterIndexes;
+    }
+
+    public String toString() {
+        return "InvocationPlan[" + method + "]";
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    private static int[] remoteParameterIndexes(int parameterCount, MethodMetadata metadata) {
+        int count = 0;
+        for (int i = 0; i < parameterCount; i++) {
+            if (metadata.isRemoteParameter(i)) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return NO_INDEXES;
+        }
+        int[] answer = new int[count];
+        for (int i = 0, j = 0; i < parameterCount; i++) {
+            if (metadata.isRemoteParameter(i)) {
+                answer[j++] = i;
+            }
+        }
+        return answer;
+    }
+}
@@ -0,0 +1,607 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledThreadPoolExecutor;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.logicblaze.lingo.jms.JmsProducerConfig;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded pool of JMS resources, each of which uses its own session, which
+ * multiplexes the sessions over a small number of shared connections. Idle
+ * resources are reused most recently used first, are validated before they
+ * are handed out and are closed once they have been idle for longer than the
+ * idle timeout; a connection is closed once it has no more sessions or the
+ * JMS provider reports that it has failed. A resource which is no longer valid
+ * but which is still in use, such as one awaiting responses, is retired rather
+ * than closed until it becomes idle. <p/> This class can be used
+ * concurrently by many different threads at the same time.
+ * 
+ * @version $Revision$
+ */
+public abstract class JmsResourcePool implements DisposableBean {
+    private static final Log log = LogFactory.getLog(JmsResourcePool.class);
+
+    private ConnectionFactory connectionFactory;
+    private JmsProducerConfig config = new JmsProducerConfig();
+    private int maximumSize = 16;
+    private int maximumConnections = 1;
+    private int maximumSessionsPerConnection = 500;
+    private long borrowTimeout = 30000L;
+    private long idleTimeout = 60000L;
+    private long evictionInterval = 5000L;
+    private final LinkedList idle = new LinkedList();
+    private final List retired = new ArrayList();
+    private final Map active = new IdentityHashMap();
+    private final List connections = new ArrayList();
+    private int creatingResources;
+    private int creatingConnections;
+    private ScheduledExecutorService executor;
+    private boolean closed;
+
+    public JmsResourcePool() {
+    }
+
+    public JmsResourcePool(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    public void destroy() throws Exception {
+        close();
+    }
+
+    /**
+     * Closes all of the idle resources and the connections of the pool.
+     * Resources which are currently borrowed can no longer be used.
+     */
+    public void close() {
+        List resources;
+        List oldConnections;
+        ScheduledExecutorService oldExecutor;
+        synchronized (this) {
+            closed = true;
+            resources = new ArrayList(idle);
+            resources.addAll(retired);
+            idle.clear();
+            retired.clear();
+            oldConnections = new ArrayList(connections);
+            connections.clear();
+            oldExecutor = executor;
+            executor = null;
+            notifyAll();
+        }
+        if (oldExecutor != null) {
+            oldExecutor.shutdownNow();
+        }
+        for (Iterator iter = resources.iterator(); iter.hasNext();) {
+            destroyResource(((PooledResource) iter.next()).getResource());
+        }
+        for (Iterator iter = oldConnections.iterator(); iter.hasNext();) {
+            closeConnection((PooledConnection) iter.next());
+        }
+    }
+
+    /**
+     * Closes any resources which have been idle for longer than the idle
+     * timeout or which are no longer valid
+     */
+    public void evictIdleResources() {
+        long now = System.currentTimeMillis();
+        List evicted = new ArrayList();
+        synchronized (this) {
+            for (Iterator iter = idle.iterator(); iter.hasNext();) {
+                PooledResource entry = (PooledResource) iter.next();
+                boolean expired = idleTimeout > 0 && now - entry.getLastUsed() >= idleTimeout && isIdle(entry.getResource());
+                if (expired) {
+                    iter.remove();
+                    evicted.add(entry);
+                }
+                else if (!isUsable(entry)) {
+                    iter.remove();
+                    retired.add(entry);
+                }
+            }
+            for (Iterator iter = retired.iterator(); iter.hasNext();) {
+                PooledResource entry = (PooledResource) iter.next();
+                if (isIdle(entry.getResource())) {
+                    iter.remove();
+                    evicted.add(entry);
+                }
+            }
+        }
+        for (Iterator iter = evicted.iterator(); iter.hasNext();) {
+            PooledResource entry = (PooledResource) iter.next();
+            if (log.isDebugEnabled()) {
+                log.debug("Evicting idle resource: " + entry.getResource());
+            }
+            destroyEntry(entry);
+        }
+    }
+
+    /**
+     * Returns the number of resources which are currently borrowed
+     */
+    public synchronized int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * Returns the number of resources waiting in the pool to be borrowed
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Returns the number of open connections
+     */
+    public synchronized int getConnectionCount() {
+        return connections.size();
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public ConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    /**
+     * Sets the connection factory used to create the connections of the pool
+     */
+    public void setConnectionFactory(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    public JmsProducerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Sets the configuration used to create the connections, sessions and
+     * producers of the pool
+     */
+    public void setConfig(JmsProducerConfig config) {
+        this.config = config;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Sets the maximum number of resources which can be borrowed at once
+     */
+    public void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public int getMaximumConnections() {
+        return maximumConnections;
+    }
+
+    /**
+     * Sets the maximum number of connections the resources are multiplexed
+     * over
+     */
+    public void setMaximumConnections(int maximumConnections) {
+        this.maximumConnections = maximumConnections;
+    }
+
+    public int getMaximumSessionsPerConnection() {
+        return maximumSessionsPerConnection;
+    }
+
+    /**
+     * Sets the maximum number of sessions created on each connection before
+     * another connection is created
+     */
+    public void setMaximumSessionsPerConnection(int maximumSessionsPerConnection) {
+        this.maximumSessionsPerConnection = maximumSessionsPerConnection;
+    }
+
+    public long getBorrowTimeout() {
+        return borrowTimeout;
+    }
+
+    /**
+     * Sets the maximum amount of time in milliseconds to wait for a resource
+     * when the pool is exhausted or a negative value to wait forever
+     */
+    public void setBorrowTimeout(long borrowTimeout) {
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the amount of time in milliseconds after which an unused resource
+     * is closed or 0 to keep idle resources open
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getEvictionInterval() {
+        return evictionInterval;
+    }
+
+    /**
+     * Sets how often in milliseconds the pool looks for idle resources to
+     * close
+     */
+    public void setEvictionInterval(long evictionInterval) {
+        this.evictionInterval = evictionInterval;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+
+    /**
+     * Factory method to create a new resource using its own session on the
+     * given connection
+     */
+    protected abstract Object createResource(Connection connection) throws JMSException;
+
+    /**
+     * Closes the resource and its session but not its connection
+     */
+    protected abstract void closeResource(Object resource) throws JMSException;
+
+    /**
+     * Returns true if the resource can still be used
+     */
+    protected boolean isValid(Object resource) {
+        return true;
+    }
+
+    /**
+     * Returns true if the resource is not in use so that it can be evicted
+     */
+    protected boolean isIdle(Object resource) {
+        return true;
+    }
+
+    protected Object borrowResource() throws JMSException {
+        long waitTime = borrowTimeout;
+        long deadline = System.currentTimeMillis() + borrowTimeout;
+        List invalid = new ArrayList();
+        PooledConnection connection;
+        try {
+            synchronized (this) {
+                while (true) {
+                    if (closed) {
+                        throw new JMSException("The pool is closed");
+                    }
+                    while (!idle.isEmpty()) {
+                        PooledResource entry = (PooledResource) idle.removeFirst();
+                        if (isUsable(entry)) {
+                            active.put(entry.getResource(), entry);
+                            return entry.getResource();
+                        }
+                        if (isIdle(entry.getResource())) {
+                            invalid.add(entry);
+                        }
+                        else {
+                            retired.add(entry);
+                        }
+                    }
+                    if (active.size() + creatingResources < maximumSize) {
+                        // lets reserve the slot here but talk to the broker
+                        // without holding the lock
+                        connection = findConnection();
+                        if (connection != null) {
+                            connection.incrementSessions();
+                            creatingResources++;
+                            break;
+                        }
+                        if (connections.size() + creatingConnections < maximumConnections) {
+                            creatingConnections++;
+                            creatingResources++;
+                            break;
+                        }
+                    }
+                    if (borrowTimeout >= 0 && waitTime <= 0) {
+                        throw new JMSException("Timed out after " + borrowTimeout + " millis waiting for a pooled resource");
+                    }
+                    try {
+                        if (borrowTimeout < 0) {
+                            wait();
+                        }
+                        else {
+                            wait(waitTime);
+                            waitTime = deadline - System.currentTimeMillis();
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new JMSException("Interrupted waiting for a pooled resource");
+                    }
+                }
+            }
+        }
+        finally {
+            for (Iterator iter = invalid.iterator(); iter.hasNext();) {
+                destroyEntry((PooledResource) iter.next());
+            }
+        }
+        if (connection == null) {
+            connection = addConnection();
+        }
+        return addResource(connection);
+    }
+
+    protected void returnResource(Object resource) {
+        PooledResource entry;
+        boolean destroy = false;
+        synchronized (this) {
+            entry = (PooledResource) active.remove(resource);
+            if (entry == null) {
+                throw new IllegalArgumentException("The resource was not borrowed from this pool: " + resource);
+            }
+            if (!closed && isUsable(entry)) {
+                entry.setLastUsed(System.currentTimeMillis());
+                idle.addFirst(entry);
+            }
+            else if (!closed && !isIdle(resource)) {
+                // lets not close it while it is still awaiting responses
+                retired.add(entry);
+            }
+            else {
+                destroy = true;
+            }
+            notifyAll();
+        }
+        if (destroy) {
+            destroyEntry(entry);
+        }
+    }
+
+    /**
+     * Returns an existing connection which can create another session or null
+     * if the connections have all reached the maximum number of sessions
+     */
+    protected PooledConnection findConnection() {
+        PooledConnection answer = null;
+        for (Iterator iter = connections.iterator(); iter.hasNext();) {
+            PooledConnection connection = (PooledConnection) iter.next();
+            if (!connection.isFailed() && connection.getSessions() < maximumSessionsPerConnection) {
+                if (answer == null || connection.getSessions() < answer.getSessions()) {
+                    answer = connection;
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Creates a resource on the connection whose session has already been
+     * reserved, releasing the reservation if it cannot be created
+     */
+    protected Object addResource(PooledConnection connection) throws JMSException {
+        Object resource = null;
+        boolean added = false;
+        try {
+            resource = createResource(connection.getConnection());
+        }
+        finally {
+            boolean closeConnection = false;
+            synchronized (this) {
+                creatingResources--;
+                if (resource != null && !closed) {
+                    active.put(resource, new PooledResource(resource, connection));
+                    added = true;
+                }
+                else {
+                    closeConnection = connection.decrementSessions() == 0 && connections.remove(connection);
+                }
+                notifyAll();
+            }
+            if (!added && resource != null) {
+                destroyResource(resource);
+            }
+            if (closeConnection) {
+                closeConnection(connection);
+            }
+        }
+        if (!added) {
+            throw new JMSException("The pool is closed");
+        }
+        return resource;
+    }
+
+    /**
+     * Creates a new connection for which a slot has already been reserved,
+     * reserving its first session
+     */
+    protected PooledConnection addConnection() throws JMSException {
+        PooledConnection answer = null;
+        try {
+            answer = createConnection();
+        }
+        finally {
+            boolean closeConnection = false;
+            synchronized (this) {
+                creatingConnections--;
+                if (answer != null && !closed) {
+                    answer.incrementSessions();
+                    connections.add(answer);
+                    startEvictor();
+                }
+                else {
+                    creatingResources--;
+                    closeConnection = answer != null;
+                }
+                notifyAll();
+            }
+            if (closeConnection) {
+                closeConnection(answer);
+                answer = null;
+            }
+        }
+        if (answer == null) {
+            throw new JMSException("The pool is closed");
+        }
+        return answer;
+    }
+
+    protected PooledConnection createConnection() throws JMSException {
+        if (connectionFactory == null) {
+            throw new IllegalArgumentException("Property connectionFactory not specified");
+        }
+        final PooledConnection answer = new PooledConnection(config.createConnection(connectionFactory));
+        answer.getConnection().setExceptionListener(new ExceptionListener() {
+            public void onException(JMSException e) {
+                log.warn("Connection failed so its pooled resources will be discarded: " + e, e);
+                answer.setFailed(true);
+            }
+        });
+        return answer;
+    }
+
+    protected void startEvictor() {
+        if (executor == null && idleTimeout > 0) {
+            executor = new ScheduledThreadPoolExecutor(1);
+            executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    evictIdleResources();
+                }
+            }, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    protected boolean isUsable(PooledResource entry) {
+        return !entry.getConnection().isFailed() && isValid(entry.getResource());
+    }
+
+    protected void destroyEntry(PooledResource entry) {
+        destroyResource(entry.getResource());
+        PooledConnection connection = entry.getConnection();
+        boolean closeConnection;
+        synchronized (this) {
+            closeConnection = connection.decrementSessions() == 0 && connections.remove(connection);
+            notifyAll();
+        }
+        if (closeConnection) {
+            closeConnection(connection);
+        }
+    }
+
+    protected void destroyResource(Object resource) {
+        try {
+            closeResource(resource);
+        }
+        catch (JMSException e) {
+            log.warn("Failed to close pooled resource: " + e, e);
+        }
+    }
+
+    protected void closeConnection(PooledConnection connection) {
+        try {
+            connection.getConnection().close();
+        }
+        catch (JMSException e) {
+            log.warn("Failed to close pooled connection: " + e, e);
+        }
+    }
+
+    /**
+     * A connection shared by a number of pooled resources
+     */
+    protected static class PooledConnection {
+        private final Connection connection;
+        private int sessions;
+        private volatile boolean failed;
+
+        public PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public int getSessions() {
+            return sessions;
+        }
+
+        public int incrementSessions() {
+            return ++sessions;
+        }
+
+        public int decrementSessions() {
+            return --sessions;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        public void setFailed(boolean failed) {
+            this.failed = failed;
+        }
+    }
+
+    /**
+     * A pooled resource and the connection it was created on
+     */
+    protected static class PooledResource {
+        private final Object resource;
+        private final PooledConnection connection;
+        private long lastUsed;
+
+        public PooledResource(Object resource, PooledConnection connection) {
+            this.resource = resource;
+            this.connection = connection;
+        }
+
+        public Object getResource() {
+            return resource;
+        }
+
+        public PooledConnection getConnection() {
+            return connection;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+
+        public void setLastUsed(long lastUsed) {
+            this.lastUsed = lastUsed;
+        }
+    }
+}
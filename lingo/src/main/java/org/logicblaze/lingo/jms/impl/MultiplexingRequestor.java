@@ -18,6 +18,7 @@
 package org.logicblaze.lingo.jms.impl;
 
 import edu.emory.mathcs.backport.java.util.concurrent.FutureTask;
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledExecutorService;
 import edu.emory.mathcs.backport.java.util.concurrent.ScheduledThreadPoolExecutor;
 import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
 
@@ -28,6 +29,8 @@ import org.logicblaze.lingo.jms.JmsProducerConfig;
 import org.logicblaze.lingo.jms.ReplyHandler;
 import org.logicblaze.lingo.jms.Requestor;
 import org.logicblaze.lingo.util.DefaultTimeoutMap;
+import org.logicblaze.lingo.util.HashedWheelTimeoutMap;
+import org.logicblaze.lingo.util.LongTimeoutMap;
 import org.logicblaze.lingo.util.TimeoutMap;
 
 import javax.jms.Connection;
@@ -51,7 +54,11 @@ import javax.jms.Session;
 public class MultiplexingRequestor extends SingleThreadedRequestor implements MessageListener {
     private static final Log log = LogFactory.getLog(MultiplexingRequestor.class);
 
-    private TimeoutMap requestMap = new DefaultTimeoutMap();
+    private TimeoutMap requestMap;
+    private LongTimeoutMap inFlightRequests;
+    private ScheduledThreadPoolExecutor executor;
+    private ReplyDispatcher replyDispatcher;
+    private boolean registered;
 
     public static Requestor newInstance(ConnectionFactory connectionFactory, JmsProducerConfig config, Destination destination, Destination responseDestination)
             throws JMSException {
@@ -69,25 +76,60 @@ public class MultiplexingRequestor extends SingleThreadedRequestor implements Me
         return new MultiplexingRequestor(connection, session, producer, destination, responseDestination, true);
     }
 
+    /**
+     * Creates a requestor whose responses are consumed from the shared reply
+     * queues of the {@link ReplyDispatcher} for the connection factory rather
+     * than its own temporary destination
+     */
+    public static Requestor newSharedReplyInstance(ConnectionFactory connectionFactory, JmsProducerConfig config, Destination destination) throws JMSException {
+        Connection connection = config.createConnection(connectionFactory);
+        Session session = config.createSession(connection);
+        MessageProducer producer = config.createMessageProducer(session);
+        return new MultiplexingRequestor(connection, session, producer, connectionFactory, config, destination, true);
+    }
+
     public MultiplexingRequestor(JmsProducerConfig config, Destination serverDestination, Destination clientDestination) throws JMSException {
         super(config, serverDestination, clientDestination);
-        init();
+        init(null, null);
     }
 
     public MultiplexingRequestor(Connection connection, Session session, MessageProducer producer, Destination serverDestination,
             Destination clientDestination, boolean ownsConnection) throws JMSException {
         super(connection, session, producer, serverDestination, clientDestination, ownsConnection);
-        init();
+        init(null, null);
     }
 
-    private void init() throws JMSException {
-        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
-        this.requestMap = new DefaultTimeoutMap(executor, 1000L);
-        getReceiver().setMessageListener(this);
+    /**
+     * Creates a requestor which consumes its responses from the shared reply
+     * queues of the {@link ReplyDispatcher} for the given connection factory
+     */
+    public MultiplexingRequestor(Connection connection, Session session, MessageProducer producer, ConnectionFactory replyConnectionFactory,
+            JmsProducerConfig replyConfig, Destination serverDestination, boolean ownsConnection) throws JMSException {
+        super(connection, session, producer, serverDestination, null, ownsConnection);
+        init(replyConnectionFactory, replyConfig);
+    }
+
+    private void init(ConnectionFactory replyConnectionFactory, JmsProducerConfig replyConfig) throws JMSException {
+        this.executor = new ScheduledThreadPoolExecutor(1);
+        this.requestMap = createRequestMap(executor);
+        this.inFlightRequests = createInFlightRequests(executor);
+        if (replyConnectionFactory != null) {
+            long prefix = getCorrelationIDGenerator().getPrefix();
+            replyDispatcher = ReplyDispatcher.register(replyConnectionFactory, replyConfig, prefix, this);
+            registered = true;
+            setInboundDestination(replyDispatcher.getReplyDestination(prefix));
+        }
+        else {
+            getReceiver().setMessageListener(this);
+        }
     }
 
     public void registerHandler(String correlationID, ReplyHandler handler, long timeout) {
-        requestMap.put(correlationID, handler, timeout);
+        putHandler(CorrelationIDGenerator.parseCorrelationID(correlationID), correlationID, handler, timeout);
+    }
+
+    public void unregisterHandler(String correlationID) {
+        removeHandler(CorrelationIDGenerator.parseCorrelationID(correlationID), correlationID);
     }
 
     public Message request(Destination destination, Message message) throws JMSException {
@@ -100,13 +142,14 @@ public class MultiplexingRequestor extends SingleThreadedRequestor implements Me
         // we are already given a correaltionID if we are on the server side
         // responding to a remote object reference
         FutureTask future = null;
+        long id;
         String correlationID = message.getJMSCorrelationID();
         if (correlationID == null) {
-            correlationID = createCorrelationID();
-            message.setJMSCorrelationID(correlationID);
+            id = getCorrelationIDGenerator().setCorrelationID(message);
         }
         else {
-            Object currentHandler = requestMap.get(correlationID);
+            id = CorrelationIDGenerator.parseCorrelationID(correlationID);
+            Object currentHandler = getHandler(id, correlationID);
             if (currentHandler instanceof AsyncReplyHandler) {
                 AsyncReplyHandler handler = (AsyncReplyHandler) currentHandler;
                 future = handler.newResultHandler();
@@ -116,7 +159,7 @@ public class MultiplexingRequestor extends SingleThreadedRequestor implements Me
         if (future == null) {
             FutureHandler futureHandler = new FutureHandler();
             future = futureHandler;
-            requestMap.put(correlationID, futureHandler, timeout);
+            putHandler(id, correlationID, futureHandler, timeout);
         }
         populateHeaders(message);
         send(destination, message);
@@ -137,17 +180,21 @@ public class MultiplexingRequestor extends SingleThreadedRequestor implements Me
     public void request(Destination destination, Message message, ReplyHandler handler, long timeout) throws JMSException {
         String correlationID = message.getJMSCorrelationID();
         if (correlationID == null) {
-            correlationID = createCorrelationID();
-            message.setJMSCorrelationID(correlationID);
+            // a new correlation ID cannot have a handler registered already
+            long id = getCorrelationIDGenerator().setCorrelationID(message);
+            putHandler(id, null, handler, timeout);
         }
-        synchronized (requestMap) {
-            Object currentHandler = requestMap.get(correlationID);
-            if (currentHandler instanceof AsyncReplyHandler) {
-                AsyncReplyHandler remoteObjectHandler = (AsyncReplyHandler) currentHandler;
-                remoteObjectHandler.setParent(handler);
-            }
-            else {
-                requestMap.put(correlationID, handler, timeout);
+        else {
+            long id = CorrelationIDGenerator.parseCorrelationID(correlationID);
+            synchronized (requestMap) {
+                Object currentHandler = getHandler(id, correlationID);
+                if (currentHandler instanceof AsyncReplyHandler) {
+                    AsyncReplyHandler remoteObjectHandler = (AsyncReplyHandler) currentHandler;
+                    remoteObjectHandler.setParent(handler);
+                }
+                else {
+                    putHandler(id, correlationID, handler, timeout);
+                }
             }
         }
         populateHeaders(message);
@@ -159,18 +206,20 @@ public class MultiplexingRequestor extends SingleThreadedRequestor implements Me
      */
     public void onMessage(Message message) {
         try {
-            String correlationID = message.getJMSCorrelationID();
+            // only foreign correlation IDs need to be looked up as strings
+            long id = CorrelationIDGenerator.getCorrelationID(message);
+            String correlationID = id > 0 ? null : message.getJMSCorrelationID();
 
             // lets notify the monitor for this response
-            Object handler = requestMap.get(correlationID);
+            Object handler = getHandler(id, correlationID);
             if (handler == null) {
-                log.warn("Response received for unknown correlationID: " + correlationID + " request: " + message);
+                log.warn("Response received for unknown correlationID: " + message.getJMSCorrelationID() + " request: " + message);
             }
             else if (handler instanceof ReplyHandler) {
                 ReplyHandler replyHandler = (ReplyHandler) handler;
                 boolean complete = replyHandler.handle(message);
                 if (complete) {
-                    requestMap.remove(correlationID);
+                    removeHandler(id, correlationID);
                 }
             }
         }
@@ -180,6 +229,17 @@ public class MultiplexingRequestor extends SingleThreadedRequestor implements Me
 
     }
 
+    public synchronized void close() throws JMSException {
+        if (registered) {
+            registered = false;
+            replyDispatcher.unregister(getCorrelationIDGenerator().getPrefix());
+            // the reply queue is shared so it must not be deleted
+            setInboundDestination(null);
+        }
+        executor.shutdownNow();
+        super.close();
+    }
+
     // Lets ensure only one thread performs a send/receive at once
     public synchronized Message receive(long timeout) throws JMSException {
         return super.receive(timeout);
@@ -199,8 +259,69 @@ public class MultiplexingRequestor extends SingleThreadedRequestor implements Me
         this.requestMap = requests;
     }
 
+    public LongTimeoutMap getInFlightRequests() {
+        return inFlightRequests;
+    }
+
+    /**
+     * Returns the number of requests which are waiting for a response
+     */
+    public int getPendingRequestCount() {
+        return inFlightRequests.size() + requestMap.getKeys().length;
+    }
+
+    public ReplyDispatcher getReplyDispatcher() {
+        return replyDispatcher;
+    }
+
     // Implementation methods
     // -------------------------------------------------------------------------
+    /**
+     * Factory method to create the map of correlation IDs to the handlers of
+     * outstanding requests whose correlation IDs were not created by a
+     * {@link CorrelationIDGenerator}. By default a
+     * {@link HashedWheelTimeoutMap} is used so that lookups do not contend on
+     * a single lock; derived classes can return a {@link DefaultTimeoutMap}
+     * instead.
+     */
+    protected TimeoutMap createRequestMap(ScheduledExecutorService executor) {
+        return new HashedWheelTimeoutMap(executor, 1000L);
+    }
+
+    /**
+     * Factory method to create the map of the handlers of outstanding requests
+     * keyed by the long value of correlation IDs created by a
+     * {@link CorrelationIDGenerator}
+     */
+    protected LongTimeoutMap createInFlightRequests(ScheduledExecutorService executor) {
+        return new LongTimeoutMap(executor, 1000L);
+    }
+
+    protected Object getHandler(long id, String correlationID) {
+        if (id > 0) {
+            return inFlightRequests.get(id);
+        }
+        return requestMap.get(correlationID);
+    }
+
+    protected void putHandler(long id, String correlationID, Object handler, long timeout) {
+        if (id > 0) {
+            inFlightRequests.put(id, handler, timeout);
+        }
+        else {
+            requestMap.put(correlationID, handler, timeout);
+        }
+    }
+
+    protected void removeHandler(long id, String correlationID) {
+        if (id > 0) {
+            inFlightRequests.remove(id);
+        }
+        else {
+            requestMap.remove(correlationID);
+        }
+    }
+
     protected JMSException createJMSException(Exception e) {
         JMSException answer = new JMSException(e.toString());
         answer.setLinkedException(e);
@@ -0,0 +1,179 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledThreadPoolExecutor;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.logicblaze.lingo.jms.JmsServiceExporterMessageListener;
+import org.logicblaze.lingo.jms.Requestor;
+import org.logicblaze.lingo.jms.marshall.Marshaller;
+import org.springframework.remoting.support.RemoteInvocation;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers one way invocations for each destination and sends them as a single
+ * message when either the batch is full or the first invocation in the batch
+ * has waited for the linger time. The invocations are sent in the order they
+ * were added and the exporter invokes them in the same order.
+ * 
+ * @version $Revision$
+ */
+public class OneWayBatcher {
+    private static final Log log = LogFactory.getLog(OneWayBatcher.class);
+
+    private final Requestor requestor;
+    private final Marshaller marshaller;
+    private final int batchSize;
+    private final long lingerTime;
+    private final Map batches = new HashMap();
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a new batcher
+     * 
+     * @param requestor
+     *            the requestor used to send the batches
+     * @param marshaller
+     *            the marshaller used to create the batch messages
+     * @param batchSize
+     *            the maximum number of invocations in a batch
+     * @param lingerTime
+     *            the maximum amount of time in milliseconds an invocation waits
+     *            for the batch to fill up before it is sent
+     */
+    public OneWayBatcher(Requestor requestor, Marshaller marshaller, int batchSize, long lingerTime) {
+        this.requestor = requestor;
+        this.marshaller = marshaller;
+        this.batchSize = batchSize;
+        this.lingerTime = lingerTime;
+        this.executor = new ScheduledThreadPoolExecutor(1);
+    }
+
+    /**
+     * Adds the invocation to the batch for the given destination, sending the
+     * batch if it is full
+     */
+    public synchronized void send(final Destination destination, RemoteInvocation invocation) throws JMSException {
+        List batch = (List) batches.get(destination);
+        if (batch == null) {
+            if (executor == null) {
+                throw new JMSException("OneWayBatcher is closed");
+            }
+            final List newBatch = new ArrayList(batchSize);
+            batches.put(destination, newBatch);
+            executor.schedule(new Runnable() {
+                public void run() {
+                    flush(destination, newBatch);
+                }
+            }, lingerTime, TimeUnit.MILLISECONDS);
+            batch = newBatch;
+        }
+        batch.add(invocation);
+        if (batch.size() >= batchSize) {
+            batches.remove(destination);
+            sendBatch(destination, batch);
+        }
+    }
+
+    /**
+     * Sends all of the buffered invocations
+     */
+    public synchronized void flush() throws JMSException {
+        for (Iterator iter = batches.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            iter.remove();
+            sendBatch((Destination) entry.getKey(), (List) entry.getValue());
+        }
+    }
+
+    /**
+     * Sends any buffered invocations and stops the timer thread
+     */
+    public void close() throws JMSException {
+        ScheduledExecutorService oldExecutor;
+        synchronized (this) {
+            flush();
+            oldExecutor = executor;
+            executor = null;
+        }
+        if (oldExecutor != null) {
+            oldExecutor.shutdownNow();
+        }
+    }
+
+    public Requestor getRequestor() {
+        return requestor;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getLingerTime() {
+        return lingerTime;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+
+    /**
+     * Sends the given batch if it has not already been sent
+     */
+    protected synchronized void flush(Destination destination, List batch) {
+        if (batches.get(destination) == batch) {
+            batches.remove(destination);
+            try {
+                sendBatch(destination, batch);
+            }
+            catch (JMSException e) {
+                log.warn("Failed to send batch of: " + batch.size() + " invocation(s) to: " + destination + ". Reason: " + e, e);
+            }
+        }
+    }
+
+    protected void sendBatch(Destination destination, List batch) throws JMSException {
+        RemoteInvocation[] invocations = new RemoteInvocation[batch.size()];
+        batch.toArray(invocations);
+        Message message = marshaller.createObjectMessage(requestor.getSession(), invocations);
+        message.setIntProperty(JmsServiceExporterMessageListener.BATCH_SIZE, invocations.length);
+        populateHeaders(message);
+        if (log.isDebugEnabled()) {
+            log.debug("Sending batch of: " + invocations.length + " invocation(s) to: " + destination);
+        }
+        requestor.send(destination, message);
+    }
+
+    /**
+     * A hook to allow derivations to add headers to the batch messages
+     */
+    protected void populateHeaders(Message message) throws JMSException {
+    }
+}
@@ -45,7 +45,7 @@ public class OneWayRequestor implements Requestor, DisposableBean {
     private MessageProducer producer;
     private boolean ownsConnection = true;
     private Destination serverDestination;
-    private long counter;
+    private CorrelationIDGenerator correlationIDGenerator = new CorrelationIDGenerator();
 
     public static OneWayRequestor newInstance(Connection connection, JmsProducerConfig config, boolean ownsConnection) throws JMSException {
         Session session = config.createSession(connection);
@@ -135,6 +135,10 @@ public class OneWayRequestor implements Requestor, DisposableBean {
         return producer;
     }
 
+    public CorrelationIDGenerator getCorrelationIDGenerator() {
+        return correlationIDGenerator;
+    }
+
     public int getDeliveryMode() throws JMSException {
         return getMessageProducer().getDeliveryMode();
     }
@@ -212,17 +216,16 @@ public class OneWayRequestor implements Requestor, DisposableBean {
     }
 
     /**
-     * Creates a new correlation ID. Note that because the correlationID is used
-     * on a per-temporary destination basis, it does not need to be unique
-     * across more than one destination. So a simple counter will suffice.
+     * Creates a new correlation ID which is unique within the JVM so that
+     * requestors can share a destination for their responses
      * 
      * @return
      */
     public String createCorrelationID() {
-        return Long.toString(nextCounter());
+        return correlationIDGenerator.createCorrelationID();
     }
 
-    protected synchronized long nextCounter() {
-        return ++counter;
+    protected long nextCounter() {
+        return correlationIDGenerator.nextID();
     }
 }
@@ -0,0 +1,191 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.logicblaze.lingo.jms.FailedToProcessResponse;
+import org.logicblaze.lingo.jms.JmsProducerConfig;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Consumes the responses for all of the requestors in a JVM which use the same
+ * {@link ConnectionFactory} from a small number of shared temporary queues,
+ * routing each response to the requestor which sent the request using the
+ * prefix of its {@link CorrelationIDGenerator}. This avoids each requestor creating its own
+ * temporary queue, consumer and dispatch thread. <p/> Requestors are
+ * assigned to the reply queues in a round robin fashion so that responses to
+ * different requestors can be processed concurrently. The dispatcher is
+ * closed when the last requestor is unregistered.
+ * 
+ * @version $Revision$
+ */
+public class ReplyDispatcher {
+    private static final Log log = LogFactory.getLog(ReplyDispatcher.class);
+
+    public static final int DEFAULT_STRIPES = 4;
+
+    private static final Map dispatchers = new HashMap();
+
+    private final ConnectionFactory connectionFactory;
+    private final Connection connection;
+    private final Session[] sessions;
+    private final Destination[] destinations;
+    private final Map routes = new ConcurrentHashMap();
+    private int registrations;
+
+    /**
+     * Registers the listener for the responses to the requests whose
+     * correlation IDs were created by the generator with the given prefix on
+     * the shared dispatcher for the given connection factory, creating the
+     * dispatcher if required
+     * 
+     * @return the dispatcher the listener was registered with
+     */
+    public static ReplyDispatcher register(ConnectionFactory connectionFactory, JmsProducerConfig config, long prefix, MessageListener listener)
+            throws JMSException {
+        return register(connectionFactory, config, DEFAULT_STRIPES, prefix, listener);
+    }
+
+    /**
+     * Registers the listener for the responses to the requests whose
+     * correlation IDs were created by the generator with the given prefix on
+     * the shared dispatcher for the given connection factory, creating the
+     * dispatcher with the given number of reply queues if required
+     * 
+     * @return the dispatcher the listener was registered with
+     */
+    public static ReplyDispatcher register(ConnectionFactory connectionFactory, JmsProducerConfig config, int stripes, long prefix, MessageListener listener)
+            throws JMSException {
+        // the lookup and registration must be atomic so that the last
+        // requestor to unregister cannot close the dispatcher in between
+        synchronized (dispatchers) {
+            ReplyDispatcher answer = (ReplyDispatcher) dispatchers.get(connectionFactory);
+            if (answer == null || answer.registrations < 0) {
+                answer = new ReplyDispatcher(connectionFactory, config, stripes);
+                dispatchers.put(connectionFactory, answer);
+            }
+            answer.registrations++;
+            answer.routes.put(new Long(prefix), listener);
+            return answer;
+        }
+    }
+
+    protected ReplyDispatcher(ConnectionFactory connectionFactory, JmsProducerConfig config, int stripes) throws JMSException {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be at least 1 but was: " + stripes);
+        }
+        this.connectionFactory = connectionFactory;
+        this.connection = config.createConnection(connectionFactory);
+        this.sessions = new Session[stripes];
+        this.destinations = new Destination[stripes];
+        try {
+            for (int i = 0; i < stripes; i++) {
+                sessions[i] = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                destinations[i] = config.createTemporaryDestination(sessions[i]);
+                MessageConsumer consumer = sessions[i].createConsumer(destinations[i]);
+                consumer.setMessageListener(new MessageListener() {
+                    public void onMessage(Message message) {
+                        dispatch(message);
+                    }
+                });
+            }
+        }
+        catch (JMSException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Unregisters the listener for the given prefix, closing the dispatcher if
+     * no listeners remain
+     */
+    public void unregister(long prefix) throws JMSException {
+        synchronized (dispatchers) {
+            if (routes.remove(new Long(prefix)) == null) {
+                return;
+            }
+            if (--registrations > 0) {
+                return;
+            }
+            registrations = -1;
+            if (dispatchers.get(connectionFactory) == this) {
+                dispatchers.remove(connectionFactory);
+            }
+        }
+        connection.close();
+    }
+
+    /**
+     * Returns the destination to which the responses for the given prefix
+     * should be sent
+     */
+    public Destination getReplyDestination(long prefix) {
+        return destinations[(int) (prefix % destinations.length)];
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public ConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    public int getStripes() {
+        return destinations.length;
+    }
+
+    public int getRegistrationCount() {
+        return routes.size();
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected void dispatch(Message message) {
+        long correlationID;
+        try {
+            correlationID = CorrelationIDGenerator.getCorrelationID(message);
+        }
+        catch (JMSException e) {
+            throw new FailedToProcessResponse(message, e);
+        }
+        MessageListener listener = null;
+        if (correlationID > 0) {
+            listener = (MessageListener) routes.get(new Long(CorrelationIDGenerator.getPrefix(correlationID)));
+        }
+        if (listener == null) {
+            log.warn("Response received for unknown correlationID: " + correlationID + " request: " + message);
+        }
+        else {
+            listener.onMessage(message);
+        }
+    }
+}
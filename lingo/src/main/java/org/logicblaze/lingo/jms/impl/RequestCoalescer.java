@@ -0,0 +1,122 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentHashMap;
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+
+import java.lang.reflect.Method;
+
+/**
+ * Coalesces identical concurrent invocations of a method so that only the
+ * first caller performs the invocation while any other callers with equal
+ * arguments wait for it to complete and are given the same result or
+ * exception. <p/> This should only be used for idempotent methods whose
+ * results can be shared, since the callers receive the same result object.
+ * Arguments are compared in the same way as by the {@link ResultCache}.
+ * 
+ * @version $Revision$
+ */
+public class RequestCoalescer {
+    private final ConcurrentHashMap inFlight = new ConcurrentHashMap();
+
+    /**
+     * The invocation which is performed by the first caller
+     */
+    public interface Call {
+        Object call() throws Throwable;
+    }
+
+    /**
+     * Performs the call unless an identical call is already in flight in which
+     * case its result is awaited instead
+     */
+    public Object invoke(Method method, Object[] arguments, Call call) throws Throwable {
+        FlightKey key = new FlightKey(method, arguments);
+        Flight flight = new Flight();
+        Flight current = (Flight) inFlight.putIfAbsent(key, flight);
+        if (current != null) {
+            return current.await();
+        }
+        try {
+            Object value = call.call();
+            flight.complete(value, null);
+            return value;
+        }
+        catch (Throwable e) {
+            flight.complete(null, e);
+            throw e;
+        }
+        finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Returns the number of distinct calls currently in flight
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    /**
+     * The outcome of a call which is in flight
+     */
+    protected static class Flight {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private Object value;
+        private Throwable exception;
+
+        public void complete(Object value, Throwable exception) {
+            this.value = value;
+            this.exception = exception;
+            latch.countDown();
+        }
+
+        public Object await() throws Throwable {
+            latch.await();
+            if (exception != null) {
+                throw exception;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * The key of an invocation made up of the method and its arguments
+     */
+    protected static class FlightKey extends ResultCache.Key {
+        private final Method method;
+
+        public FlightKey(Method method, Object[] arguments) {
+            super(arguments, true);
+            this.method = method;
+        }
+
+        public boolean equals(Object object) {
+            if (!(object instanceof FlightKey)) {
+                return false;
+            }
+            return method.equals(((FlightKey) object).method) && super.equals(object);
+        }
+
+        public int hashCode() {
+            return 31 * super.hashCode() + method.hashCode();
+        }
+    }
+}
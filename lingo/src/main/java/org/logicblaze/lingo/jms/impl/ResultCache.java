@@ -0,0 +1,278 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentHashMap;
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.logicblaze.lingo.MethodMetadata;
+import org.logicblaze.lingo.jms.JmsServiceExporterMessageListener;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A client side cache of the results of cacheable methods, keyed on the method
+ * and its arguments, which can be safely used by many threads without
+ * locking. Each method has its own cache with the time to live and maximum size
+ * given by its {@link MethodMetadata}; when a cache is full the expired results
+ * are removed followed by some arbitrary results. <p/> Arguments are compared
+ * using their equals methods so array arguments only match the same array.
+ * Cached results are shared by all callers so they should not be modified.
+ * <p/> The cache can be subscribed to a topic on which servers publish
+ * invalidation messages, which contain the name of the method whose results
+ * are invalidated in the {@link JmsServiceExporterMessageListener#INVALIDATE_METHOD}
+ * property or no name if all the results should be invalidated. An
+ * invalidation which arrives while a call is in flight is not lost as the
+ * caller reads the {@link #getGeneration(Method) generation} of the method
+ * before sending the request and the result is not cached if the generation
+ * has changed by the time it arrives.
+ * 
+ * @version $Revision$
+ */
+public class ResultCache implements MessageListener {
+    private static final Log log = LogFactory.getLog(ResultCache.class);
+
+    private final ConcurrentHashMap methodCaches = new ConcurrentHashMap();
+    private final ConcurrentHashMap methodGenerations = new ConcurrentHashMap();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Returns the cached result of the method for the given arguments or null
+     * if there is no result cached
+     */
+    public Entry get(Method method, Object[] arguments) {
+        MethodCache cache = (MethodCache) methodCaches.get(method);
+        if (cache == null) {
+            return null;
+        }
+        return cache.get(new Key(arguments, false), System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the generation of the cached results of the method which is
+     * changed whenever they are invalidated
+     */
+    public long getGeneration(Method method) {
+        return generation.get() + getMethodGeneration(method.getName()).get();
+    }
+
+    /**
+     * Caches the result of the method for the given arguments unless the
+     * results of the method have been invalidated since the given generation
+     */
+    public void put(Method method, Object[] arguments, Object value, MethodMetadata metadata, long generation) {
+        MethodCache cache = (MethodCache) methodCaches.get(method);
+        if (cache == null) {
+            cache = new MethodCache(metadata.getCacheTimeToLive(), metadata.getCacheMaximumSize());
+            MethodCache current = (MethodCache) methodCaches.putIfAbsent(method, cache);
+            if (current != null) {
+                cache = current;
+            }
+        }
+        // the invalidation changes the generation before it removes the cache
+        if (getGeneration(method) != generation) {
+            if (log.isDebugEnabled()) {
+                log.debug("Not caching result of: " + method.getName() + " as it was invalidated during the call");
+            }
+            return;
+        }
+        cache.put(new Key(arguments, true), value, System.currentTimeMillis());
+    }
+
+    /**
+     * Removes the cached results of all the methods with the given name
+     */
+    public void invalidate(String methodName) {
+        getMethodGeneration(methodName).incrementAndGet();
+        for (Iterator iter = methodCaches.keySet().iterator(); iter.hasNext();) {
+            Method method = (Method) iter.next();
+            if (method.getName().equals(methodName)) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached results
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        methodCaches.clear();
+    }
+
+    /**
+     * Returns the number of cached results
+     */
+    public int size() {
+        int answer = 0;
+        for (Iterator iter = methodCaches.values().iterator(); iter.hasNext();) {
+            answer += ((MethodCache) iter.next()).entries.size();
+        }
+        return answer;
+    }
+
+    /**
+     * Processes an invalidation message
+     */
+    public void onMessage(Message message) {
+        try {
+            String methodName = message.getStringProperty(JmsServiceExporterMessageListener.INVALIDATE_METHOD);
+            if (log.isDebugEnabled()) {
+                log.debug("Invalidating cached results of: " + (methodName != null ? methodName : "all methods"));
+            }
+            if (methodName != null) {
+                invalidate(methodName);
+            }
+            else {
+                invalidateAll();
+            }
+        }
+        catch (JMSException e) {
+            log.warn("Failed to process invalidation message: " + message + ". Reason: " + e, e);
+        }
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected AtomicLong getMethodGeneration(String methodName) {
+        AtomicLong answer = (AtomicLong) methodGenerations.get(methodName);
+        if (answer == null) {
+            answer = new AtomicLong();
+            AtomicLong current = (AtomicLong) methodGenerations.putIfAbsent(methodName, answer);
+            if (current != null) {
+                answer = current;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * A cached result
+     */
+    public static class Entry {
+        private final Object value;
+        private final long expiryTime;
+
+        public Entry(Object value, long expiryTime) {
+            this.value = value;
+            this.expiryTime = expiryTime;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public long getExpiryTime() {
+            return expiryTime;
+        }
+    }
+
+    /**
+     * The cached results of a single method
+     */
+    protected static class MethodCache {
+        private final ConcurrentHashMap entries = new ConcurrentHashMap();
+        private final long timeToLive;
+        private final int maximumSize;
+
+        public MethodCache(long timeToLive, int maximumSize) {
+            this.timeToLive = timeToLive;
+            this.maximumSize = maximumSize;
+        }
+
+        public Entry get(Key key, long now) {
+            Entry entry = (Entry) entries.get(key);
+            if (entry != null && entry.getExpiryTime() <= now) {
+                entries.remove(key, entry);
+                return null;
+            }
+            return entry;
+        }
+
+        public void put(Key key, Object value, long now) {
+            if (maximumSize > 0 && entries.size() >= maximumSize) {
+                evict(now);
+            }
+            entries.put(key, new Entry(value, now + timeToLive));
+        }
+
+        /**
+         * Removes the expired entries and, if that is not enough, some more
+         * entries so that we don't have to evict on every put
+         */
+        protected void evict(long now) {
+            for (Iterator iter = entries.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry mapEntry = (Map.Entry) iter.next();
+                if (((Entry) mapEntry.getValue()).getExpiryTime() <= now) {
+                    iter.remove();
+                }
+            }
+            int target = maximumSize - Math.max(1, maximumSize / 8);
+            for (Iterator iter = entries.keySet().iterator(); iter.hasNext() && entries.size() > target;) {
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * The key of a cached result which compares the arguments of the method
+     */
+    protected static class Key {
+        private final Object[] arguments;
+        private final int hashCode;
+
+        /**
+         * Creates a key, copying the arguments if the key is stored in the
+         * cache so that later changes to the array by the caller don't matter
+         */
+        public Key(Object[] arguments, boolean copy) {
+            if (arguments == null) {
+                arguments = new Object[0];
+            }
+            this.arguments = copy ? (Object[]) arguments.clone() : arguments;
+            int hash = 1;
+            for (int i = 0; i < this.arguments.length; i++) {
+                Object argument = this.arguments[i];
+                hash = 31 * hash + (argument != null ? argument.hashCode() : 0);
+            }
+            this.hashCode = hash;
+        }
+
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) object;
+            return hashCode == that.hashCode && Arrays.equals(arguments, that.arguments);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
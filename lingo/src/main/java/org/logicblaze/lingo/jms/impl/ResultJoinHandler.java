@@ -17,11 +17,15 @@
  **/
 package org.logicblaze.lingo.jms.impl;
 
+import edu.emory.mathcs.backport.java.util.concurrent.helpers.Utils;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.logicblaze.lingo.ResultJoinStrategy;
+import org.logicblaze.lingo.TimeoutResultJoinStrategy;
 import org.logicblaze.lingo.jms.ReplyHandler;
 import org.logicblaze.lingo.jms.marshall.Marshaller;
+import org.springframework.remoting.RemoteAccessException;
 import org.springframework.remoting.support.RemoteInvocationResult;
 
 import javax.jms.JMSException;
@@ -32,6 +36,13 @@ import javax.jms.Message;
  * multiple results to the same request which are then aggregated together into
  * a single value.
  * 
+ * <p/> The calling thread is woken as soon as a response satisfies the join
+ * strategy. If the strategy is a {@link TimeoutResultJoinStrategy} it also
+ * sleeps until exactly the deadline at which the strategy unblocks, otherwise
+ * it checks the strategy every {@link #getTimeout()} milliseconds. If a
+ * response timeout is specified then the caller fails with a
+ * {@link RemoteAccessException} if no response at all arrives within it.
+ * 
  * @version $Revision$
  */
 public class ResultJoinHandler implements ReplyHandler {
@@ -44,13 +55,20 @@ public class ResultJoinHandler implements ReplyHandler {
     private int responseCount;
     private RemoteInvocationResult result;
     private long timeout = 500;
+    private long responseTimeout = -1;
     private boolean notified = false;
+    private final long startTime = Utils.nanoTime();
 
     public ResultJoinHandler(Marshaller marshaller, ResultJoinStrategy joinStrategy) {
         this.marshaller = marshaller;
         this.joinStrategy = joinStrategy;
     }
 
+    public ResultJoinHandler(Marshaller marshaller, ResultJoinStrategy joinStrategy, long responseTimeout) {
+        this(marshaller, joinStrategy);
+        this.responseTimeout = responseTimeout;
+    }
+
     public boolean handle(Message message) throws JMSException {
         RemoteInvocationResult newResult = marshaller.extractInvocationResult(message);
         synchronized (lock) {
@@ -61,10 +79,12 @@ public class ResultJoinHandler implements ReplyHandler {
             else {
                 result = joinStrategy.mergeResponses(result, newResult, responseCount);
             }
-            if (joinStrategy.unblockCallerThread(result, responseCount)) {
+            if (joinStrategy.unblockCallerThread(result, responseCount) || joinStrategy.unblockAfterTimeout(result, getWaitTime())) {
             	notified = true;
-                lock.notifyAll();
             }
+            // lets wake the caller even if not notified as the deadline may
+            // have changed
+            lock.notifyAll();
         }
         return joinStrategy.removeHandler(result, responseCount);
     }
@@ -73,29 +93,36 @@ public class ResultJoinHandler implements ReplyHandler {
      * This method will block the calling thread until the result is available.
      */
     public RemoteInvocationResult waitForResult() {
-    	long waitCount = 0;
-        while (true) {
-            synchronized (lock) {
+        synchronized (lock) {
+            while (true) {
             	// so if we've been notified, we're done
                 if (notified) {
                     return result;
                 }
-                try {
-                    lock.wait(timeout);
-                }
-                catch (InterruptedException e) {
-                    log.debug("Ignored interrupt exception: " + e, e);
-                }
-                // calculate the amount of time we've slept
-                waitCount += timeout;
+                long waitTime = getWaitTime();
                 // should we unblock even though we've timed out?
-                if (joinStrategy.unblockAfterTimeout(result, waitCount)) {
+                if (joinStrategy.unblockAfterTimeout(result, waitTime)) {
                 	// TODO: how do we remove the handler if we never get another message?
                     // 
                     // note that we use a TimeoutMap so they will be discarded after timing out
                     // though we could maybe be more aggressive
                 	return result;
                 }
+                if (result == null && isTimedOutWaitingForResponse(waitTime)) {
+                    return new RemoteInvocationResult(new RemoteAccessException("No responses received within: " + waitTime + " millis"));
+                }
+                try {
+                    long sleepTime = getSleepTime(waitTime);
+                    if (sleepTime < 0) {
+                        lock.wait();
+                    }
+                    else {
+                        lock.wait(sleepTime);
+                    }
+                }
+                catch (InterruptedException e) {
+                    log.debug("Ignored interrupt exception: " + e, e);
+                }
             }
         }
     }
@@ -117,11 +144,65 @@ public class ResultJoinHandler implements ReplyHandler {
     }
 
     /**
-     * Sets the {@link #wait(long)} method timeout period before resuming the
-     * wait.
+     * Sets the {@link #wait(long)} method timeout period before checking the
+     * join strategy again when the strategy is not a
+     * {@link TimeoutResultJoinStrategy}
      */
     public void setTimeout(long timeout) {
         this.timeout = timeout;
     }
 
+    public long getResponseTimeout() {
+        return responseTimeout;
+    }
+
+    /**
+     * Sets the maximum number of milliseconds to wait for the first response
+     * or a negative value to wait until the join strategy unblocks
+     */
+    public void setResponseTimeout(long responseTimeout) {
+        this.responseTimeout = responseTimeout;
+    }
+
+    /**
+     * Returns the number of milliseconds since this handler was created, which
+     * is just before the request is sent
+     */
+    public long getWaitTime() {
+        return (Utils.nanoTime() - startTime) / 1000000L;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+
+    /**
+     * Returns true if no response has arrived within the response timeout
+     */
+    protected boolean isTimedOutWaitingForResponse(long waitTime) {
+        return responseTimeout >= 0 && waitTime >= responseTimeout;
+    }
+
+    /**
+     * Returns how long to sleep for before checking the join strategy again or
+     * a negative value to sleep until a response arrives
+     */
+    protected long getSleepTime(long waitTime) {
+        long answer = timeout;
+        if (joinStrategy instanceof TimeoutResultJoinStrategy) {
+            long unblockTimeout = ((TimeoutResultJoinStrategy) joinStrategy).getUnblockTimeout(result);
+            answer = unblockTimeout < 0 ? -1 : unblockTimeout - waitTime;
+        }
+        if (result == null && responseTimeout >= 0) {
+            long remaining = responseTimeout - waitTime;
+            if (answer < 0 || remaining < answer) {
+                answer = remaining;
+            }
+        }
+        if (answer < 0) {
+            return -1;
+        }
+        // lets not sleep for zero which means forever
+        return Math.max(answer, 1);
+    }
+
 }
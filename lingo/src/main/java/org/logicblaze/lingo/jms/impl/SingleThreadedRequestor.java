@@ -127,4 +127,12 @@ public class SingleThreadedRequestor extends OneWayRequestor {
         return inboundDestination;
     }
 
+    /**
+     * Sets the destination to which responses should be sent when they are
+     * consumed by some other object, such as a {@link ReplyDispatcher}
+     */
+    protected void setInboundDestination(Destination inboundDestination) {
+        this.inboundDestination = inboundDestination;
+    }
+
 }
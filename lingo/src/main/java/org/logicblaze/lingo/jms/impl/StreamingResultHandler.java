@@ -0,0 +1,169 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import edu.emory.mathcs.backport.java.util.concurrent.LinkedBlockingQueue;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.logicblaze.lingo.ResultCallback;
+import org.logicblaze.lingo.ResultIterator;
+import org.logicblaze.lingo.jms.ReplyHandler;
+import org.logicblaze.lingo.jms.marshall.Marshaller;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link ReplyHandler} for requests which receive many responses which
+ * passes each result to a {@link ResultCallback} or makes it available via
+ * the {@link ResultIterator} interface as soon as it arrives, rather than
+ * joining the results together.
+ * 
+ * <p/> The iterator should only be used by a single thread, though it can be
+ * cancelled from any thread.
+ * 
+ * @version $Revision$
+ */
+public class StreamingResultHandler implements ReplyHandler, ResultIterator {
+    private static final Log log = LogFactory.getLog(StreamingResultHandler.class);
+
+    private static final Object END = new Object();
+
+    private final Marshaller marshaller;
+    private final ResultCallback callback;
+    private final long timeout;
+    private final LinkedBlockingQueue results = new LinkedBlockingQueue();
+    private volatile boolean cancelled;
+    private Object next;
+
+    /**
+     * Creates a new handler
+     * 
+     * @param marshaller
+     *            the marshaller used to extract the results
+     * @param callback
+     *            the callback to notify of each result or null if the results
+     *            are consumed using the iterator
+     * @param timeout
+     *            the maximum time the iterator waits for the next result
+     */
+    public StreamingResultHandler(Marshaller marshaller, ResultCallback callback, long timeout) {
+        this.marshaller = marshaller;
+        this.callback = callback;
+        this.timeout = timeout;
+    }
+
+    public boolean handle(Message message) throws JMSException {
+        if (cancelled) {
+            return true;
+        }
+        RemoteInvocationResult result = marshaller.extractInvocationResult(message);
+        if (callback != null) {
+            notifyCallback(result);
+        }
+        else {
+            results.add(result);
+        }
+        return cancelled;
+    }
+
+    public boolean hasNext() {
+        if (next == null) {
+            if (cancelled) {
+                next = END;
+            }
+            else {
+                try {
+                    next = results.poll(timeout, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (next == null) {
+                    next = END;
+                }
+            }
+        }
+        return next != END;
+    }
+
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        RemoteInvocationResult result = (RemoteInvocationResult) next;
+        next = null;
+        try {
+            return result.recreate();
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Error e) {
+            throw e;
+        }
+        catch (Throwable e) {
+            throw new RemoteAccessException("Remote invocation failed: " + e, e);
+        }
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove() not supported");
+    }
+
+    public void cancel() {
+        cancelled = true;
+        results.clear();
+        // lets wake up any thread waiting for a result
+        results.add(END);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected void notifyCallback(RemoteInvocationResult result) {
+        try {
+            Object value = null;
+            Throwable exception = null;
+            try {
+                value = result.recreate();
+            }
+            catch (Throwable e) {
+                exception = e;
+            }
+            if (exception != null) {
+                callback.onException(exception);
+            }
+            else {
+                callback.onResult(value);
+            }
+        }
+        catch (RuntimeException e) {
+            log.warn("Caught exception from callback: " + callback + ". Reason: " + e, e);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.impl;
+
+import edu.emory.mathcs.backport.java.util.concurrent.Callable;
+import edu.emory.mathcs.backport.java.util.concurrent.Future;
+import edu.emory.mathcs.backport.java.util.concurrent.FutureTask;
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledThreadPoolExecutor;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.logicblaze.lingo.jms.JmsProducerConfig;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+/**
+ * A {@link OneWayRequestor} which sends messages on a transacted session and
+ * commits them in batches; either when a number of messages have been sent or
+ * periodically from a background thread. This allows persistent one-way
+ * messages to be written to the broker in a single synchronous operation per
+ * batch rather than one per message, at the cost of delaying delivery by at
+ * most the commit interval. <p/> Use {@link #flush()} or
+ * {@link #getCommitFuture()} if the caller needs to know that the messages it
+ * has sent have been committed. <p/> This class can be used concurrently by
+ * many different threads at the same time.
+ * 
+ * @version $Revision$
+ */
+public class TransactedBatchRequestor extends OneWayRequestor {
+    private static final Log log = LogFactory.getLog(TransactedBatchRequestor.class);
+
+    public static final int DEFAULT_COMMIT_SIZE = 100;
+    public static final long DEFAULT_COMMIT_INTERVAL = 100L;
+
+    private final int commitSize;
+    private final long commitInterval;
+    private ScheduledExecutorService executor;
+    private CommitFuture commitFuture = new CommitFuture();
+    private int pendingCount;
+    private long commitCount;
+
+    public static TransactedBatchRequestor newInstance(ConnectionFactory connectionFactory, JmsProducerConfig config, Destination destination, int commitSize,
+            long commitInterval) throws JMSException {
+        Connection connection = config.createConnection(connectionFactory);
+        Session session = config.createSession(connection);
+        MessageProducer producer = config.createMessageProducer(session);
+        return new TransactedBatchRequestor(connection, session, producer, destination, true, commitSize, commitInterval);
+    }
+
+    public static TransactedBatchRequestor newInstance(ConnectionFactory connectionFactory, JmsProducerConfig config, Destination destination)
+            throws JMSException {
+        return newInstance(connectionFactory, config, destination, DEFAULT_COMMIT_SIZE, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    /**
+     * Creates a new requestor
+     * 
+     * @param session
+     *            the transacted session used to send the messages
+     * @param commitSize
+     *            the number of messages sent after which the session is
+     *            committed
+     * @param commitInterval
+     *            the maximum amount of time in milliseconds between a message
+     *            being sent and the session being committed or 0 if the
+     *            session is only committed when the batch is full or
+     *            explicitly flushed
+     */
+    public TransactedBatchRequestor(Connection connection, Session session, MessageProducer producer, Destination serverDestination,
+            boolean ownsConnection, int commitSize, long commitInterval) throws JMSException {
+        super(connection, session, producer, serverDestination, ownsConnection);
+        if (!session.getTransacted()) {
+            throw new IllegalArgumentException("The session must be transacted; set the transactedMode property of the JmsProducerConfig");
+        }
+        if (commitSize < 1) {
+            throw new IllegalArgumentException("commitSize must be at least 1 but was: " + commitSize);
+        }
+        this.commitSize = commitSize;
+        this.commitInterval = commitInterval;
+        if (commitInterval > 0) {
+            executor = new ScheduledThreadPoolExecutor(1);
+            executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        flush();
+                    }
+                    catch (JMSException e) {
+                        log.warn("Failed to commit batch: " + e, e);
+                    }
+                }
+            }, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Commits any pending messages and stops the background flusher
+     */
+    public void close() throws JMSException {
+        ScheduledExecutorService oldExecutor;
+        synchronized (this) {
+            oldExecutor = executor;
+            executor = null;
+        }
+        if (oldExecutor != null) {
+            oldExecutor.shutdownNow();
+        }
+        synchronized (this) {
+            if (getSession() != null) {
+                flush();
+            }
+            super.close();
+        }
+    }
+
+    /**
+     * Commits all of the messages sent so far
+     */
+    public synchronized void flush() throws JMSException {
+        if (pendingCount > 0) {
+            commit();
+        }
+    }
+
+    /**
+     * Returns a future which completes when all of the messages sent so far
+     * have been committed or fails with the exception thrown by the commit
+     */
+    public synchronized Future getCommitFuture() {
+        if (pendingCount == 0) {
+            CommitFuture answer = new CommitFuture();
+            answer.committed();
+            return answer;
+        }
+        return commitFuture;
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public int getCommitSize() {
+        return commitSize;
+    }
+
+    public long getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * Returns the number of messages sent which have not yet been committed
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Returns the number of transactions committed
+     */
+    public synchronized long getCommitCount() {
+        return commitCount;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected synchronized void doSend(Destination destination, Message message, long timeToLive) throws JMSException {
+        checkNotClosed();
+        super.doSend(destination, message, timeToLive);
+        onSend();
+    }
+
+    protected synchronized void doSend(Destination destination, Message message, int deliveryMode, int priority, long timeToLive) throws JMSException {
+        checkNotClosed();
+        super.doSend(destination, message, deliveryMode, priority, timeToLive);
+        onSend();
+    }
+
+    protected void onSend() throws JMSException {
+        if (++pendingCount >= commitSize) {
+            commit();
+        }
+    }
+
+    protected void commit() throws JMSException {
+        CommitFuture future = commitFuture;
+        commitFuture = new CommitFuture();
+        pendingCount = 0;
+        try {
+            getSession().commit();
+            commitCount++;
+        }
+        catch (JMSException e) {
+            future.failed(e);
+            throw e;
+        }
+        future.committed();
+    }
+
+    protected void checkNotClosed() throws JMSException {
+        if (getSession() == null) {
+            throw new JMSException("Requestor is closed");
+        }
+    }
+
+    /**
+     * A future which is completed when a batch of messages is committed
+     */
+    protected static class CommitFuture extends FutureTask {
+        private static final Callable EMPTY_CALLABLE = new Callable() {
+            public Object call() throws Exception {
+                return null;
+            }
+        };
+
+        public CommitFuture() {
+            super(EMPTY_CALLABLE);
+        }
+
+        public void committed() {
+            set(Boolean.TRUE);
+        }
+
+        public void failed(Throwable e) {
+            setException(e);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.marshall;
+
+import org.logicblaze.lingo.LingoInvocation;
+import org.logicblaze.lingo.MethodMetadata;
+import org.logicblaze.lingo.jms.Requestor;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A {@link Marshaller} which writes invocations and results into the body of a
+ * {@link BytesMessage} in a compact binary form rather than using Java
+ * serialization of the whole {@link LingoInvocation}. The method is identified
+ * by its negotiated method ID or otherwise by its name and parameter type
+ * names, the {@link MethodMetadata} is written
+ * as a few flags and the arguments, attributes and results are written using a
+ * {@link TypeCodecRegistry} which can be extended with custom codecs. The body
+ * is compressed in the same way as the {@link DefaultMarshaller} if a
+ * compression threshold is set, though the codec is flagged using the
+ * {@link #BINARY_COMPRESSION} property. <p/>
+ * Messages in this format are flagged with the {@link #BINARY_FORMAT}
+ * property; any other messages, such as those created by a
+ * {@link DefaultMarshaller}, are processed as in the {@link DefaultMarshaller}.
+ * 
+ * @version $Revision$
+ */
+public class BinaryMarshaller extends DefaultMarshaller {
+
+    public static final String BINARY_FORMAT = "LingoBinaryFormat";
+    public static final String BINARY_COMPRESSION = "LingoBinaryCompression";
+
+    protected static final int FORMAT_VERSION = 3;
+
+    protected static final int ONE_WAY_FLAG = 0x01;
+    protected static final int STATEFUL_FLAG = 0x02;
+    protected static final int END_SESSION_FLAG = 0x04;
+    protected static final int REMOTE_PARAMETERS_FLAG = 0x08;
+
+    protected static final int RESULT_VALUE = 0;
+    protected static final int RESULT_EXCEPTION = 1;
+
+    private TypeCodecRegistry registry = new TypeCodecRegistry();
+
+    public Message createRequestMessage(Requestor requestor, LingoInvocation invocation) throws JMSException {
+        BytesMessage message = requestor.getSession().createBytesMessage();
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            writeInvocation(out, invocation);
+            out.close();
+            message.setIntProperty(BINARY_FORMAT, FORMAT_VERSION);
+            message.writeBytes(compress(message, buffer.toByteArray(), BINARY_COMPRESSION));
+        }
+        catch (IOException e) {
+            throw createJMSException("Failed to marshal invocation: " + invocation, e);
+        }
+        appendMessageHeaders(message, requestor, invocation);
+        return message;
+    }
+
+    public Message createResponseMessage(Session session, RemoteInvocationResult result, Message requestMessage) throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            writeResult(out, result);
+            out.close();
+            message.setIntProperty(BINARY_FORMAT, FORMAT_VERSION);
+            message.writeBytes(compress(message, buffer.toByteArray(), BINARY_COMPRESSION));
+        }
+        catch (IOException e) {
+            throw createJMSException("Failed to marshal result: " + result, e);
+        }
+        addResponseMessageHeaders(message, result, requestMessage);
+        return message;
+    }
+
+    public RemoteInvocationResult extractInvocationResult(Message message) throws JMSException {
+        if (isBinaryFormat(message)) {
+            handleInvocationResultHeaders(message);
+            try {
+                return readResult(createDataInput((BytesMessage) message));
+            }
+            catch (IOException e) {
+                throw createJMSException("Failed to unmarshal result from: " + message, e);
+            }
+        }
+        return super.extractInvocationResult(message);
+    }
+
+    public RemoteInvocation readRemoteInvocation(Message message) throws JMSException {
+        if (isBinaryFormat(message)) {
+            handleInvocationHeaders(message);
+            try {
+                return readInvocation(createDataInput((BytesMessage) message));
+            }
+            catch (IOException e) {
+                throw createJMSException("Failed to unmarshal invocation from: " + message, e);
+            }
+        }
+        return super.readRemoteInvocation(message);
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public TypeCodecRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Sets the registry of codecs used to write arguments and results
+     */
+    public void setRegistry(TypeCodecRegistry registry) {
+        this.registry = registry;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+
+    /**
+     * Returns true if the message was written in the binary format rather
+     * than by a {@link DefaultMarshaller}
+     */
+    protected boolean isBinaryFormat(Message message) throws JMSException {
+        return message instanceof BytesMessage && message.propertyExists(BINARY_FORMAT);
+    }
+
+    protected void writeInvocation(DataOutputStream out, LingoInvocation invocation) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        writeMethod(out, invocation);
+        Object[] arguments = invocation.getArguments();
+        writeMetadata(out, invocation.getMetadata(), arguments.length);
+        for (int i = 0; i < arguments.length; i++) {
+            registry.writeObject(out, arguments[i]);
+        }
+        registry.writeObject(out, invocation.getAttributes());
+    }
+
+    protected LingoInvocation readInvocation(DataInputStream in) throws IOException {
+        checkVersion(in);
+        int methodId = in.readUnsignedShort();
+        int methodTableHash = 0;
+        String methodName = null;
+        Class[] parameterTypes = null;
+        int parameterCount;
+        if (methodId > 0) {
+            methodTableHash = in.readInt();
+            parameterCount = in.readUnsignedByte();
+        }
+        else {
+            methodName = in.readUTF();
+            parameterTypes = readParameterTypes(in);
+            parameterCount = parameterTypes.length;
+        }
+        MethodMetadata metadata = readMetadata(in, parameterCount);
+        Object[] arguments = new Object[parameterCount];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = registry.readObject(in);
+        }
+        LingoInvocation answer = new LingoInvocation(methodName, parameterTypes, arguments, metadata);
+        answer.setMethodId(methodId);
+        answer.setMethodTableHash(methodTableHash);
+        answer.setAttributes((Map) registry.readObject(in));
+        return answer;
+    }
+
+    /**
+     * Writes the identity of the method being invoked
+     */
+    protected void writeMethod(DataOutputStream out, LingoInvocation invocation) throws IOException {
+        int methodId = invocation.getMethodId();
+        out.writeShort(methodId);
+        if (methodId > 0) {
+            out.writeInt(invocation.getMethodTableHash());
+            out.writeByte(invocation.getArguments().length);
+            return;
+        }
+        out.writeUTF(invocation.getMethodName());
+        Class[] parameterTypes = invocation.getParameterTypes();
+        out.writeByte(parameterTypes.length);
+        for (int i = 0; i < parameterTypes.length; i++) {
+            out.writeUTF(parameterTypes[i].getName());
+        }
+    }
+
+    protected Class[] readParameterTypes(DataInputStream in) throws IOException {
+        Class[] answer = new Class[in.readUnsignedByte()];
+        for (int i = 0; i < answer.length; i++) {
+            answer[i] = registry.loadClass(in.readUTF());
+        }
+        return answer;
+    }
+
+    protected void writeMetadata(DataOutputStream out, MethodMetadata metadata, int parameterCount) throws IOException {
+        int flags = 0;
+        boolean remoteParameters = false;
+        for (int i = 0; i < parameterCount; i++) {
+            if (metadata.isRemoteParameter(i)) {
+                remoteParameters = true;
+                break;
+            }
+        }
+        if (metadata.isOneWay()) {
+            flags |= ONE_WAY_FLAG;
+        }
+        if (metadata.isStateful()) {
+            flags |= STATEFUL_FLAG;
+        }
+        if (metadata.isEndSession()) {
+            flags |= END_SESSION_FLAG;
+        }
+        if (remoteParameters) {
+            flags |= REMOTE_PARAMETERS_FLAG;
+        }
+        out.writeByte(flags);
+        if (remoteParameters) {
+            for (int i = 0; i < parameterCount; i++) {
+                out.writeBoolean(metadata.isRemoteParameter(i));
+            }
+        }
+    }
+
+    protected MethodMetadata readMetadata(DataInputStream in, int parameterCount) throws IOException {
+        int flags = in.readUnsignedByte();
+        boolean[] remoteParameters = null;
+        if ((flags & REMOTE_PARAMETERS_FLAG) != 0) {
+            remoteParameters = new boolean[parameterCount];
+            for (int i = 0; i < parameterCount; i++) {
+                remoteParameters[i] = in.readBoolean();
+            }
+        }
+        return new MethodMetadata((flags & ONE_WAY_FLAG) != 0, remoteParameters, (flags & STATEFUL_FLAG) != 0, (flags & END_SESSION_FLAG) != 0);
+    }
+
+    protected void writeResult(DataOutputStream out, RemoteInvocationResult result) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        if (result.hasException()) {
+            out.writeByte(RESULT_EXCEPTION);
+            registry.writeObject(out, result.getException());
+        }
+        else {
+            out.writeByte(RESULT_VALUE);
+            registry.writeObject(out, result.getValue());
+        }
+    }
+
+    protected RemoteInvocationResult readResult(DataInputStream in) throws IOException {
+        checkVersion(in);
+        int type = in.readUnsignedByte();
+        Object value = registry.readObject(in);
+        if (type == RESULT_EXCEPTION) {
+            return new RemoteInvocationResult((Throwable) value);
+        }
+        return new RemoteInvocationResult(value);
+    }
+
+    protected void checkVersion(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version: " + version);
+        }
+    }
+
+    protected DataInputStream createDataInput(BytesMessage message) throws JMSException {
+        byte[] data = new byte[(int) message.getBodyLength()];
+        message.readBytes(data);
+        return new DataInputStream(new ByteArrayInputStream(decompress(message, data, BINARY_COMPRESSION)));
+    }
+}
@@ -7,7 +7,6 @@ import org.springframework.remoting.support.RemoteInvocationResult;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.ObjectMessage;
 import javax.jms.Session;
 import java.util.ArrayList;
 import java.util.List;
@@ -63,7 +62,7 @@ public class CompositeHeaderMarshaller implements HeaderMarshaller {
         }
     }
 
-    public void addResponseMessageHeaders(ObjectMessage answer, RemoteInvocationResult result, Message requestMessage) throws JMSException {
+    public void addResponseMessageHeaders(Message answer, RemoteInvocationResult result, Message requestMessage) throws JMSException {
         for (int i = 0; i < headerMarshallers.size(); i++) {
             HeaderMarshaller header = (HeaderMarshaller) headerMarshallers.get(i);
             header.addResponseMessageHeaders(answer, result, requestMessage);
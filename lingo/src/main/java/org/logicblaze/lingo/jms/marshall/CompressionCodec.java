@@ -0,0 +1,51 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.marshall;
+
+import java.io.IOException;
+
+/**
+ * Represents the strategy used to compress the serialized payload of a message.
+ * The name of the codec is written as a message property so that the receiver
+ * can decompress the payload.
+ * 
+ * @version $Revision$
+ */
+public interface CompressionCodec {
+
+    /**
+     * Returns the name of the codec which is written on compressed messages
+     */
+    String getName();
+
+    /**
+     * Compresses the given data
+     * 
+     * @param data the uncompressed data
+     * @return the compressed data
+     */
+    byte[] compress(byte[] data) throws IOException;
+
+    /**
+     * Decompresses data previously compressed with {@link #compress(byte[])}
+     * 
+     * @param data the compressed data
+     * @return the uncompressed data
+     */
+    byte[] decompress(byte[] data) throws IOException;
+}
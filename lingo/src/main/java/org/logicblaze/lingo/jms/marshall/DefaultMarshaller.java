@@ -24,18 +24,42 @@ import org.logicblaze.lingo.jms.Requestor;
 import org.springframework.remoting.support.RemoteInvocation;
 import org.springframework.remoting.support.RemoteInvocationResult;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.ObjectMessage;
 import javax.jms.Session;
 import javax.jms.TextMessage;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 /**
  * Represents the strategy of object marshalling of requests and responses in and out
  * of JMS messages. Collaborates with {@link HeaderMarshaller} which captures the strategy
  * for JMS header marshalling.
+ * <p/>
+ * If a {@link #setCompressionThreshold(int) compression threshold} is set then
+ * invocations and results whose serialized form is at least as large as the
+ * threshold are compressed using the {@link CompressionCodec} and sent as the
+ * body of a {@link BytesMessage}; the name of the codec is written to the
+ * {@link #COMPRESSION} property so that the receiver knows how to read it.
+ * Smaller payloads are sent uncompressed in a {@link BytesMessage} flagged as
+ * {@link #NO_COMPRESSION} so that they are only serialized once. If
+ * compression is not enabled then payloads are sent as plain object messages.
+ * <p/>
+ * If a {@link #setBinaryThreshold(int) binary threshold} is set then a
+ * <code>byte[]</code> argument or result at least that large, or any
+ * {@link ByteBuffer} argument or result, is written directly into the body of a
+ * {@link BytesMessage} rather than being serialized. For requests, the rest of
+ * the invocation is serialized as a small header in front of the bytes.
+ * Binary responses are not compressed.
  * 
  * @version $Revision: 84 $
  */
@@ -43,7 +67,18 @@ public class DefaultMarshaller implements Marshaller, HeaderMarshaller {
 
     private static final Log log = LogFactory.getLog(DefaultMarshaller.class);
 
+    public static final String COMPRESSION = "LingoCompression";
+    public static final String NO_COMPRESSION = "none";
+    public static final String BINARY_ARGUMENT = "LingoBinaryArgument";
+    public static final String BINARY_RESULT = "LingoBinaryResult";
+    public static final String BYTE_BUFFER = "LingoByteBuffer";
+
+    private static final CompressionCodec[] DEFAULT_CODECS = { new DeflateCodec(), new LzfCodec() };
+
     private boolean ignoreInvalidMessages;
+    private int compressionThreshold;
+    private CompressionCodec compressionCodec = new DeflateCodec();
+    private int binaryThreshold;
 
     //required lingo header marshaller
     protected HeaderMarshaller nativeHeaderMarshaller = new NativeHeaderMarshaller();
@@ -52,27 +87,49 @@ public class DefaultMarshaller implements Marshaller, HeaderMarshaller {
     protected HeaderMarshaller headerMarshaller;
 
 
+    public HeaderMarshaller getHeaderMarshaller() {
+        return headerMarshaller;
+    }
+
     public void setHeaderMarshaller(HeaderMarshaller headerMarshaller) {
         this.headerMarshaller = headerMarshaller;
     }
 
     public Message createRequestMessage(Requestor requestor, LingoInvocation invocation) throws JMSException {
-        ObjectMessage message = requestor.getSession().createObjectMessage(invocation);
+        Message message;
+        int binaryArgument = getBinaryArgument(invocation);
+        if (binaryArgument >= 0) {
+            message = createBinaryRequestMessage(requestor.getSession(), invocation, binaryArgument);
+        }
+        else {
+            message = createPayloadMessage(requestor.getSession(), invocation);
+        }
         appendMessageHeaders(message, requestor, invocation);
         return message;
     }
 
     public Message createResponseMessage(Session session, RemoteInvocationResult result, Message requestMessage) throws JMSException {
-        ObjectMessage answer = session.createObjectMessage(result);
+        if (!result.hasException() && isBinary(result.getValue())) {
+            BytesMessage message = createBinaryMessage(session, result.getValue());
+            message.setBooleanProperty(BINARY_RESULT, true);
+            addResponseMessageHeaders(message, result, requestMessage);
+            return message;
+        }
+        Message answer = createPayloadMessage(session, result);
         addResponseMessageHeaders(answer, result, requestMessage);
         return answer;
     }
 
     public RemoteInvocationResult extractInvocationResult(Message message) throws JMSException {
         handleInvocationResultHeaders(message);
-        if (message instanceof ObjectMessage) {
-            ObjectMessage objectMessage = (ObjectMessage) message;
-            Object body = objectMessage.getObject();
+        if (message instanceof BytesMessage && message.propertyExists(BINARY_RESULT)) {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            byte[] data = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.readBytes(data);
+            return new RemoteInvocationResult(wrapBinary(message, data));
+        }
+        if (message instanceof ObjectMessage || isSerializedPayload(message)) {
+            Object body = readPayload(message);
             if (body instanceof RemoteInvocationResult) {
                 return (RemoteInvocationResult) body;
             }
@@ -82,9 +139,11 @@ public class DefaultMarshaller implements Marshaller, HeaderMarshaller {
 
     public RemoteInvocation readRemoteInvocation(Message message) throws JMSException {
         handleInvocationHeaders(message);
-        if (message instanceof ObjectMessage) {
-            ObjectMessage objectMessage = (ObjectMessage) message;
-            Object body = objectMessage.getObject();
+        if (message instanceof BytesMessage && message.propertyExists(BINARY_ARGUMENT)) {
+            return readBinaryInvocation((BytesMessage) message);
+        }
+        if (message instanceof ObjectMessage || isSerializedPayload(message)) {
+            Object body = readPayload(message);
             if (body instanceof RemoteInvocation) {
                 return (RemoteInvocation) body;
             }
@@ -106,9 +165,8 @@ public class DefaultMarshaller implements Marshaller, HeaderMarshaller {
 
     public Object readMessage(Message message) throws JMSException {
         handleMessageHeaders(message);
-        if (message instanceof ObjectMessage) {
-            ObjectMessage objectMessage = (ObjectMessage) message;
-            return objectMessage.getObject();
+        if (message instanceof ObjectMessage || isSerializedPayload(message)) {
+            return readPayload(message);
         }
         else if (message instanceof TextMessage) {
             TextMessage textMessage = (TextMessage) message;
@@ -131,6 +189,49 @@ public class DefaultMarshaller implements Marshaller, HeaderMarshaller {
         this.ignoreInvalidMessages = ignoreInvalidMessages;
     }
 
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the minimum size in bytes of a serialized payload which is
+     * compressed or 0 to disable compression. Note that compressed payloads
+     * are sent in bytes messages, so the receiver must also be running a
+     * marshaller which supports compression.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public CompressionCodec getCompressionCodec() {
+        return compressionCodec;
+    }
+
+    /**
+     * Sets the codec used to compress payloads which defaults to a
+     * {@link DeflateCodec}
+     */
+    public void setCompressionCodec(CompressionCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    public int getBinaryThreshold() {
+        return binaryThreshold;
+    }
+
+    /**
+     * Sets the minimum size in bytes of a <code>byte[]</code> argument or
+     * result which is written directly into the body of a {@link BytesMessage}
+     * rather than being serialized, or 0 to disable binary messages
+     */
+    public void setBinaryThreshold(int binaryThreshold) {
+        this.binaryThreshold = binaryThreshold;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionThreshold > 0 && compressionCodec != null;
+    }
+
     // Implementation methods
     // -------------------------------------------------------------------------
     protected RemoteInvocationResult onInvalidClientMessage(Message message) throws JMSException {
@@ -150,6 +251,297 @@ public class DefaultMarshaller implements Marshaller, HeaderMarshaller {
         return null;
     }
 
+    /**
+     * Returns true if the value should be written directly into the body of a
+     * {@link BytesMessage}
+     */
+    protected boolean isBinary(Object value) {
+        if (binaryThreshold <= 0) {
+            return false;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length >= binaryThreshold;
+        }
+        return value instanceof ByteBuffer;
+    }
+
+    /**
+     * Returns the index of the largest binary argument of the invocation or -1
+     * if there is none
+     */
+    protected int getBinaryArgument(LingoInvocation invocation) {
+        int answer = -1;
+        if (binaryThreshold > 0) {
+            Object[] arguments = invocation.getArguments();
+            int size = -1;
+            for (int i = 0; i < arguments.length; i++) {
+                Object argument = arguments[i];
+                if (isBinary(argument)) {
+                    int length = argument instanceof byte[] ? ((byte[]) argument).length : ((ByteBuffer) argument).remaining();
+                    if (length > size) {
+                        answer = i;
+                        size = length;
+                    }
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Creates a bytes message whose body is the serialized invocation without
+     * the binary argument as a header followed by the bytes of the binary
+     * argument
+     */
+    protected BytesMessage createBinaryRequestMessage(Session session, LingoInvocation invocation, int binaryArgument) throws JMSException {
+        Object[] arguments = invocation.getArguments();
+        Object[] headerArguments = new Object[arguments.length];
+        System.arraycopy(arguments, 0, headerArguments, 0, arguments.length);
+        headerArguments[binaryArgument] = null;
+        byte[] header;
+        invocation.setArguments(headerArguments);
+        try {
+            header = serialize(invocation);
+        }
+        finally {
+            invocation.setArguments(arguments);
+        }
+        Object value = arguments[binaryArgument];
+        BytesMessage message = session.createBytesMessage();
+        message.setIntProperty(BINARY_ARGUMENT, binaryArgument);
+        message.writeInt(header.length);
+        message.writeBytes(header);
+        writeBinary(message, value);
+        return message;
+    }
+
+    /**
+     * Reads an invocation written by
+     * {@link #createBinaryRequestMessage(Session, LingoInvocation, int)}
+     */
+    protected RemoteInvocation readBinaryInvocation(BytesMessage message) throws JMSException {
+        int headerLength = message.readInt();
+        byte[] header = new byte[headerLength];
+        message.readBytes(header);
+        Object body = deserialize(header);
+        if (!(body instanceof RemoteInvocation)) {
+            return onInvalidMessage(message);
+        }
+        RemoteInvocation invocation = (RemoteInvocation) body;
+        byte[] data = new byte[(int) message.getBodyLength() - headerLength - 4];
+        message.readBytes(data);
+        invocation.getArguments()[message.getIntProperty(BINARY_ARGUMENT)] = wrapBinary(message, data);
+        return invocation;
+    }
+
+    /**
+     * Creates a bytes message whose body is the given binary value
+     */
+    protected BytesMessage createBinaryMessage(Session session, Object value) throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        writeBinary(message, value);
+        return message;
+    }
+
+    /**
+     * Writes the bytes of a <code>byte[]</code> or the remaining bytes of a
+     * {@link ByteBuffer} to the message, without changing the position of the
+     * buffer
+     */
+    protected void writeBinary(BytesMessage message, Object value) throws JMSException {
+        if (value instanceof byte[]) {
+            message.writeBytes((byte[]) value);
+            return;
+        }
+        ByteBuffer buffer = (ByteBuffer) value;
+        message.setBooleanProperty(BYTE_BUFFER, true);
+        if (buffer.hasArray()) {
+            message.writeBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        else {
+            byte[] data = new byte[buffer.remaining()];
+            buffer.duplicate().get(data);
+            message.writeBytes(data);
+        }
+    }
+
+    /**
+     * Returns the data as a {@link ByteBuffer} if one was written or otherwise
+     * as a <code>byte[]</code>
+     */
+    protected Object wrapBinary(Message message, byte[] data) throws JMSException {
+        if (message.propertyExists(BYTE_BUFFER)) {
+            return ByteBuffer.wrap(data);
+        }
+        return data;
+    }
+
+    /**
+     * Creates the message for the given request or response, which is a bytes
+     * message containing the serialized payload, compressed if worthwhile, if
+     * compression is enabled or an object message otherwise
+     */
+    protected Message createPayloadMessage(Session session, Serializable body) throws JMSException {
+        if (isCompressionEnabled()) {
+            // lets reuse the bytes we had to serialize to measure the payload
+            BytesMessage message = session.createBytesMessage();
+            message.writeBytes(compress(message, serialize(body)));
+            return message;
+        }
+        return session.createObjectMessage(body);
+    }
+
+    /**
+     * Returns true if the message is a bytes message containing a serialized
+     * payload written by {@link #createPayloadMessage(Session, Serializable)}
+     */
+    protected boolean isSerializedPayload(Message message) throws JMSException {
+        return message instanceof BytesMessage && message.propertyExists(COMPRESSION);
+    }
+
+    /**
+     * Reads the body of an object message or decompresses and deserializes
+     * the body of a compressed payload
+     */
+    protected Object readPayload(Message message) throws JMSException {
+        if (message instanceof BytesMessage) {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            byte[] data = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.readBytes(data);
+            return deserialize(decompress(message, data));
+        }
+        return ((ObjectMessage) message).getObject();
+    }
+
+    /**
+     * Compresses the given payload if it is at least as large as the
+     * compression threshold and flags the codec used on the message
+     */
+    protected byte[] compress(Message message, byte[] data) throws JMSException {
+        return compress(message, data, COMPRESSION);
+    }
+
+    /**
+     * Compresses the given payload if it is at least as large as the
+     * compression threshold and flags the codec used in the given message
+     * property
+     */
+    protected byte[] compress(Message message, byte[] data, String property) throws JMSException {
+        if (!isCompressionEnabled()) {
+            return data;
+        }
+        byte[] compressed = compress(data);
+        if (compressed == null) {
+            message.setStringProperty(property, NO_COMPRESSION);
+            return data;
+        }
+        message.setStringProperty(property, compressionCodec.getName());
+        return compressed;
+    }
+
+    /**
+     * Returns the compressed payload or null if it is smaller than the
+     * compression threshold or compressing it does not make it any smaller
+     */
+    protected byte[] compress(byte[] data) throws JMSException {
+        if (data.length < compressionThreshold) {
+            return null;
+        }
+        try {
+            byte[] compressed = compressionCodec.compress(data);
+            return compressed.length < data.length ? compressed : null;
+        }
+        catch (IOException e) {
+            throw createJMSException("Failed to compress payload using: " + compressionCodec.getName(), e);
+        }
+    }
+
+    /**
+     * Decompresses the given payload using the codec flagged on the message, if
+     * any
+     */
+    protected byte[] decompress(Message message, byte[] data) throws JMSException {
+        return decompress(message, data, COMPRESSION);
+    }
+
+    /**
+     * Decompresses the given payload using the codec flagged in the given
+     * message property, if any
+     */
+    protected byte[] decompress(Message message, byte[] data, String property) throws JMSException {
+        String codecName = message.getStringProperty(property);
+        if (codecName == null || NO_COMPRESSION.equals(codecName)) {
+            return data;
+        }
+        try {
+            return getCompressionCodec(codecName).decompress(data);
+        }
+        catch (IOException e) {
+            throw createJMSException("Failed to decompress payload using: " + codecName, e);
+        }
+    }
+
+    /**
+     * Returns the codec for the given name; either the configured codec or one
+     * of the default codecs so that we can always read compressed messages
+     */
+    protected CompressionCodec getCompressionCodec(String name) throws JMSException {
+        if (compressionCodec != null && name.equals(compressionCodec.getName())) {
+            return compressionCodec;
+        }
+        for (int i = 0; i < DEFAULT_CODECS.length; i++) {
+            if (name.equals(DEFAULT_CODECS[i].getName())) {
+                return DEFAULT_CODECS[i];
+            }
+        }
+        throw new JMSException("Unsupported compression codec: " + name);
+    }
+
+    protected byte[] serialize(Serializable body) throws JMSException {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(buffer);
+            out.writeObject(body);
+            out.close();
+            return buffer.toByteArray();
+        }
+        catch (IOException e) {
+            throw createJMSException("Failed to serialize: " + body, e);
+        }
+    }
+
+    protected Object deserialize(byte[] data) throws JMSException {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data)) {
+                protected Class resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+                    if (classLoader != null) {
+                        try {
+                            return Class.forName(desc.getName(), false, classLoader);
+                        }
+                        catch (ClassNotFoundException e) {
+                            // lets fall back to the default class loading
+                        }
+                    }
+                    return super.resolveClass(desc);
+                }
+            };
+            return in.readObject();
+        }
+        catch (IOException e) {
+            throw createJMSException("Failed to deserialize payload", e);
+        }
+        catch (ClassNotFoundException e) {
+            throw createJMSException("Failed to deserialize payload", e);
+        }
+    }
+
+    protected JMSException createJMSException(String text, Exception e) {
+        JMSException answer = new JMSException(text + ". Reason: " + e);
+        answer.setLinkedException(e);
+        return answer;
+    }
+
 
     public void appendMessageHeaders(Message message, Requestor requestor, LingoInvocation invocation) throws JMSException {
         nativeHeaderMarshaller.appendMessageHeaders(message, requestor, invocation);
@@ -161,7 +553,7 @@ public class DefaultMarshaller implements Marshaller, HeaderMarshaller {
         if(headerMarshaller != null) headerMarshaller.appendMessageHeaders(message, session, value);
     }
 
-    public void addResponseMessageHeaders(ObjectMessage answer, RemoteInvocationResult result, Message requestMessage) throws JMSException {
+    public void addResponseMessageHeaders(Message answer, RemoteInvocationResult result, Message requestMessage) throws JMSException {
         nativeHeaderMarshaller.addResponseMessageHeaders(answer, result, requestMessage);
         if(headerMarshaller != null) headerMarshaller.addResponseMessageHeaders(answer, result, requestMessage);
     }
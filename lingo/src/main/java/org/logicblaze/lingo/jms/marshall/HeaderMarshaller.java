@@ -6,7 +6,6 @@ import org.springframework.remoting.support.RemoteInvocationResult;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.ObjectMessage;
 import javax.jms.Session;
 
 /**
@@ -29,7 +28,7 @@ public interface HeaderMarshaller {
      * A strategy for derived classes to allow them to plug in custom header
      * processing for responses
      */
-    void addResponseMessageHeaders(ObjectMessage answer, RemoteInvocationResult result, Message requestMessage) throws JMSException;
+    void addResponseMessageHeaders(Message answer, RemoteInvocationResult result, Message requestMessage) throws JMSException;
 
     /**
      * A strategy method to allow derived classes to process the headers in a
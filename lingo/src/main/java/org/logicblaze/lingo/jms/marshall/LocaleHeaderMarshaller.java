@@ -8,7 +8,6 @@ import org.springframework.remoting.support.RemoteInvocationResult;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.ObjectMessage;
 import javax.jms.Session;
 import java.util.Locale;
 
@@ -35,7 +34,7 @@ public class LocaleHeaderMarshaller implements HeaderMarshaller {
     public void appendMessageHeaders(Message message, Session session, Object value) {
     }
 
-    public void addResponseMessageHeaders(ObjectMessage answer, RemoteInvocationResult result, Message requestMessage) throws JMSException {
+    public void addResponseMessageHeaders(Message answer, RemoteInvocationResult result, Message requestMessage) throws JMSException {
     }
 
     public void handleInvocationHeaders(Message message) {
@@ -0,0 +1,158 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.marshall;
+
+import java.io.IOException;
+
+/**
+ * A fast LZ77 style {@link CompressionCodec} using the LZF encoding. It
+ * compresses less than {@link DeflateCodec} but is several times faster, as it
+ * only looks up a single earlier match for each position using a small hash
+ * table and does no entropy coding. <p/> The compressed form is the length of
+ * the uncompressed data as a 4 byte big endian integer followed by a sequence
+ * of LZF chunks; each chunk is either a run of up to 32 literal bytes or a back
+ * reference of 3 to 264 bytes within the previous 8K of output.
+ * 
+ * @version $Revision$
+ */
+public class LzfCodec implements CompressionCodec {
+
+    public static final String NAME = "lzf";
+
+    private static final int HASH_LOG = 14;
+    private static final int MAX_LITERAL = 32;
+    private static final int MAX_OFFSET = 1 << 13;
+    private static final int MAX_REFERENCE = (1 << 8) + (1 << 3);
+    private static final int HEADER_SIZE = 4;
+
+    public String getName() {
+        return NAME;
+    }
+
+    public byte[] compress(byte[] data) throws IOException {
+        int length = data.length;
+        byte[] out = new byte[HEADER_SIZE + length + (length / MAX_LITERAL) + 1];
+        out[0] = (byte) (length >>> 24);
+        out[1] = (byte) (length >>> 16);
+        out[2] = (byte) (length >>> 8);
+        out[3] = (byte) length;
+        int op = HEADER_SIZE;
+
+        // positions are stored plus one so that zero means an empty slot
+        int[] table = new int[1 << HASH_LOG];
+        int literalStart = 0;
+        int ip = 0;
+        while (ip < length - 2) {
+            int hash = hash(data, ip);
+            int ref = table[hash] - 1;
+            table[hash] = ip + 1;
+            int offset = ip - ref - 1;
+            if (ref >= 0 && offset < MAX_OFFSET && data[ref] == data[ip] && data[ref + 1] == data[ip + 1] && data[ref + 2] == data[ip + 2]) {
+                op = writeLiterals(data, literalStart, ip, out, op);
+                int maxLength = Math.min(length - ip, MAX_REFERENCE);
+                int matchLength = 3;
+                while (matchLength < maxLength && data[ref + matchLength] == data[ip + matchLength]) {
+                    matchLength++;
+                }
+                int encodedLength = matchLength - 2;
+                if (encodedLength < 7) {
+                    out[op++] = (byte) ((encodedLength << 5) | (offset >> 8));
+                }
+                else {
+                    out[op++] = (byte) ((7 << 5) | (offset >> 8));
+                    out[op++] = (byte) (encodedLength - 7);
+                }
+                out[op++] = (byte) offset;
+                ip += matchLength;
+                literalStart = ip;
+            }
+            else {
+                ip++;
+            }
+        }
+        op = writeLiterals(data, literalStart, length, out, op);
+
+        byte[] answer = new byte[op];
+        System.arraycopy(out, 0, answer, 0, op);
+        return answer;
+    }
+
+    public byte[] decompress(byte[] data) throws IOException {
+        if (data.length < HEADER_SIZE) {
+            throw new IOException("Truncated LZF data");
+        }
+        int length = ((data[0] & 0xff) << 24) | ((data[1] & 0xff) << 16) | ((data[2] & 0xff) << 8) | (data[3] & 0xff);
+        if (length < 0) {
+            throw new IOException("Invalid LZF data length: " + length);
+        }
+        byte[] out = new byte[length];
+        int ip = HEADER_SIZE;
+        int op = 0;
+        try {
+            while (ip < data.length) {
+                int control = data[ip++] & 0xff;
+                if (control < MAX_LITERAL) {
+                    int count = control + 1;
+                    System.arraycopy(data, ip, out, op, count);
+                    ip += count;
+                    op += count;
+                }
+                else {
+                    int count = control >> 5;
+                    if (count == 7) {
+                        count += data[ip++] & 0xff;
+                    }
+                    count += 2;
+                    int ref = op - ((control & 0x1f) << 8) - (data[ip++] & 0xff) - 1;
+                    if (ref < 0 || op + count > length) {
+                        throw new IOException("Invalid LZF back reference at: " + (ip - 2));
+                    }
+                    // the reference may overlap the bytes being written
+                    for (int i = 0; i < count; i++) {
+                        out[op++] = out[ref++];
+                    }
+                }
+            }
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt LZF data: " + e.getMessage());
+        }
+        if (op != length) {
+            throw new IOException("Expected " + length + " bytes of LZF data but found: " + op);
+        }
+        return out;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected int hash(byte[] data, int index) {
+        int value = ((data[index] & 0xff) << 16) | ((data[index + 1] & 0xff) << 8) | (data[index + 2] & 0xff);
+        return (value * 0x9E3779B1) >>> (32 - HASH_LOG);
+    }
+
+    protected int writeLiterals(byte[] data, int start, int end, byte[] out, int op) {
+        while (start < end) {
+            int count = Math.min(end - start, MAX_LITERAL);
+            out[op++] = (byte) (count - 1);
+            System.arraycopy(data, start, out, op, count);
+            op += count;
+            start += count;
+        }
+        return op;
+    }
+}
@@ -7,7 +7,6 @@ import org.springframework.remoting.support.RemoteInvocationResult;
 import javax.jms.Message;
 import javax.jms.JMSException;
 import javax.jms.Session;
-import javax.jms.ObjectMessage;
 
 /**
  * Required header marshalling that is internal to Lingo.
@@ -46,7 +45,7 @@ public class NativeHeaderMarshaller implements HeaderMarshaller {
      * A strategy for derived classes to allow them to plug in custom header
      * processing for responses
      */
-    public void addResponseMessageHeaders(ObjectMessage answer, RemoteInvocationResult result, Message requestMessage) throws JMSException {
+    public void addResponseMessageHeaders(Message answer, RemoteInvocationResult result, Message requestMessage) throws JMSException {
     }
 
     /**
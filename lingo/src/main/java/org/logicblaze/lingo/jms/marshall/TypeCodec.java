@@ -0,0 +1,51 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.marshall;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Represents the strategy used to write and read values of a particular type
+ * in a compact binary form. Codecs are registered with a
+ * {@link TypeCodecRegistry} against a type tag which is written before each
+ * value.
+ * 
+ * @version $Revision$
+ */
+public interface TypeCodec {
+
+    /**
+     * Writes the given non-null value
+     * 
+     * @param out the stream to write to
+     * @param value the value to write
+     * @param registry the registry to use for writing any nested values
+     */
+    void write(DataOutput out, Object value, TypeCodecRegistry registry) throws IOException;
+
+    /**
+     * Reads a value previously written with {@link #write(DataOutput, Object, TypeCodecRegistry)}
+     * 
+     * @param in the stream to read from
+     * @param registry the registry to use for reading any nested values
+     * @return the newly read value
+     */
+    Object read(DataInput in, TypeCodecRegistry registry) throws IOException;
+}
@@ -0,0 +1,575 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.marshall;
+
+import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentHashMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * A registry of {@link TypeCodec} instances used to write values in a compact
+ * binary form. Each value is written as a one byte type tag followed by the
+ * output of the codec for that tag.
+ * 
+ * <p/> Codecs are provided for null, the primitive wrappers, String, Date,
+ * primitive and object arrays and the common collection classes. Any other
+ * value is written using Java serialization. Codecs are looked up by the exact
+ * class of a value so that values are always recreated with the same type;
+ * custom codecs can be added using {@link #register(int, Class, TypeCodec)}
+ * with a tag of at least {@link #FIRST_CUSTOM_TAG}.
+ * 
+ * <p/> Within a single call to {@link #writeObject(DataOutput, Object)} an
+ * object array, collection or map which has already been written is written
+ * as a {@link #REFERENCE} to it instead so that shared and circular
+ * references are recreated as they were.
+ * 
+ * @version $Revision$
+ */
+public class TypeCodecRegistry {
+
+    public static final int NULL = 0;
+    public static final int SERIALIZABLE = 1;
+    public static final int OBJECT_ARRAY = 2;
+    public static final int BOOLEAN = 3;
+    public static final int BYTE = 4;
+    public static final int SHORT = 5;
+    public static final int CHAR = 6;
+    public static final int INT = 7;
+    public static final int LONG = 8;
+    public static final int FLOAT = 9;
+    public static final int DOUBLE = 10;
+    public static final int STRING = 11;
+    public static final int DATE = 12;
+    public static final int BOOLEAN_ARRAY = 13;
+    public static final int BYTE_ARRAY = 14;
+    public static final int SHORT_ARRAY = 15;
+    public static final int CHAR_ARRAY = 16;
+    public static final int INT_ARRAY = 17;
+    public static final int LONG_ARRAY = 18;
+    public static final int FLOAT_ARRAY = 19;
+    public static final int DOUBLE_ARRAY = 20;
+    public static final int ARRAY_LIST = 21;
+    public static final int LINKED_LIST = 22;
+    public static final int VECTOR = 23;
+    public static final int HASH_SET = 24;
+    public static final int LINKED_HASH_SET = 25;
+    public static final int HASH_MAP = 26;
+    public static final int LINKED_HASH_MAP = 27;
+    public static final int HASHTABLE = 28;
+    public static final int REFERENCE = 29;
+
+    public static final int FIRST_CUSTOM_TAG = 64;
+
+    private static final Map PRIMITIVE_TYPES = new HashMap();
+
+    static {
+        PRIMITIVE_TYPES.put("boolean", boolean.class);
+        PRIMITIVE_TYPES.put("byte", byte.class);
+        PRIMITIVE_TYPES.put("short", short.class);
+        PRIMITIVE_TYPES.put("char", char.class);
+        PRIMITIVE_TYPES.put("int", int.class);
+        PRIMITIVE_TYPES.put("long", long.class);
+        PRIMITIVE_TYPES.put("float", float.class);
+        PRIMITIVE_TYPES.put("double", double.class);
+        PRIMITIVE_TYPES.put("void", void.class);
+    }
+
+    private final TypeCodec[] codecs = new TypeCodec[256];
+    private final Map tags = new ConcurrentHashMap();
+    private final Map classCache = new ConcurrentHashMap();
+    private final ThreadLocal writeReferences = new ThreadLocal();
+    private final ThreadLocal readReferences = new ThreadLocal();
+
+    public TypeCodecRegistry() {
+        registerDefaultCodecs();
+    }
+
+    /**
+     * Registers a codec for values of exactly the given type.
+     * 
+     * @param tag the unique tag written before each value which must be
+     *            between {@link #FIRST_CUSTOM_TAG} and 255 for custom codecs
+     * @param type the exact class of values written by the codec
+     * @param codec the codec
+     */
+    public void register(int tag, Class type, TypeCodec codec) {
+        if (tag < FIRST_CUSTOM_TAG || tag > 255) {
+            throw new IllegalArgumentException("tag must be between " + FIRST_CUSTOM_TAG + " and 255 but was: " + tag);
+        }
+        doRegister(tag, type, codec);
+    }
+
+    /**
+     * Writes the given value which may be null
+     */
+    public void writeObject(DataOutput out, Object value) throws IOException {
+        Map references = (Map) writeReferences.get();
+        if (references != null) {
+            doWriteObject(out, value, references);
+            return;
+        }
+        writeReferences.set(new IdentityHashMap());
+        try {
+            doWriteObject(out, value, (Map) writeReferences.get());
+        }
+        finally {
+            writeReferences.set(null);
+        }
+    }
+
+    /**
+     * Reads a value written by {@link #writeObject(DataOutput, Object)}
+     */
+    public Object readObject(DataInput in) throws IOException {
+        List references = (List) readReferences.get();
+        if (references != null) {
+            return doReadObject(in, references);
+        }
+        readReferences.set(new ArrayList());
+        try {
+            return doReadObject(in, (List) readReferences.get());
+        }
+        finally {
+            readReferences.set(null);
+        }
+    }
+
+    /**
+     * Registers a newly created object array, collection or map before its
+     * contents are read so that nested values can refer back to it
+     */
+    public void addReference(Object value) {
+        List references = (List) readReferences.get();
+        if (references != null) {
+            references.add(value);
+        }
+    }
+
+    public void writeString(DataOutput out, String value) throws IOException {
+        byte[] data = value.getBytes("UTF-8");
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    public String readString(DataInput in) throws IOException {
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return new String(data, "UTF-8");
+    }
+
+    /**
+     * Loads the class of the given name which may be the name of a primitive
+     * type
+     */
+    public Class loadClass(String name) throws IOException {
+        Class answer = (Class) PRIMITIVE_TYPES.get(name);
+        if (answer == null) {
+            answer = (Class) classCache.get(name);
+        }
+        if (answer == null) {
+            try {
+                answer = Class.forName(name, false, Thread.currentThread().getContextClassLoader());
+            }
+            catch (ClassNotFoundException e) {
+                try {
+                    answer = Class.forName(name, false, getClass().getClassLoader());
+                }
+                catch (ClassNotFoundException e1) {
+                    throw new IOException("Could not load class: " + name + ". Reason: " + e1);
+                }
+            }
+            classCache.put(name, answer);
+        }
+        return answer;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected void doWriteObject(DataOutput out, Object value, Map references) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        int tag;
+        Integer tagValue = (Integer) tags.get(value.getClass());
+        if (tagValue != null) {
+            tag = tagValue.intValue();
+        }
+        else if (value instanceof Object[]) {
+            tag = OBJECT_ARRAY;
+        }
+        else {
+            tag = SERIALIZABLE;
+        }
+        TypeCodec codec = codecs[tag];
+        if (isReferenceTracked(codec)) {
+            Integer handle = (Integer) references.get(value);
+            if (handle != null) {
+                out.writeByte(REFERENCE);
+                out.writeInt(handle.intValue());
+                return;
+            }
+            references.put(value, new Integer(references.size()));
+        }
+        out.writeByte(tag);
+        codec.write(out, value, this);
+    }
+
+    protected Object doReadObject(DataInput in, List references) throws IOException {
+        int tag = in.readUnsignedByte();
+        if (tag == NULL) {
+            return null;
+        }
+        if (tag == REFERENCE) {
+            int handle = in.readInt();
+            if (handle < 0 || handle >= references.size()) {
+                throw new IOException("Invalid reference to value: " + handle);
+            }
+            return references.get(handle);
+        }
+        TypeCodec codec = codecs[tag];
+        if (codec == null) {
+            throw new IOException("No codec registered for type tag: " + tag);
+        }
+        return codec.read(in, this);
+    }
+
+    /**
+     * Returns true if values written by the given codec can be referred to by
+     * later values; these codecs must call {@link #addReference(Object)} when
+     * reading a value
+     */
+    protected boolean isReferenceTracked(TypeCodec codec) {
+        return codec instanceof ObjectArrayCodec || codec instanceof CollectionCodec || codec instanceof MapCodec;
+    }
+
+    protected void doRegister(int tag, Class type, TypeCodec codec) {
+        codecs[tag] = codec;
+        if (type != null) {
+            tags.put(type, new Integer(tag));
+        }
+    }
+
+    protected void registerDefaultCodecs() {
+        doRegister(SERIALIZABLE, null, new SerializableCodec());
+        doRegister(OBJECT_ARRAY, Object[].class, new ObjectArrayCodec());
+        doRegister(BOOLEAN, Boolean.class, new PrimitiveCodec(BOOLEAN));
+        doRegister(BYTE, Byte.class, new PrimitiveCodec(BYTE));
+        doRegister(SHORT, Short.class, new PrimitiveCodec(SHORT));
+        doRegister(CHAR, Character.class, new PrimitiveCodec(CHAR));
+        doRegister(INT, Integer.class, new PrimitiveCodec(INT));
+        doRegister(LONG, Long.class, new PrimitiveCodec(LONG));
+        doRegister(FLOAT, Float.class, new PrimitiveCodec(FLOAT));
+        doRegister(DOUBLE, Double.class, new PrimitiveCodec(DOUBLE));
+        doRegister(STRING, String.class, new StringCodec());
+        doRegister(DATE, Date.class, new DateCodec());
+        doRegister(BOOLEAN_ARRAY, boolean[].class, new PrimitiveArrayCodec(BOOLEAN, boolean.class));
+        doRegister(BYTE_ARRAY, byte[].class, new ByteArrayCodec());
+        doRegister(SHORT_ARRAY, short[].class, new PrimitiveArrayCodec(SHORT, short.class));
+        doRegister(CHAR_ARRAY, char[].class, new PrimitiveArrayCodec(CHAR, char.class));
+        doRegister(INT_ARRAY, int[].class, new PrimitiveArrayCodec(INT, int.class));
+        doRegister(LONG_ARRAY, long[].class, new PrimitiveArrayCodec(LONG, long.class));
+        doRegister(FLOAT_ARRAY, float[].class, new PrimitiveArrayCodec(FLOAT, float.class));
+        doRegister(DOUBLE_ARRAY, double[].class, new PrimitiveArrayCodec(DOUBLE, double.class));
+        doRegister(ARRAY_LIST, ArrayList.class, new CollectionCodec(ArrayList.class));
+        doRegister(LINKED_LIST, LinkedList.class, new CollectionCodec(LinkedList.class));
+        doRegister(VECTOR, Vector.class, new CollectionCodec(Vector.class));
+        doRegister(HASH_SET, HashSet.class, new CollectionCodec(HashSet.class));
+        doRegister(LINKED_HASH_SET, LinkedHashSet.class, new CollectionCodec(LinkedHashSet.class));
+        doRegister(HASH_MAP, HashMap.class, new MapCodec(HashMap.class));
+        doRegister(LINKED_HASH_MAP, LinkedHashMap.class, new MapCodec(LinkedHashMap.class));
+        doRegister(HASHTABLE, Hashtable.class, new MapCodec(Hashtable.class));
+    }
+
+    protected static Object newInstance(Class type) throws IOException {
+        try {
+            return type.newInstance();
+        }
+        catch (Exception e) {
+            throw new IOException("Could not create instance of: " + type.getName() + ". Reason: " + e);
+        }
+    }
+
+    // Codecs
+    // -------------------------------------------------------------------------
+
+    /**
+     * Writes the primitive wrapper types
+     */
+    protected static class PrimitiveCodec implements TypeCodec {
+        private final int type;
+
+        public PrimitiveCodec(int type) {
+            this.type = type;
+        }
+
+        public void write(DataOutput out, Object value, TypeCodecRegistry registry) throws IOException {
+            switch (type) {
+            case BOOLEAN:
+                out.writeBoolean(((Boolean) value).booleanValue());
+                break;
+            case BYTE:
+                out.writeByte(((Byte) value).byteValue());
+                break;
+            case SHORT:
+                out.writeShort(((Short) value).shortValue());
+                break;
+            case CHAR:
+                out.writeChar(((Character) value).charValue());
+                break;
+            case INT:
+                out.writeInt(((Integer) value).intValue());
+                break;
+            case LONG:
+                out.writeLong(((Long) value).longValue());
+                break;
+            case FLOAT:
+                out.writeFloat(((Float) value).floatValue());
+                break;
+            default:
+                out.writeDouble(((Double) value).doubleValue());
+            }
+        }
+
+        public Object read(DataInput in, TypeCodecRegistry registry) throws IOException {
+            switch (type) {
+            case BOOLEAN:
+                return Boolean.valueOf(in.readBoolean());
+            case BYTE:
+                return new Byte(in.readByte());
+            case SHORT:
+                return new Short(in.readShort());
+            case CHAR:
+                return new Character(in.readChar());
+            case INT:
+                return new Integer(in.readInt());
+            case LONG:
+                return new Long(in.readLong());
+            case FLOAT:
+                return new Float(in.readFloat());
+            default:
+                return new Double(in.readDouble());
+            }
+        }
+    }
+
+    protected static class StringCodec implements TypeCodec {
+        public void write(DataOutput out, Object value, TypeCodecRegistry registry) throws IOException {
+            registry.writeString(out, (String) value);
+        }
+
+        public Object read(DataInput in, TypeCodecRegistry registry) throws IOException {
+            return registry.readString(in);
+        }
+    }
+
+    protected static class DateCodec implements TypeCodec {
+        public void write(DataOutput out, Object value, TypeCodecRegistry registry) throws IOException {
+            out.writeLong(((Date) value).getTime());
+        }
+
+        public Object read(DataInput in, TypeCodecRegistry registry) throws IOException {
+            return new Date(in.readLong());
+        }
+    }
+
+    protected static class ByteArrayCodec implements TypeCodec {
+        public void write(DataOutput out, Object value, TypeCodecRegistry registry) throws IOException {
+            byte[] data = (byte[]) value;
+            out.writeInt(data.length);
+            out.write(data);
+        }
+
+        public Object read(DataInput in, TypeCodecRegistry registry) throws IOException {
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return data;
+        }
+    }
+
+    /**
+     * Writes arrays of primitive types other than byte[]
+     */
+    protected static class PrimitiveArrayCodec implements TypeCodec {
+        private final PrimitiveCodec elementCodec;
+        private final Class componentType;
+
+        public PrimitiveArrayCodec(int elementType, Class componentType) {
+            this.elementCodec = new PrimitiveCodec(elementType);
+            this.componentType = componentType;
+        }
+
+        public void write(DataOutput out, Object value, TypeCodecRegistry registry) throws IOException {
+            int size = Array.getLength(value);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                elementCodec.write(out, Array.get(value, i), registry);
+            }
+        }
+
+        public Object read(DataInput in, TypeCodecRegistry registry) throws IOException {
+            int size = in.readInt();
+            Object answer = Array.newInstance(componentType, size);
+            for (int i = 0; i < size; i++) {
+                Array.set(answer, i, elementCodec.read(in, registry));
+            }
+            return answer;
+        }
+    }
+
+    /**
+     * Writes arrays of any non primitive type, preserving the component type
+     */
+    protected static class ObjectArrayCodec implements TypeCodec {
+        public void write(DataOutput out, Object value, TypeCodecRegistry registry) throws IOException {
+            Object[] array = (Object[]) value;
+            out.writeUTF(array.getClass().getComponentType().getName());
+            out.writeInt(array.length);
+            for (int i = 0; i < array.length; i++) {
+                registry.writeObject(out, array[i]);
+            }
+        }
+
+        public Object read(DataInput in, TypeCodecRegistry registry) throws IOException {
+            Class componentType = registry.loadClass(in.readUTF());
+            int size = in.readInt();
+            Object[] answer = (Object[]) Array.newInstance(componentType, size);
+            registry.addReference(answer);
+            for (int i = 0; i < size; i++) {
+                answer[i] = registry.readObject(in);
+            }
+            return answer;
+        }
+    }
+
+    protected static class CollectionCodec implements TypeCodec {
+        private final Class type;
+
+        public CollectionCodec(Class type) {
+            this.type = type;
+        }
+
+        public void write(DataOutput out, Object value, TypeCodecRegistry registry) throws IOException {
+            Collection collection = (Collection) value;
+            out.writeInt(collection.size());
+            for (Iterator iter = collection.iterator(); iter.hasNext();) {
+                registry.writeObject(out, iter.next());
+            }
+        }
+
+        public Object read(DataInput in, TypeCodecRegistry registry) throws IOException {
+            int size = in.readInt();
+            Collection answer = (Collection) newInstance(type);
+            registry.addReference(answer);
+            for (int i = 0; i < size; i++) {
+                answer.add(registry.readObject(in));
+            }
+            return answer;
+        }
+    }
+
+    protected static class MapCodec implements TypeCodec {
+        private final Class type;
+
+        public MapCodec(Class type) {
+            this.type = type;
+        }
+
+        public void write(DataOutput out, Object value, TypeCodecRegistry registry) throws IOException {
+            Map map = (Map) value;
+            out.writeInt(map.size());
+            for (Iterator iter = map.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry entry = (Map.Entry) iter.next();
+                registry.writeObject(out, entry.getKey());
+                registry.writeObject(out, entry.getValue());
+            }
+        }
+
+        public Object read(DataInput in, TypeCodecRegistry registry) throws IOException {
+            int size = in.readInt();
+            Map answer = (Map) newInstance(type);
+            registry.addReference(answer);
+            for (int i = 0; i < size; i++) {
+                Object key = registry.readObject(in);
+                answer.put(key, registry.readObject(in));
+            }
+            return answer;
+        }
+    }
+
+    /**
+     * The fallback codec which uses Java serialization
+     */
+    protected static class SerializableCodec implements TypeCodec {
+        public void write(DataOutput out, Object value, TypeCodecRegistry registry) throws IOException {
+            if (!(value instanceof Serializable)) {
+                throw new IOException("Cannot marshal value of type: " + value.getClass().getName() + " as it is not Serializable");
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            ObjectOutputStream objectOut = new ObjectOutputStream(buffer);
+            objectOut.writeObject(value);
+            objectOut.close();
+            out.writeInt(buffer.size());
+            out.write(buffer.toByteArray());
+        }
+
+        public Object read(DataInput in, final TypeCodecRegistry registry) throws IOException {
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(data)) {
+                protected Class resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                    try {
+                        return registry.loadClass(desc.getName());
+                    }
+                    catch (IOException e) {
+                        return super.resolveClass(desc);
+                    }
+                }
+            };
+            try {
+                return objectIn.readObject();
+            }
+            catch (ClassNotFoundException e) {
+                throw new IOException("Could not load class: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jmx;
+
+import edu.emory.mathcs.backport.java.util.concurrent.helpers.Utils;
+
+import org.logicblaze.lingo.util.LatencyHistogram;
+import org.logicblaze.lingo.util.StripedCounter;
+
+/**
+ * Records the number of invocations of a remote method along with the time
+ * spent in each phase of the invocations, using striped counters so that
+ * recording is cheap when the method is invoked by many threads.
+ * 
+ * @version $Revision$
+ */
+public class MethodStatistics implements MethodStatisticsMBean {
+    /**
+     * Creating or reading the request or response message
+     */
+    public static final int MARSHAL = 0;
+
+    /**
+     * Sending a message
+     */
+    public static final int SEND = 1;
+
+    /**
+     * Waiting for a response, which includes sending the request for request
+     * response invocations
+     */
+    public static final int WAIT = 2;
+
+    /**
+     * Extracting the result or invocation from a message
+     */
+    public static final int UNMARSHAL = 3;
+
+    /**
+     * Invoking the service
+     */
+    public static final int INVOKE = 4;
+
+    private static final int PHASE_COUNT = 5;
+
+    private final String signature;
+    private final StripedCounter invocations = new StripedCounter();
+    private final StripedCounter errors = new StripedCounter();
+    private final StripedCounter inFlight = new StripedCounter();
+    private final StripedCounter totalTime = new StripedCounter();
+    private final StripedCounter[] phaseTimes = new StripedCounter[PHASE_COUNT];
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Returns the current time in nanoseconds used to time invocations
+     */
+    public static long currentTime() {
+        return Utils.nanoTime();
+    }
+
+    /**
+     * Records the time since the given start time against the phase of the
+     * given statistics if they are not null
+     * 
+     * @return the current time which is the start time of the next phase
+     */
+    public static long recordPhase(MethodStatistics statistics, int phase, long startTime) {
+        if (statistics == null) {
+            return 0L;
+        }
+        long now = currentTime();
+        statistics.addPhaseTime(phase, now - startTime);
+        return now;
+    }
+
+    public MethodStatistics(String signature) {
+        this.signature = signature;
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            phaseTimes[i] = new StripedCounter();
+        }
+    }
+
+    /**
+     * Called when an invocation starts
+     */
+    public void start() {
+        inFlight.increment();
+    }
+
+    /**
+     * Called when an invocation ends
+     * 
+     * @param nanos
+     *            the duration of the invocation in nanoseconds
+     * @param error
+     *            whether the invocation failed
+     */
+    public void end(long nanos, boolean error) {
+        inFlight.decrement();
+        invocations.increment();
+        if (error) {
+            errors.increment();
+        }
+        totalTime.add(nanos);
+        latencies.record(nanos);
+    }
+
+    public void addPhaseTime(int phase, long nanos) {
+        phaseTimes[phase].add(nanos);
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public long getInvocationCount() {
+        return invocations.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public long getInFlightCount() {
+        return inFlight.get();
+    }
+
+    public double getMeanLatency() {
+        return mean(totalTime);
+    }
+
+    public double getMeanMarshalTime() {
+        return mean(phaseTimes[MARSHAL]);
+    }
+
+    public double getMeanSendTime() {
+        return mean(phaseTimes[SEND]);
+    }
+
+    public double getMeanWaitTime() {
+        return mean(phaseTimes[WAIT]);
+    }
+
+    public double getMeanUnmarshalTime() {
+        return mean(phaseTimes[UNMARSHAL]);
+    }
+
+    public double getMeanInvokeTime() {
+        return mean(phaseTimes[INVOKE]);
+    }
+
+    public long getLatencyPercentile(double percentile) {
+        return latencies.getPercentile(percentile);
+    }
+
+    public long[] getLatencyHistogram() {
+        return latencies.getCounts();
+    }
+
+    public void reset() {
+        invocations.reset();
+        errors.reset();
+        totalTime.reset();
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            phaseTimes[i].reset();
+        }
+        latencies.reset();
+    }
+
+    public String toString() {
+        return "MethodStatistics[" + signature + " invocations: " + getInvocationCount() + " errors: " + getErrorCount() + " mean latency: "
+                + getMeanLatency() + " us]";
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+
+    /**
+     * Returns the mean time per invocation in microseconds
+     */
+    protected double mean(StripedCounter nanos) {
+        long count = invocations.get();
+        if (count == 0) {
+            return 0;
+        }
+        return nanos.get() / 1000.0 / count;
+    }
+}
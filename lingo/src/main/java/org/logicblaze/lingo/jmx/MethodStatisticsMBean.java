@@ -0,0 +1,61 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jmx;
+
+/**
+ * The management interface of the statistics of a remote method. All times
+ * are in microseconds.
+ * 
+ * @version $Revision$
+ */
+public interface MethodStatisticsMBean {
+
+    String getSignature();
+
+    long getInvocationCount();
+
+    long getErrorCount();
+
+    long getInFlightCount();
+
+    double getMeanLatency();
+
+    double getMeanMarshalTime();
+
+    double getMeanSendTime();
+
+    double getMeanWaitTime();
+
+    double getMeanUnmarshalTime();
+
+    double getMeanInvokeTime();
+
+    /**
+     * Returns the upper bound of the histogram bucket containing the given
+     * percentile of the latencies
+     */
+    long getLatencyPercentile(double percentile);
+
+    /**
+     * Returns the counts of the latency histogram buckets where bucket <i>n</i>
+     * counts latencies below 2<sup>n</sup> microseconds
+     */
+    long[] getLatencyHistogram();
+
+    void reset();
+}
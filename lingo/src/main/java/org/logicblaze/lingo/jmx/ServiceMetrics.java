@@ -0,0 +1,184 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jmx;
+
+import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.logicblaze.lingo.MethodTable;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Holds the {@link MethodStatistics} of each method of a service which are
+ * lazily created as methods are invoked, optionally registering each one as
+ * an MBean. The same instance can be shared by a
+ * {@link org.logicblaze.lingo.jms.JmsProxyFactoryBean} and a
+ * {@link org.logicblaze.lingo.jms.JmsServiceExporter} though then their
+ * statistics are combined.
+ * 
+ * @org.apache.xbean.XBean element="serviceMetrics"
+ * 
+ * @version $Revision$
+ */
+public class ServiceMetrics implements DisposableBean {
+    private static final Log log = LogFactory.getLog(ServiceMetrics.class);
+
+    public static final String DEFAULT_DOMAIN = "org.logicblaze.lingo";
+
+    private final ConcurrentHashMap statistics = new ConcurrentHashMap();
+    private final ConcurrentHashMap methodStatistics = new ConcurrentHashMap();
+    private final List objectNames = new ArrayList();
+    private MBeanServer mbeanServer;
+    private String domain = DEFAULT_DOMAIN;
+    private String serviceName = "default";
+    private String side = "client";
+
+    /**
+     * Returns the statistics of the given method
+     */
+    public MethodStatistics getMethodStatistics(Method method) {
+        MethodStatistics answer = (MethodStatistics) methodStatistics.get(method);
+        if (answer == null) {
+            answer = getMethodStatistics(MethodTable.getSignature(method));
+            methodStatistics.put(method, answer);
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the statistics of the method with the given signature
+     * 
+     * @see MethodTable#getSignature(Method)
+     */
+    public MethodStatistics getMethodStatistics(String signature) {
+        MethodStatistics answer = (MethodStatistics) statistics.get(signature);
+        if (answer == null) {
+            MethodStatistics newStatistics = new MethodStatistics(signature);
+            answer = (MethodStatistics) statistics.putIfAbsent(signature, newStatistics);
+            if (answer == null) {
+                answer = newStatistics;
+                register(answer);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the statistics of all the methods invoked so far
+     */
+    public MethodStatistics[] getAllMethodStatistics() {
+        return (MethodStatistics[]) statistics.values().toArray(new MethodStatistics[0]);
+    }
+
+    public void destroy() throws Exception {
+        if (mbeanServer != null) {
+            synchronized (objectNames) {
+                for (Iterator iter = objectNames.iterator(); iter.hasNext();) {
+                    ObjectName name = (ObjectName) iter.next();
+                    try {
+                        mbeanServer.unregisterMBean(name);
+                    }
+                    catch (Exception e) {
+                        log.warn("Failed to unregister MBean: " + name + ". Reason: " + e, e);
+                    }
+                }
+                objectNames.clear();
+            }
+        }
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public MBeanServer getMbeanServer() {
+        return mbeanServer;
+    }
+
+    /**
+     * Sets the MBean server with which the statistics of each method are
+     * registered or null if they should not be registered
+     */
+    public void setMbeanServer(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * Sets the JMX domain of the MBean names
+     */
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * Sets the name of the service used in the MBean names
+     */
+    public void setServiceName(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public String getSide() {
+        return side;
+    }
+
+    /**
+     * Sets whether these are the client or server statistics, which is used in
+     * the MBean names
+     */
+    public void setSide(String side) {
+        this.side = side;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected void register(MethodStatistics statistics) {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            ObjectName name = createObjectName(statistics);
+            mbeanServer.registerMBean(statistics, name);
+            synchronized (objectNames) {
+                objectNames.add(name);
+            }
+        }
+        catch (Exception e) {
+            log.warn("Failed to register MBean for: " + statistics.getSignature() + ". Reason: " + e, e);
+        }
+    }
+
+    protected ObjectName createObjectName(MethodStatistics statistics) throws Exception {
+        return new ObjectName(domain + ":Type=RemoteMethod,Service=" + ObjectName.quote(serviceName) + ",Side=" + side + ",Method="
+                + ObjectName.quote(statistics.getSignature()));
+    }
+}
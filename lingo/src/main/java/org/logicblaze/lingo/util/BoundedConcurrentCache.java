@@ -0,0 +1,116 @@
+/**
+ * 
+ * Copyright 2005 LogicBlaze, Inc. http://www.logicblaze.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ **/
+package org.logicblaze.lingo.util;
+
+import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentHashMap;
+import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentLinkedQueue;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A cache of a fixed size which can be safely used by many threads. Unlike
+ * {@link LRUCache} lookups do not modify the cache so they never block; when
+ * the cache is full the entries are evicted in roughly the order in which they
+ * were inserted. Removing an entry is O(n) in the size of the cache, which is
+ * fine for caches which are mostly read. <p/> The cache wraps rather than
+ * extends a concurrent map so that every change goes through the methods
+ * which keep the insertion order; the views of the cache are read only.
+ * 
+ * @version $Revision$
+ */
+public class BoundedConcurrentCache extends AbstractMap implements Serializable {
+    private static final long serialVersionUID = 4283517690211459370L;
+
+    private final int maximumSize;
+    private final ConcurrentHashMap map = new ConcurrentHashMap();
+    private final ConcurrentLinkedQueue insertionOrder = new ConcurrentLinkedQueue();
+
+    public BoundedConcurrentCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1 but was: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    public Object get(Object key) {
+        return map.get(key);
+    }
+
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public Object put(Object key, Object value) {
+        Object answer = map.put(key, value);
+        if (answer == null) {
+            inserted(key);
+        }
+        return answer;
+    }
+
+    public Object putIfAbsent(Object key, Object value) {
+        Object answer = map.putIfAbsent(key, value);
+        if (answer == null) {
+            inserted(key);
+        }
+        return answer;
+    }
+
+    public Object remove(Object key) {
+        Object answer = map.remove(key);
+        if (answer != null) {
+            insertionOrder.remove(key);
+        }
+        return answer;
+    }
+
+    public void clear() {
+        map.clear();
+        insertionOrder.clear();
+    }
+
+    public Set entrySet() {
+        return Collections.unmodifiableMap(map).entrySet();
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected void inserted(Object key) {
+        insertionOrder.add(key);
+        while (size() > maximumSize) {
+            Object eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            map.remove(eldest);
+        }
+    }
+}
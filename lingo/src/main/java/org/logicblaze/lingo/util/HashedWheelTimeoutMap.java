@@ -0,0 +1,290 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc. http://www.logicblaze.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.util;
+
+import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentHashMap;
+import edu.emory.mathcs.backport.java.util.concurrent.ConcurrentLinkedQueue;
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link TimeoutMap} which uses a concurrent map for lookups and a hashed
+ * timing wheel to index the expiry times of the entries. Inserts, removals and
+ * lookups (which refresh the expiry time of an entry) are all O(1) and do not
+ * take a global lock; the expired entries are purged in batches, one wheel
+ * bucket per tick.
+ *
+ * <p/> Removed or refreshed entries are not eagerly removed from the wheel;
+ * they are either discarded or moved to the correct bucket when their bucket
+ * is next purged. So entries may be evicted up to one tick after they time out.
+ *
+ * @version $Revision$
+ */
+public class HashedWheelTimeoutMap implements TimeoutMap, Runnable {
+
+    private static final Log log = LogFactory.getLog(HashedWheelTimeoutMap.class);
+
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final ConcurrentHashMap map = new ConcurrentHashMap();
+    private final ConcurrentLinkedQueue[] wheel;
+    private final int mask;
+    private final long tickDuration;
+    private final Object purgeLock = new Object();
+    private long lastPurgedTick;
+    private ScheduledExecutorService executor;
+    private long purgePollTime;
+
+    public HashedWheelTimeoutMap() {
+        this(null, 1000L);
+    }
+
+    public HashedWheelTimeoutMap(ScheduledExecutorService executor, long requestMapPollTimeMillis) {
+        this(executor, requestMapPollTimeMillis, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Creates a new map
+     *
+     * @param executor
+     *            the executor used to schedule purges or null if
+     *            {@link #purge()} is invoked explicitly
+     * @param requestMapPollTimeMillis
+     *            the duration of each tick of the wheel which is also the
+     *            period between scheduled purges
+     * @param wheelSize
+     *            the number of buckets in the wheel which is rounded up to a
+     *            power of 2
+     */
+    public HashedWheelTimeoutMap(ScheduledExecutorService executor, long requestMapPollTimeMillis, int wheelSize) {
+        if (requestMapPollTimeMillis <= 0) {
+            throw new IllegalArgumentException("requestMapPollTimeMillis must be positive but was: " + requestMapPollTimeMillis);
+        }
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new ConcurrentLinkedQueue[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ConcurrentLinkedQueue();
+        }
+        this.mask = size - 1;
+        this.tickDuration = requestMapPollTimeMillis;
+        this.executor = executor;
+        this.purgePollTime = requestMapPollTimeMillis;
+        this.lastPurgedTick = tickOf(currentTime()) - 1;
+        schedulePoll();
+    }
+
+    public Object get(Object key) {
+        WheelEntry entry = (WheelEntry) map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        // the entry is moved to the right bucket lazily when its current
+        // bucket is purged
+        updateExpireTime(entry);
+        return entry.getValue();
+    }
+
+    public void put(Object key, Object value, long timeoutMillis) {
+        WheelEntry entry = new WheelEntry(key, value, timeoutMillis);
+        updateExpireTime(entry);
+        map.put(key, entry);
+        schedule(entry);
+    }
+
+    public void remove(Object key) {
+        map.remove(key);
+    }
+
+    /**
+     * Returns true if the map contains the key, without refreshing the expiry
+     * time of its entry
+     */
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Returns a copy of the keys in the map
+     */
+    public Object[] getKeys() {
+        return map.keySet().toArray();
+    }
+
+    /**
+     * Returns the number of entries in the map
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * The timer task which purges old requests and schedules another poll
+     */
+    public void run() {
+        purge();
+        schedulePoll();
+    }
+
+    /**
+     * Purges any old entries from the map by processing every bucket of the
+     * wheel whose tick has completed since the last purge
+     */
+    public void purge() {
+        synchronized (purgeLock) {
+            long now = currentTime();
+            long currentTick = tickOf(now);
+            long tick = lastPurgedTick + 1;
+            if (currentTick - tick > mask) {
+                // we've not been called for more than a revolution of the wheel
+                tick = currentTick - mask - 1;
+            }
+            List entries = new ArrayList();
+            for (; tick < currentTick; tick++) {
+                ConcurrentLinkedQueue bucket = wheel[(int) (tick & mask)];
+                for (Object value = bucket.poll(); value != null; value = bucket.poll()) {
+                    entries.add(value);
+                }
+                for (int i = 0, size = entries.size(); i < size; i++) {
+                    purgeEntry((WheelEntry) entries.get(i), now);
+                }
+                entries.clear();
+            }
+            lastPurgedTick = currentTick - 1;
+        }
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public long getPurgePollTime() {
+        return purgePollTime;
+    }
+
+    /**
+     * Sets the next purge poll time in milliseconds
+     */
+    public void setPurgePollTime(long purgePollTime) {
+        this.purgePollTime = purgePollTime;
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    public int getWheelSize() {
+        return wheel.length;
+    }
+
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to schedule purge events of inactive requests
+     */
+    public void setExecutor(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+
+    /**
+     * lets schedule each time to allow folks to change the time at runtime
+     */
+    protected void schedulePoll() {
+        if (executor != null) {
+            executor.schedule(this, purgePollTime, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * A hook to allow derivations to avoid evicting the current entry
+     *
+     * @param entry
+     * @return
+     */
+    protected boolean isValidForEviction(TimeoutMapEntry entry) {
+        return true;
+    }
+
+    protected void updateExpireTime(TimeoutMapEntry entry) {
+        long now = currentTime();
+        entry.setExpireTime(entry.getTimeout() + now);
+    }
+
+    protected long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    protected void purgeEntry(WheelEntry entry, long now) {
+        if (map.get(entry.getKey()) != entry) {
+            // entry has been removed or replaced
+            return;
+        }
+        long expireTime = entry.getExpireTime();
+        if (expireTime < now) {
+            if (isValidForEviction(entry)) {
+                if (map.remove(entry.getKey(), entry)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Evicting inactive request for correlationID: " + entry);
+                    }
+                }
+                return;
+            }
+            // lets check again on the next tick
+            expireTime = now;
+        }
+        wheel[(int) (tickOf(expireTime) & mask)].add(entry);
+    }
+
+    protected void schedule(WheelEntry entry) {
+        wheel[(int) (tickOf(entry.getExpireTime()) & mask)].add(entry);
+    }
+
+    protected long tickOf(long time) {
+        return time / tickDuration;
+    }
+
+    /**
+     * An entry whose expiry time can be safely refreshed by many threads
+     */
+    protected static class WheelEntry extends TimeoutMapEntry {
+        private volatile long expireTime;
+
+        public WheelEntry(Object key, Object value, long timeout) {
+            super(key, value, timeout);
+        }
+
+        public long getExpireTime() {
+            return expireTime;
+        }
+
+        public void setExpireTime(long expireTime) {
+            this.expireTime = expireTime;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.util;
+
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with buckets whose size doubles, so that recording
+ * a value is a constant time, lock free operation. Bucket 0 counts latencies
+ * below 1 microsecond and bucket <i>n</i> counts latencies from
+ * 2<sup>n-1</sup> up to 2<sup>n</sup> microseconds.
+ * 
+ * @version $Revision$
+ */
+public class LatencyHistogram {
+    public static final int BUCKET_COUNT = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Records a latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = nanos / 1000L;
+        int bucket = 0;
+        while (micros > 0 && bucket < BUCKET_COUNT - 1) {
+            micros >>>= 1;
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+    }
+
+    /**
+     * Returns a copy of the counts of each bucket
+     */
+    public long[] getCounts() {
+        long[] answer = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            answer[i] = buckets.get(i);
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the upper bound in microseconds of the bucket containing the
+     * given percentile of the recorded latencies or 0 if none have been
+     * recorded
+     * 
+     * @param percentile
+     *            the percentile between 0 and 100
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = getCounts();
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100.0);
+        long sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += counts[i];
+            if (sum >= threshold) {
+                return getUpperBound(i);
+            }
+        }
+        return getUpperBound(counts.length - 1);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    /**
+     * Returns the exclusive upper bound in microseconds of the given bucket
+     */
+    public static long getUpperBound(int bucket) {
+        return 1L << bucket;
+    }
+}
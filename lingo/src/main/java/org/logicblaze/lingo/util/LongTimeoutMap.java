@@ -0,0 +1,345 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.util;
+
+import edu.emory.mathcs.backport.java.util.concurrent.ScheduledExecutorService;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+/**
+ * A map of positive long keys to values which expire if they are not accessed
+ * within their timeout. It is specialised for the correlation IDs of in-flight
+ * requests; each segment is an open addressed hash table made up of parallel
+ * arrays of keys, values, timeouts and expiry times so no entry object is
+ * created per request and keys are never boxed. <p/> The map is split into
+ * independently locked segments so that concurrent requests rarely contend.
+ * Expired entries are removed by {@link #purge()} which is invoked
+ * periodically if an executor is configured.
+ * 
+ * @version $Revision$
+ */
+public class LongTimeoutMap implements Runnable {
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private ScheduledExecutorService executor;
+    private long purgePollTime;
+
+    public LongTimeoutMap() {
+        this(null, 1000L);
+    }
+
+    public LongTimeoutMap(ScheduledExecutorService executor, long purgePollTime) {
+        this(executor, purgePollTime, DEFAULT_SEGMENTS, 16);
+    }
+
+    /**
+     * Creates a new map
+     * 
+     * @param executor
+     *            the executor used to schedule purges or null if
+     *            {@link #purge()} is invoked explicitly
+     * @param purgePollTime
+     *            the period between scheduled purges in milliseconds
+     * @param segmentCount
+     *            the number of independently locked segments which is rounded
+     *            up to a power of 2
+     * @param segmentCapacity
+     *            the initial capacity of each segment which is rounded up to a
+     *            power of 2
+     */
+    public LongTimeoutMap(ScheduledExecutorService executor, long purgePollTime, int segmentCount, int segmentCapacity) {
+        int size = 1;
+        int bits = 0;
+        while (size < segmentCount) {
+            size <<= 1;
+            bits++;
+        }
+        this.segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        this.segmentShift = 64 - bits;
+        this.executor = executor;
+        this.purgePollTime = purgePollTime;
+        schedulePoll();
+    }
+
+    /**
+     * Returns the value for the key, refreshing its expiry time, or null if
+     * there is no value
+     */
+    public Object get(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).get(key, hash, currentTime());
+    }
+
+    /**
+     * Adds the value which expires if it is not accessed within the given
+     * timeout in milliseconds
+     */
+    public void put(long key, Object value, long timeoutMillis) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("key must be positive but was: " + key);
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("value cannot be null");
+        }
+        long hash = hash(key);
+        segmentFor(hash).put(key, hash, value, timeoutMillis, currentTime());
+    }
+
+    /**
+     * Removes the value for the key, returning it or null if there was no
+     * value
+     */
+    public Object remove(long key) {
+        long hash = hash(key);
+        return segmentFor(hash).remove(key, hash);
+    }
+
+    /**
+     * Returns the number of entries in the map
+     */
+    public int size() {
+        int answer = 0;
+        for (int i = 0; i < segments.length; i++) {
+            answer += segments[i].size();
+        }
+        return answer;
+    }
+
+    /**
+     * The timer task which purges old entries and schedules another poll
+     */
+    public void run() {
+        purge();
+        schedulePoll();
+    }
+
+    /**
+     * Removes any expired entries from the map, returning how many were
+     * removed
+     */
+    public int purge() {
+        long now = currentTime();
+        int answer = 0;
+        for (int i = 0; i < segments.length; i++) {
+            answer += segments[i].purge(now);
+        }
+        return answer;
+    }
+
+    // Properties
+    // -------------------------------------------------------------------------
+    public long getPurgePollTime() {
+        return purgePollTime;
+    }
+
+    /**
+     * Sets the next purge poll time in milliseconds
+     */
+    public void setPurgePollTime(long purgePollTime) {
+        this.purgePollTime = purgePollTime;
+    }
+
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to schedule purges of expired entries
+     */
+    public void setExecutor(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+
+    /**
+     * lets schedule each time to allow folks to change the time at runtime
+     */
+    protected void schedulePoll() {
+        if (executor != null) {
+            executor.schedule(this, purgePollTime, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    protected long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    protected Segment segmentFor(long hash) {
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        return segments[(int) (hash >>> segmentShift)];
+    }
+
+    /**
+     * Spreads the bits of the key as correlation IDs are sequential
+     */
+    protected static long hash(long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * An open addressed hash table using linear probing which removes entries
+     * by shifting back the following entries rather than leaving tombstones
+     */
+    protected static final class Segment {
+        private long[] keys;
+        private Object[] values;
+        private long[] timeouts;
+        private long[] expireTimes;
+        private int mask;
+        private int size;
+
+        Segment(int capacity) {
+            int length = 2;
+            while (length < capacity) {
+                length <<= 1;
+            }
+            allocate(length);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized Object get(long key, long hash, long now) {
+            int index = indexOf(key, hash);
+            if (index < 0) {
+                return null;
+            }
+            expireTimes[index] = now + timeouts[index];
+            return values[index];
+        }
+
+        synchronized void put(long key, long hash, Object value, long timeout, long now) {
+            int index = indexOf(key, hash);
+            if (index < 0) {
+                if ((size + 1) * 2 > keys.length) {
+                    resize();
+                }
+                index = insertionPoint(hash);
+                keys[index] = key;
+                size++;
+            }
+            values[index] = value;
+            timeouts[index] = timeout;
+            expireTimes[index] = now + timeout;
+        }
+
+        synchronized Object remove(long key, long hash) {
+            int index = indexOf(key, hash);
+            if (index < 0) {
+                return null;
+            }
+            Object answer = values[index];
+            delete(index);
+            return answer;
+        }
+
+        synchronized int purge(long now) {
+            int answer = 0;
+            for (int i = 0; i < keys.length;) {
+                if (keys[i] != 0 && expireTimes[i] < now) {
+                    // the following entry may be shifted into this slot so
+                    // lets check it again
+                    delete(i);
+                    answer++;
+                }
+                else {
+                    i++;
+                }
+            }
+            return answer;
+        }
+
+        private int slot(long hash) {
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private int indexOf(long key, long hash) {
+            for (int i = slot(hash);; i = (i + 1) & mask) {
+                long current = keys[i];
+                if (current == key) {
+                    return i;
+                }
+                if (current == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        private int insertionPoint(long hash) {
+            int i = slot(hash);
+            while (keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private void delete(int index) {
+            int i = index;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = slot(hash(keys[j]));
+                // move the entry back unless its home slot lies cyclically
+                // between the hole and its current slot
+                boolean stays = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+                if (!stays) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    timeouts[i] = timeouts[j];
+                    expireTimes[i] = expireTimes[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            values[i] = null;
+            size--;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] oldTimeouts = timeouts;
+            long[] oldExpireTimes = expireTimes;
+            allocate(oldKeys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int index = insertionPoint(hash(oldKeys[i]));
+                    keys[index] = oldKeys[i];
+                    values[index] = oldValues[i];
+                    timeouts[index] = oldTimeouts[i];
+                    expireTimes[index] = oldExpireTimes[i];
+                }
+            }
+        }
+
+        private void allocate(int length) {
+            keys = new long[length];
+            values = new Object[length];
+            timeouts = new long[length];
+            expireTimes = new long[length];
+            mask = length - 1;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.util;
+
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A counter which can be updated by many threads with little contention by
+ * spreading the updates across a number of cells. Each cell is a separate
+ * {@link AtomicLong} rather than an element of a single atomic array, as on
+ * Java 1.4 the backport atomics are implemented by synchronizing on the atomic
+ * object, so each cell must have its own monitor. Reading the value sums the
+ * cells so is more expensive than updating it.
+ * 
+ * @version $Revision$
+ */
+public class StripedCounter {
+    private static final int MAXIMUM_STRIPES = 64;
+
+    private final AtomicLong[] cells;
+    private final int mask;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Creates a counter with the given number of stripes which is rounded up
+     * to a power of 2
+     */
+    public StripedCounter(int stripes) {
+        int size = 1;
+        while (size < stripes && size < MAXIMUM_STRIPES) {
+            size <<= 1;
+        }
+        this.cells = new AtomicLong[size];
+        for (int i = 0; i < size; i++) {
+            cells[i] = new AtomicLong();
+        }
+        this.mask = size - 1;
+    }
+
+    public void add(long value) {
+        cells[index()].addAndGet(value);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void decrement() {
+        add(-1);
+    }
+
+    /**
+     * Returns the sum of the cells; concurrent updates may or may not be
+     * included
+     */
+    public long get() {
+        long answer = 0;
+        for (int i = 0; i < cells.length; i++) {
+            answer += cells[i].get();
+        }
+        return answer;
+    }
+
+    public void reset() {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i].set(0);
+        }
+    }
+
+    public String toString() {
+        return Long.toString(get());
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+    protected int index() {
+        int hash = System.identityHashCode(Thread.currentThread());
+        hash ^= (hash >>> 16);
+        return hash & mask;
+    }
+}
@@ -22,6 +22,7 @@ import edu.emory.mathcs.backport.java.util.concurrent.locks.Lock;
 import edu.emory.mathcs.backport.java.util.concurrent.locks.ReentrantLock;
 
 import org.logicblaze.lingo.util.DefaultTimeoutMap;
+import org.logicblaze.lingo.util.HashedWheelTimeoutMap;
 import org.logicblaze.lingo.util.ScheduledTask;
 import org.logicblaze.lingo.util.TimeoutMap;
 import org.logicblaze.lingo.util.TimeoutMapEntry;
@@ -33,17 +34,13 @@ import org.logicblaze.lingo.util.TimeoutMapEntry;
  */
 public class ConditionServerImpl implements ConditionServer {
 
-    private TimeoutMap map = new DefaultTimeoutMap() {
-        protected boolean isValidForEviction(TimeoutMapEntry entry) {
-            ConditionController condition = (ConditionController) entry.getValue();
-            return !condition.isActive();
-        }
-    };
+    private TimeoutMap map;
     private ScheduledTask schedule;
     private final long inactivityTimeout;
 
     public ConditionServerImpl(ScheduledExecutorService executor, long inactivityTimeout) {
         this.inactivityTimeout = inactivityTimeout;
+        this.map = createTimeoutMap();
         this.schedule = new ScheduledTask(map, executor, inactivityTimeout);
     }
 
@@ -91,6 +88,21 @@ public class ConditionServerImpl implements ConditionServer {
         }
     }
 
+    /**
+     * Factory method to create the map of conditions which are evicted after
+     * they have been inactive for the inactivity timeout. By default a
+     * {@link HashedWheelTimeoutMap} is used; derived classes can return a
+     * {@link DefaultTimeoutMap} instead.
+     */
+    protected TimeoutMap createTimeoutMap() {
+        return new HashedWheelTimeoutMap() {
+            protected boolean isValidForEviction(TimeoutMapEntry entry) {
+                ConditionController condition = (ConditionController) entry.getValue();
+                return !condition.isActive();
+            }
+        };
+    }
+
     protected ConditionController createCondition(String id) {
         return new ConditionController(id, createLock(id));
     }
@@ -0,0 +1,66 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo;
+
+import org.logicblaze.lingo.beans.ITestBean;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ */
+public class MethodTableTest extends TestCase {
+
+    public void testMethodIdsMatchSignatures() throws Exception {
+        MethodTable table = new MethodTable(ITestBean.class);
+        Map methodIds = MethodTable.createMethodIds(ITestBean.class, table.getSignatures());
+
+        Method[] methods = ITestBean.class.getMethods();
+        assertEquals(methods.length, methodIds.size());
+        for (int i = 0; i < methods.length; i++) {
+            Integer id = (Integer) methodIds.get(methods[i]);
+            assertNotNull("No ID for: " + methods[i], id);
+            assertEquals(methods[i], table.getMethod(id.intValue()));
+        }
+        assertNull(table.getMethod(0));
+        assertNull(table.getMethod(methods.length + 1));
+    }
+
+    public void testHashIdentifiesSignatures() throws Exception {
+        MethodTable table = new MethodTable(ITestBean.class);
+        assertEquals(table.getHash(), new MethodTable(ITestBean.class).getHash());
+        assertEquals(table.getHash(), MethodTable.createHash(table.getSignatures()));
+
+        String[] signatures = (String[]) table.getSignatures().clone();
+        signatures[0] = "doesNotExist()";
+        assertTrue(table.getHash() != MethodTable.createHash(signatures));
+    }
+
+    public void testUnknownSignaturesAreIgnored() throws Exception {
+        Method setAge = ITestBean.class.getMethod("setAge", new Class[] { int.class });
+        String[] signatures = new String[] { "doesNotExist()", MethodTable.getSignature(setAge) };
+        Map methodIds = MethodTable.createMethodIds(ITestBean.class, signatures);
+
+        assertEquals(1, methodIds.size());
+        assertEquals(new Integer(2), methodIds.get(setAge));
+        assertEquals("setAge(int)", MethodTable.getSignature(setAge));
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.logicblaze.lingo.jms.impl.CorrelationIDGenerator;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ */
+public class CorrelationIDGeneratorTest extends TestCase {
+
+    public void testCorrelationIDsAreUniqueAcrossGenerators() throws Exception {
+        CorrelationIDGenerator first = new CorrelationIDGenerator();
+        CorrelationIDGenerator second = new CorrelationIDGenerator();
+        assertTrue("prefixes should differ", first.getPrefix() != second.getPrefix());
+
+        Set ids = new HashSet();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(ids.add(first.createCorrelationID()));
+            assertTrue(ids.add(second.createCorrelationID()));
+        }
+    }
+
+    public void testCorrelationIDsAreUniqueAcrossThreads() throws Exception {
+        final CorrelationIDGenerator generator = new CorrelationIDGenerator();
+        final Set ids = Collections.synchronizedSet(new HashSet());
+        final int count = CorrelationIDGenerator.BLOCK_SIZE * 3;
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        ids.add(new Long(generator.nextID()));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        assertEquals("unique IDs", threads.length * count, ids.size());
+    }
+
+    public void testPrefixCanBeFoundFromCorrelationID() throws Exception {
+        CorrelationIDGenerator generator = new CorrelationIDGenerator();
+        String correlationID = generator.createCorrelationID();
+        long value = CorrelationIDGenerator.parseCorrelationID(correlationID);
+        assertEquals(generator.getPrefix(), CorrelationIDGenerator.getPrefix(value));
+
+        assertEquals(-1, CorrelationIDGenerator.parseCorrelationID("foo"));
+        assertEquals(-1, CorrelationIDGenerator.parseCorrelationID("123"));
+        assertEquals(-1, CorrelationIDGenerator.parseCorrelationID(null));
+    }
+
+    public void testCorrelationIDIsSetAsStringAndLongProperty() throws Exception {
+        CorrelationIDGenerator generator = new CorrelationIDGenerator();
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        long value = generator.setCorrelationID(message);
+
+        assertEquals(Long.toString(value), message.getJMSCorrelationID());
+        assertEquals(value, message.getLongProperty(JmsServiceExporterMessageListener.CORRELATION_ID));
+        assertEquals(value, CorrelationIDGenerator.getCorrelationID(message));
+    }
+}
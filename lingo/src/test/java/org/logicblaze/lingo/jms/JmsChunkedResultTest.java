@@ -0,0 +1,171 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.logicblaze.lingo.ResultIterator;
+import org.logicblaze.lingo.beans.IChunkedTestBean;
+import org.logicblaze.lingo.jms.impl.MultiplexingRequestor;
+
+import java.util.Iterator;
+
+/**
+ * Tests streaming a large result from a single server in chunks
+ * 
+ * @version $Revision$
+ */
+public class JmsChunkedResultTest extends JmsTestSupport {
+    protected JmsServiceExporter exporter;
+    protected JmsProxyFactoryBean pfb;
+    protected IChunkedTestBean proxy;
+    protected NumberService service = new NumberService();
+
+    public void testIterateOverChunkedResult() throws Exception {
+        Iterator iter = proxy.getNumbers(1005);
+        for (int i = 0; i < 1005; i++) {
+            assertTrue("Should have element: " + i, iter.hasNext());
+            assertEquals(new Integer(i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    public void testServerIsFlowControlled() throws Exception {
+        Iterator iter = proxy.getNumbers(1000);
+        assertEquals(new Integer(0), iter.next());
+        Thread.sleep(500);
+
+        int limit = (pfb.getResultChunkWindow() + 1) * pfb.getResultChunkSize();
+        int produced = service.produced.get();
+        assertTrue("Should have produced at most " + limit + " elements but produced: " + produced, produced <= limit);
+
+        ((ResultIterator) iter).cancel();
+        assertFalse(iter.hasNext());
+    }
+
+    public void testSenderRemovedWhenStreamEnds() throws Exception {
+        // fits in the window so the stream ends when it is started
+        Iterator iter = proxy.getNumbers(15);
+        while (iter.hasNext()) {
+            iter.next();
+        }
+        assertNoPendingStreams();
+
+        iter = proxy.getNumbers(1000);
+        iter.next();
+        ((ResultIterator) iter).cancel();
+        assertNoPendingStreams();
+    }
+
+    public void testExceptionDuringIteration() throws Exception {
+        Iterator iter = proxy.getNumbersThenFail(20);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(new Integer(i), iter.next());
+        }
+        try {
+            iter.next();
+            fail("Should have thrown an exception");
+        }
+        catch (IllegalStateException e) {
+            System.out.println("Caught expected exception: " + e);
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(IChunkedTestBean.class);
+        exporter.setService(service);
+        exporter.setConnectionFactory(connectionFactory);
+        exporter.setDestination(new ActiveMQQueue(getDestinationName()));
+        exporter.afterPropertiesSet();
+
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(IChunkedTestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setConnectionFactory(connectionFactory);
+        pfb.setDestination(new ActiveMQQueue(getDestinationName()));
+        pfb.setResultChunkSize(10);
+        pfb.setResultChunkWindow(2);
+        pfb.afterPropertiesSet();
+        proxy = (IChunkedTestBean) pfb.getObject();
+    }
+
+    protected void assertNoPendingStreams() throws InterruptedException {
+        MultiplexingRequestor requestor = (MultiplexingRequestor) exporter.getResponseRequestor();
+        for (int i = 0; i < 50 && requestor.getPendingRequestCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("pending streams", 0, requestor.getPendingRequestCount());
+    }
+
+    protected void tearDown() throws Exception {
+        if (pfb != null) {
+            pfb.destroy();
+        }
+        if (exporter != null) {
+            exporter.destroy();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * A service which lazily creates its results, counting the number of
+     * elements it has produced
+     */
+    public static class NumberService implements IChunkedTestBean {
+        private AtomicInteger produced = new AtomicInteger();
+
+        public Iterator getNumbers(int count) {
+            return new NumberIterator(count, false);
+        }
+
+        public Iterator getNumbersThenFail(int count) {
+            return new NumberIterator(count, true);
+        }
+
+        protected class NumberIterator implements Iterator {
+            private final int count;
+            private final boolean fail;
+            private int next;
+
+            public NumberIterator(int count, boolean fail) {
+                this.count = count;
+                this.fail = fail;
+            }
+
+            public boolean hasNext() {
+                return fail || next < count;
+            }
+
+            public Object next() {
+                if (next >= count) {
+                    throw new IllegalStateException("Failed after: " + count + " elements");
+                }
+                produced.incrementAndGet();
+                return new Integer(next++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+}
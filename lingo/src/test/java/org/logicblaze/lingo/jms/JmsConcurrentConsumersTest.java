@@ -0,0 +1,95 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+import edu.emory.mathcs.backport.java.util.concurrent.Future;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.logicblaze.lingo.beans.IAsyncTestBean;
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+import org.logicblaze.lingo.jms.impl.MultiplexingRequestor;
+
+import javax.jms.Session;
+
+/**
+ * Tests that an exporter with concurrent consumers processes requests
+ * concurrently
+ * 
+ * @version $Revision$
+ */
+public class JmsConcurrentConsumersTest extends JmsTestSupport {
+    protected int concurrentConsumers = 4;
+    protected JmsServiceExporter exporter;
+    protected JmsProxyFactoryBean pfb;
+
+    public void testRequestsProcessedConcurrently() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(concurrentConsumers);
+        TestBean target = new TestBean("myname", 99) {
+            public int getAge() {
+                // block until all the requests are being processed at once
+                latch.countDown();
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getAge();
+            }
+        };
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(target);
+        exporter.setConnectionFactory(connectionFactory);
+        exporter.setDestination(new ActiveMQQueue(getDestinationName()));
+        exporter.setConcurrentConsumers(concurrentConsumers);
+        exporter.afterPropertiesSet();
+
+        Session session = createSession();
+        JmsProducer producer = createJmsProducer();
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(IAsyncTestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setRequestor(new MultiplexingRequestor(connection, session, producer.getMessageProducer(), session.createQueue(getDestinationName()), null, false));
+        pfb.setConnectionFactory(connectionFactory);
+        pfb.afterPropertiesSet();
+
+        IAsyncTestBean proxy = (IAsyncTestBean) pfb.getObject();
+        Future[] futures = new Future[concurrentConsumers];
+        for (int i = 0; i < concurrentConsumers; i++) {
+            futures[i] = proxy.getAge();
+        }
+        for (int i = 0; i < concurrentConsumers; i++) {
+            assertEquals(new Integer(99), futures[i].get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, latch.getCount());
+    }
+
+    protected void tearDown() throws Exception {
+        if (exporter != null) {
+            exporter.destroy();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+        super.tearDown();
+    }
+}
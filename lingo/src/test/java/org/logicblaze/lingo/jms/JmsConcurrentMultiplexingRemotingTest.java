@@ -0,0 +1,96 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+import org.logicblaze.lingo.jms.impl.ConcurrentMultiplexingRequestor;
+
+import javax.jms.Session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Uses the concurrent multiplexing requestor
+ *
+ * @version $Revision$
+ */
+public class JmsConcurrentMultiplexingRemotingTest extends JmsMultiplexingRemotingTest {
+
+    public void testConcurrentRequestsFromManyThreads() throws Throwable {
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(new TestBean("myname", 99));
+        configure(exporter);
+        subscribeToQueue(exporter, getDestinationName());
+
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(ITestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setRequestor(createRequestor(getDestinationName()));
+        configure(pfb);
+        final ITestBean proxy = (ITestBean) pfb.getObject();
+
+        int threadCount = 8;
+        final int requestCount = 25;
+        final List failures = Collections.synchronizedList(new ArrayList());
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            new Thread("Sender-" + i) {
+                public void run() {
+                    try {
+                        for (int j = 0; j < requestCount; j++) {
+                            assertEquals(99, proxy.getAge());
+                        }
+                    }
+                    catch (Throwable e) {
+                        failures.add(e);
+                    }
+                    finally {
+                        latch.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue("Should have completed all requests", latch.await(30, TimeUnit.SECONDS));
+        assertEquals("failures: " + failures, 0, failures.size());
+    }
+
+    public void testTransactedSessionsAreRejected() throws Exception {
+        JmsProducerConfig transactedConfig = new JmsProducerConfig();
+        transactedConfig.setTransactedMode(true);
+        try {
+            ConcurrentMultiplexingRequestor.newInstance(connectionFactory, transactedConfig, createSession().createQueue(getDestinationName()));
+            fail("Should have rejected a transacted config");
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println("Caught expected exception: " + e);
+        }
+    }
+
+    protected Requestor createRequestor(String name) throws Exception {
+        Session session = createSession();
+        JmsProducer producer = createJmsProducer();
+        return new ConcurrentMultiplexingRequestor(connection, session, producer.getMessageProducer(), session.createQueue(name), null, false, config, 4);
+    }
+}
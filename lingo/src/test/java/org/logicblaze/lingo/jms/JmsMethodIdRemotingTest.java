@@ -0,0 +1,80 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import org.logicblaze.lingo.LingoRemoteInvocationFactory;
+import org.logicblaze.lingo.SimpleMetadataStrategy;
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+/**
+ * Negotiates method IDs with the server when the proxy is created
+ *
+ * @version $Revision$
+ */
+public class JmsMethodIdRemotingTest extends JmsMultiplexingRemotingTest {
+
+    public void testStaleMethodIdsFallBackToMethodNames() throws Throwable {
+        ITestBean proxy = createStaleProxy(new TestBean("myname", 99), false);
+        assertEquals("myname", proxy.getName());
+        assertEquals(99, proxy.getAge());
+    }
+
+    public void testStaleMethodIdsAreNotUsedForOneWays() throws Throwable {
+        ITestBean proxy = createStaleProxy(new TestBean("myname", 99), true);
+
+        // the one way must be invoked before any request has discarded the IDs
+        proxy.setAge(50);
+        assertEquals(50, proxy.getAge());
+    }
+
+    protected ITestBean createStaleProxy(TestBean target, boolean oneWay) throws Exception {
+        exporter = new JmsServiceExporter() {
+            protected Message createMethodTableMessage(Session session, Message message) throws JMSException {
+                // simulate the service being redeployed after the IDs were negotiated
+                Message answer = super.createMethodTableMessage(session, message);
+                answer.setIntProperty(METHOD_TABLE_HASH, getMethodTable().getHash() + 1);
+                return answer;
+            }
+        };
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(target);
+        configure(exporter);
+        subscribeToQueue(exporter, getDestinationName());
+
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(ITestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setRequestor(createRequestor(getDestinationName()));
+        if (oneWay) {
+            pfb.setRemoteInvocationFactory(new LingoRemoteInvocationFactory(new SimpleMetadataStrategy(true)));
+        }
+        configure(pfb);
+        return (ITestBean) pfb.getObject();
+    }
+
+    protected void configure(JmsProxyFactoryBean pfb) throws JMSException {
+        pfb.setNegotiateMethodIds(true);
+        pfb.setMethodTableTimeout(2000L);
+        super.configure(pfb);
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+import org.logicblaze.lingo.jmx.MethodStatistics;
+import org.logicblaze.lingo.jmx.ServiceMetrics;
+
+import javax.jms.JMSException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+/**
+ * Records metrics on both the client and the server
+ * 
+ * @version $Revision$
+ */
+public class JmsMetricsRemotingTest extends JmsMultiplexingRemotingTest {
+    protected MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+    protected ServiceMetrics clientMetrics = createMetrics("client");
+    protected ServiceMetrics serverMetrics = createMetrics("server");
+
+    public void testMetricsAreRecorded() throws Throwable {
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(new TestBean("myname", 99));
+        configure(exporter);
+        subscribeToQueue(exporter, getDestinationName());
+
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(ITestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setRequestor(createRequestor(getDestinationName()));
+        configure(pfb);
+
+        ITestBean proxy = (ITestBean) pfb.getObject();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(99, proxy.getAge());
+        }
+        try {
+            proxy.exceptional(new IllegalStateException());
+            fail("Should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+
+        MethodStatistics client = clientMetrics.getMethodStatistics("getAge()");
+        assertEquals(5, client.getInvocationCount());
+        assertEquals(0, client.getErrorCount());
+        assertEquals(0, client.getInFlightCount());
+        assertTrue(client.getMeanWaitTime() > 0);
+        assertTrue(client.getLatencyPercentile(99) > 0);
+
+        MethodStatistics server = serverMetrics.getMethodStatistics("getAge()");
+        assertEquals(5, server.getInvocationCount());
+        assertTrue(server.getMeanInvokeTime() > 0);
+
+        assertEquals(1, clientMetrics.getMethodStatistics("exceptional(java.lang.Throwable)").getErrorCount());
+        assertEquals(1, serverMetrics.getMethodStatistics("exceptional(java.lang.Throwable)").getErrorCount());
+
+        ObjectName name = new ObjectName("org.logicblaze.lingo:Type=RemoteMethod,Service=\"test\",Side=client,Method=\"getAge()\"");
+        assertEquals(new Long(5), mbeanServer.getAttribute(name, "InvocationCount"));
+    }
+
+    protected void configure(JmsServiceExporter exporter) throws Exception {
+        exporter.setMetrics(serverMetrics);
+        super.configure(exporter);
+    }
+
+    protected void configure(JmsProxyFactoryBean pfb) throws JMSException {
+        pfb.setMetrics(clientMetrics);
+        super.configure(pfb);
+    }
+
+    protected void tearDown() throws Exception {
+        clientMetrics.destroy();
+        serverMetrics.destroy();
+        super.tearDown();
+    }
+
+    protected ServiceMetrics createMetrics(String side) {
+        ServiceMetrics answer = new ServiceMetrics();
+        answer.setServiceName("test");
+        answer.setSide(side);
+        answer.setMbeanServer(mbeanServer);
+        return answer;
+    }
+}
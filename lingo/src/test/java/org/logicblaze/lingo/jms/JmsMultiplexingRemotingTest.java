@@ -17,12 +17,22 @@
  **/
 package org.logicblaze.lingo.jms;
 
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+import edu.emory.mathcs.backport.java.util.concurrent.ExecutionException;
+import edu.emory.mathcs.backport.java.util.concurrent.Future;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
 import org.logicblaze.lingo.LingoRemoteInvocationFactory;
+import org.logicblaze.lingo.ResultCallback;
 import org.logicblaze.lingo.SimpleMetadataStrategy;
+import org.logicblaze.lingo.beans.IAsyncTestBean;
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
 import org.logicblaze.lingo.example.ExampleService;
 import org.logicblaze.lingo.example.ExampleServiceImpl;
 import org.logicblaze.lingo.example.TestResultListener;
 import org.logicblaze.lingo.jms.impl.MultiplexingRequestor;
+import org.springframework.remoting.RemoteAccessException;
 
 import javax.jms.Destination;
 import javax.jms.Session;
@@ -65,6 +75,118 @@ public class JmsMultiplexingRemotingTest extends JmsRemotingTest {
         assertEquals("size of results: " + results, 2, results.size());
     }
 
+    public void testRemoteProxiesAreCached() throws Throwable {
+        ExampleServiceImpl target = new ExampleServiceImpl();
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ExampleService.class);
+        exporter.setService(target);
+        configure(exporter);
+        subscribeToQueue(exporter, getDestinationName());
+
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(ExampleService.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setRemoteInvocationFactory(new LingoRemoteInvocationFactory(new SimpleMetadataStrategy(true)));
+        pfb.setRequestor(createRequestor(getDestinationName()));
+        configure(pfb);
+
+        ExampleService proxy = (ExampleService) pfb.getObject();
+
+        TestResultListener listener = new TestResultListener();
+        proxy.asyncRequestResponse("IBM", listener);
+        listener.waitForAsyncResponses(2);
+        Object remoteProxy = target.getLastArguments()[1];
+
+        proxy.asyncRequestResponse("IBM", listener);
+        listener.waitForAsyncResponses(4);
+
+        assertEquals("size of results: " + listener.getResults(), 4, listener.getResults().size());
+        assertSame("remote proxy should be reused", remoteProxy, target.getLastArguments()[1]);
+        assertEquals(1, exporter.getRemoteProxies().size());
+    }
+
+    public void testFutureAndCallbackReturnTypes() throws Throwable {
+        TestBean target = new TestBean("myname", 99);
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(target);
+        configure(exporter);
+        subscribeToQueue(exporter, getDestinationName());
+
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(IAsyncTestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setRequestor(createRequestor(getDestinationName()));
+        configure(pfb);
+
+        IAsyncTestBean proxy = (IAsyncTestBean) pfb.getObject();
+        Future age = proxy.getAge();
+        Future name = proxy.getName();
+        assertEquals(new Integer(99), age.get(5, TimeUnit.SECONDS));
+        assertEquals("myname", name.get(5, TimeUnit.SECONDS));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Object[] values = new Object[1];
+        proxy.getName(new ResultCallback() {
+            public void onResult(Object value) {
+                values[0] = value;
+                latch.countDown();
+            }
+
+            public void onException(Throwable exception) {
+                values[0] = exception;
+                latch.countDown();
+            }
+        });
+        assertTrue("callback should have been invoked", latch.await(5, TimeUnit.SECONDS));
+        assertEquals("myname", values[0]);
+
+        Future exceptional = proxy.exceptional(new IllegalStateException());
+        try {
+            exceptional.get(5, TimeUnit.SECONDS);
+            fail("Should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public void testAsyncRequestsTimeOutWhenNoResponseArrives() throws Throwable {
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(IAsyncTestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        // nothing consumes from this queue so no response will ever arrive
+        pfb.setRequestor(createRequestor(getDestinationName() + ".noServer"));
+        pfb.setResponseTimeout(500);
+        configure(pfb);
+
+        IAsyncTestBean proxy = (IAsyncTestBean) pfb.getObject();
+        Future age = proxy.getAge();
+        try {
+            age.get(5, TimeUnit.SECONDS);
+            fail("Should have thrown ExecutionException");
+        }
+        catch (ExecutionException e) {
+            assertTrue("cause: " + e.getCause(), e.getCause() instanceof RemoteAccessException);
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Object[] values = new Object[1];
+        proxy.getName(new ResultCallback() {
+            public void onResult(Object value) {
+                values[0] = value;
+                latch.countDown();
+            }
+
+            public void onException(Throwable exception) {
+                values[0] = exception;
+                latch.countDown();
+            }
+        });
+        assertTrue("callback should have been invoked", latch.await(5, TimeUnit.SECONDS));
+        assertTrue("value: " + values[0], values[0] instanceof RemoteAccessException);
+    }
+
     protected Requestor createRequestor(String name) throws Exception {
         Session session = createSession();
         JmsProducer producer = createJmsProducer();
@@ -0,0 +1,125 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicInteger;
+
+import org.logicblaze.lingo.SimpleMetadataStrategy;
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+import org.logicblaze.lingo.jms.impl.MultiplexingRequestor;
+
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests that one way invocations are sent in batches and invoked in order
+ * 
+ * @version $Revision$
+ */
+public class JmsOneWayBatchingTest extends JmsTestSupport {
+    protected AtomicInteger messageCount = new AtomicInteger();
+    protected List ages = Collections.synchronizedList(new ArrayList());
+    protected JmsServiceExporter exporter;
+    protected JmsProxyFactoryBean pfb;
+    protected ITestBean proxy;
+
+    public void testInvocationsAreBatchedInOrder() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            proxy.setAge(i);
+        }
+        pfb.flushOneWayBatches();
+        waitForAges(10);
+
+        assertEquals("number of messages", 3, messageCount.get());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(new Integer(i), ages.get(i));
+        }
+    }
+
+    public void testPartialBatchSentAfterLingerTime() throws Exception {
+        proxy.setAge(1);
+        proxy.setAge(2);
+        waitForAges(2);
+
+        assertEquals("number of messages", 1, messageCount.get());
+    }
+
+    public void testPendingBatchSentBeforeRequest() throws Exception {
+        proxy.setAge(1);
+        proxy.setAge(2);
+
+        assertEquals("age", 2, proxy.getAge());
+        assertEquals("ages", 2, ages.size());
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestBean target = new TestBean("myname", 99) {
+            public void setAge(int age) {
+                super.setAge(age);
+                ages.add(new Integer(age));
+            }
+        };
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(target);
+        exporter.setConnectionFactory(connectionFactory);
+        exporter.afterPropertiesSet();
+
+        Session session = createSession();
+        MessageConsumer consumer = session.createConsumer(session.createQueue(getDestinationName()));
+        consumer.setMessageListener(new MessageListener() {
+            public void onMessage(Message message) {
+                messageCount.incrementAndGet();
+                exporter.onMessage(message);
+            }
+        });
+
+        JmsProducer producer = createJmsProducer();
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(ITestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setMetadataStrategy(new SimpleMetadataStrategy(true));
+        pfb.setRequestor(new MultiplexingRequestor(connection, session, producer.getMessageProducer(), session.createQueue(getDestinationName()), null, false));
+        pfb.setOneWayBatchSize(4);
+        pfb.setOneWayBatchLingerTime(200);
+        pfb.afterPropertiesSet();
+        proxy = (ITestBean) pfb.getObject();
+    }
+
+    protected void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        super.tearDown();
+    }
+
+    protected void waitForAges(int count) throws InterruptedException {
+        for (int i = 0; i < 50 && ages.size() < count; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("ages: " + ages, count, ages.size());
+    }
+}
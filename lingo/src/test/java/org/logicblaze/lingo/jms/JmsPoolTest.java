@@ -0,0 +1,147 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+import org.logicblaze.lingo.jms.impl.DefaultJmsProducerPool;
+import org.logicblaze.lingo.jms.impl.DefaultRequestorPool;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * Tests that proxies and clients can share pooled requestors and producers
+ * 
+ * @version $Revision$
+ */
+public class JmsPoolTest extends JmsTestSupport {
+    protected JmsServiceExporter exporter;
+    protected DefaultRequestorPool requestorPool;
+    protected DefaultJmsProducerPool producerPool;
+
+    public void testProxiesShareRequestorPool() throws Exception {
+        ITestBean[] proxies = new ITestBean[3];
+        for (int i = 0; i < proxies.length; i++) {
+            JmsProxyFactoryBean pfb = new JmsProxyFactoryBean();
+            pfb.setServiceInterface(ITestBean.class);
+            pfb.setServiceUrl("http://myurl");
+            pfb.setDestination(new ActiveMQQueue(getDestinationName()));
+            pfb.setRequestorPool(requestorPool);
+            pfb.afterPropertiesSet();
+            proxies[i] = (ITestBean) pfb.getObject();
+        }
+        for (int i = 0; i < proxies.length; i++) {
+            assertEquals(99, proxies[i].getAge());
+        }
+        assertEquals("active requestors", 0, requestorPool.getActiveCount());
+        assertEquals("idle requestors", 1, requestorPool.getIdleCount());
+        assertEquals("connections", 1, requestorPool.getConnectionCount());
+    }
+
+    public void testBorrowTimesOutWhenPoolIsExhausted() throws Exception {
+        requestorPool.setMaximumSize(1);
+        requestorPool.setBorrowTimeout(100);
+        Requestor requestor = requestorPool.borrowRequestor();
+        try {
+            requestorPool.borrowRequestor();
+            fail("Should have timed out");
+        }
+        catch (JMSException e) {
+            System.out.println("Caught expected exception: " + e);
+        }
+        requestorPool.returnRequestor(requestor);
+        assertSame(requestor, requestorPool.borrowRequestor());
+    }
+
+    public void testClosedSessionsAreNotReused() throws Exception {
+        JmsProducer producer = producerPool.borrowProducer();
+        producerPool.returnProducer(producer);
+        producer.getSession().close();
+
+        JmsProducer another = producerPool.borrowProducer();
+        assertNotSame("should not reuse a producer whose session is closed", producer, another);
+        another.getSession().getTransacted();
+        producerPool.returnProducer(another);
+    }
+
+    public void testIdleResourcesAreEvicted() throws Exception {
+        producerPool.setIdleTimeout(100);
+        producerPool.setEvictionInterval(50);
+        JmsProducer producer = producerPool.borrowProducer();
+        producerPool.returnProducer(producer);
+        assertEquals("connections", 1, producerPool.getConnectionCount());
+
+        for (int i = 0; i < 50 && producerPool.getConnectionCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("idle producers", 0, producerPool.getIdleCount());
+        assertEquals("connections", 0, producerPool.getConnectionCount());
+        assertNull("producer should be closed", producer.getSession());
+    }
+
+    public void testRequestorsAwaitingResponsesAreNotEvicted() throws Exception {
+        requestorPool.setIdleTimeout(100);
+        requestorPool.setEvictionInterval(50);
+        Requestor requestor = requestorPool.borrowRequestor();
+        Message request = requestor.getSession().createTextMessage("hello");
+        requestor.request(new ActiveMQQueue(getDestinationName() + ".noConsumer"), request, new ReplyHandler() {
+            public boolean handle(Message message) throws JMSException {
+                return true;
+            }
+        }, 10000L);
+        requestorPool.returnRequestor(requestor);
+
+        Thread.sleep(500);
+        assertEquals("idle requestors", 1, requestorPool.getIdleCount());
+        assertNotNull("requestor should not be closed", requestor.getSession());
+    }
+
+    public void testClientReturnsProducerToPool() throws Exception {
+        JmsClient client = new JmsClient();
+        client.setDestination(new ActiveMQQueue(getDestinationName()));
+        client.setProducerPool(producerPool);
+        client.send(client.createMessage("hello"));
+        assertEquals("active producers", 1, producerPool.getActiveCount());
+
+        client.close();
+        assertEquals("active producers", 0, producerPool.getActiveCount());
+        assertEquals("idle producers", 1, producerPool.getIdleCount());
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(new TestBean("myname", 99));
+        exporter.setConnectionFactory(connectionFactory);
+        exporter.setDestination(new ActiveMQQueue(getDestinationName()));
+        exporter.afterPropertiesSet();
+
+        requestorPool = new DefaultRequestorPool(connectionFactory);
+        producerPool = new DefaultJmsProducerPool(connectionFactory);
+    }
+
+    protected void tearDown() throws Exception {
+        requestorPool.close();
+        producerPool.close();
+        exporter.destroy();
+        super.tearDown();
+    }
+}
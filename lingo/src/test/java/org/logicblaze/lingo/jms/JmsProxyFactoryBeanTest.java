@@ -17,10 +17,16 @@
  **/
 package org.logicblaze.lingo.jms;
 
+import org.logicblaze.lingo.SimpleMetadataStrategy;
 import org.logicblaze.lingo.jms.impl.MultiplexingRequestor;
 
 import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Session;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -52,4 +58,29 @@ public class JmsProxyFactoryBeanTest extends JmsTestSupport {
         assertEquals(5000, mpxRequestor.getTimeToLive());
     }
 
+    public void testInvocationsUseConfiguredMessageProperties() throws Exception {
+        Session session = createSession();
+        Queue queue = session.createQueue(getDestinationName());
+        MessageConsumer consumer = session.createConsumer(queue);
+
+        JmsProxyFactoryBean factoryBean = new JmsProxyFactoryBean();
+        factoryBean.setConnectionFactory(connectionFactory);
+        factoryBean.setDestination(queue);
+        factoryBean.setServiceInterface(List.class);
+        factoryBean.setMetadataStrategy(new SimpleMetadataStrategy(true));
+        factoryBean.setMessageProperties(Collections.singletonMap("region", "emea"));
+        factoryBean.afterPropertiesSet();
+        List proxy = (List) factoryBean.getObject();
+
+        assertTrue(proxy.toString().startsWith("JMS invoker proxy"));
+        proxy.clear();
+
+        Message message = consumer.receive(5000);
+        assertNotNull("Should have received a request", message);
+        assertEquals("emea", message.getStringProperty("region"));
+
+        factoryBean.destroy();
+        connection.close();
+    }
+
 }
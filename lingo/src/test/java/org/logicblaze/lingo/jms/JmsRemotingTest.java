@@ -21,6 +21,7 @@ import org.apache.activemq.command.ActiveMQQueue;
 import org.aopalliance.intercept.MethodInvocation;
 import org.logicblaze.lingo.LingoRemoteInvocationFactory;
 import org.logicblaze.lingo.MetadataStrategy;
+import org.logicblaze.lingo.MethodMetadata;
 import org.logicblaze.lingo.SimpleMetadataStrategy;
 import org.logicblaze.lingo.beans.ITestBean;
 import org.logicblaze.lingo.beans.TestBean;
@@ -212,8 +213,8 @@ public class JmsRemotingTest extends JmsTestSupport {
         pfb.setServiceUrl("http://myurl");
         pfb.setRequestor(createRequestor(getDestinationName()));
         pfb.setRemoteInvocationFactory(new LingoRemoteInvocationFactory(strategy) {
-            public RemoteInvocation createRemoteInvocation(MethodInvocation methodInvocation) {
-                RemoteInvocation invocation = super.createRemoteInvocation(methodInvocation);
+            public RemoteInvocation createRemoteInvocation(MethodInvocation methodInvocation, MethodMetadata metadata) {
+                RemoteInvocation invocation = super.createRemoteInvocation(methodInvocation, metadata);
                 invocation.addAttribute("myKey", "myValue");
                 try {
                     invocation.addAttribute("myKey", "myValue");
@@ -257,8 +258,8 @@ public class JmsRemotingTest extends JmsTestSupport {
         pfb.setServiceUrl("http://myurl");
         pfb.setRequestor(createRequestor(getDestinationName()));
         pfb.setRemoteInvocationFactory(new LingoRemoteInvocationFactory(strategy) {
-            public RemoteInvocation createRemoteInvocation(MethodInvocation methodInvocation) {
-                RemoteInvocation invocation = super.createRemoteInvocation(methodInvocation);
+            public RemoteInvocation createRemoteInvocation(MethodInvocation methodInvocation, MethodMetadata metadata) {
+                RemoteInvocation invocation = super.createRemoteInvocation(methodInvocation, metadata);
                 assertNull(invocation.getAttributes());
                 assertNull(invocation.getAttribute("myKey"));
                 return invocation;
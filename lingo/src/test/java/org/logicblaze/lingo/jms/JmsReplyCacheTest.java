@@ -0,0 +1,134 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import org.logicblaze.lingo.LingoInvocation;
+import org.logicblaze.lingo.MethodMetadata;
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+import org.logicblaze.lingo.jms.marshall.Marshaller;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+/**
+ * Tests that redelivered requests are answered from the reply cache rather
+ * than invoking the service again
+ * 
+ * @version $Revision$
+ */
+public class JmsReplyCacheTest extends JmsTestSupport {
+    protected JmsServiceExporter exporter;
+    protected CountingTestBean service = new CountingTestBean();
+    protected Session session;
+    protected Queue replyTo;
+    protected MessageConsumer consumer;
+
+    public void testRedeliveredRequestIsAnsweredFromCache() throws Exception {
+        Message request = createRequest("request-1");
+        exporter.onMessage(request);
+        request.setJMSRedelivered(true);
+        exporter.onMessage(request);
+
+        assertEquals("invocations", 1, service.invocationCount);
+        assertReply("request-1");
+        assertReply("request-1");
+    }
+
+    public void testRequestsWhichAreNotRedeliveredAreInvoked() throws Exception {
+        Message request = createRequest("request-2");
+        exporter.onMessage(request);
+        exporter.onMessage(request);
+
+        assertEquals("invocations", 2, service.invocationCount);
+    }
+
+    public void testCacheIsBoundedByEvictingOldestReplies() throws Exception {
+        exporter.setMaximumCachedReplies(1);
+        exporter.onMessage(createRequest("request-3"));
+        exporter.onMessage(createRequest("request-4"));
+        assertEquals("cached replies", 1, exporter.getReplyCache().size());
+
+        Message request = createRequest("request-4");
+        request.setJMSRedelivered(true);
+        exporter.onMessage(request);
+        assertEquals("invocations", 2, service.invocationCount);
+
+        request = createRequest("request-3");
+        request.setJMSRedelivered(true);
+        exporter.onMessage(request);
+        assertEquals("invocations", 3, service.invocationCount);
+    }
+
+    protected Message createRequest(String correlationID) throws Exception {
+        LingoInvocation invocation = new LingoInvocation("getAge", new Class[0], new Object[0], new MethodMetadata(false));
+        Message request = session.createObjectMessage(invocation);
+        request.setJMSCorrelationID(correlationID);
+        request.setJMSReplyTo(replyTo);
+        return request;
+    }
+
+    protected void assertReply(String correlationID) throws Exception {
+        Message reply = consumer.receive(5000);
+        assertNotNull("Should have received a reply", reply);
+        assertEquals(correlationID, reply.getJMSCorrelationID());
+        Marshaller marshaller = exporter.getMarshaller();
+        RemoteInvocationResult result = marshaller.extractInvocationResult(reply);
+        assertEquals(new Integer(99), result.getValue());
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(service);
+        exporter.setConnectionFactory(connectionFactory);
+        exporter.setMaximumCachedReplies(100);
+        exporter.afterPropertiesSet();
+
+        session = createSession();
+        replyTo = session.createTemporaryQueue();
+        consumer = session.createConsumer(replyTo);
+    }
+
+    protected void tearDown() throws Exception {
+        if (exporter != null) {
+            exporter.destroy();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+        super.tearDown();
+    }
+
+    protected static class CountingTestBean extends TestBean {
+        private int invocationCount;
+
+        public CountingTestBean() {
+            super("myname", 99);
+        }
+
+        public int getAge() {
+            invocationCount++;
+            return super.getAge();
+        }
+    }
+}
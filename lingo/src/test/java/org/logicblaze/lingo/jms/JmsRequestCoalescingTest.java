@@ -0,0 +1,120 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+import edu.emory.mathcs.backport.java.util.concurrent.atomic.AtomicInteger;
+
+import org.logicblaze.lingo.SimpleMetadataStrategy;
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+import org.logicblaze.lingo.jms.impl.MultiplexingRequestor;
+
+import javax.jms.Session;
+
+import java.util.Collections;
+
+/**
+ * Tests that identical concurrent invocations of cacheable methods share a
+ * single request
+ * 
+ * @version $Revision$
+ */
+public class JmsRequestCoalescingTest extends JmsTestSupport {
+    protected AtomicInteger invocationCount = new AtomicInteger();
+    protected AtomicInteger resultCount = new AtomicInteger();
+    protected JmsServiceExporter exporter;
+    protected JmsProxyFactoryBean pfb;
+    protected ITestBean proxy;
+
+    public void testConcurrentInvocationsShareOneRequest() throws Exception {
+        int threadCount = 10;
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        if (proxy.getAge() == 99) {
+                            resultCount.incrementAndGet();
+                        }
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            };
+            thread.start();
+        }
+        assertTrue("All callers should have completed", done.await(10, TimeUnit.SECONDS));
+
+        assertEquals("results", threadCount, resultCount.get());
+        assertEquals("invocations", 1, invocationCount.get());
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestBean target = new TestBean("myname", 99) {
+            public int getAge() {
+                invocationCount.incrementAndGet();
+                try {
+                    // keep the request in flight while the other callers arrive
+                    Thread.sleep(1000);
+                }
+                catch (InterruptedException e) {
+                    // ignore
+                }
+                return super.getAge();
+            }
+        };
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(target);
+        exporter.setConnectionFactory(connectionFactory);
+        exporter.afterPropertiesSet();
+
+        Session session = createSession();
+        session.createConsumer(session.createQueue(getDestinationName())).setMessageListener(exporter);
+
+        SimpleMetadataStrategy metadataStrategy = new SimpleMetadataStrategy(true);
+        metadataStrategy.setCacheableMethods(Collections.singleton("getAge"));
+
+        JmsProducer producer = createJmsProducer();
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(ITestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setMetadataStrategy(metadataStrategy);
+        pfb.setCoalesceRequests(true);
+        pfb.setRequestor(new MultiplexingRequestor(connection, session, producer.getMessageProducer(), session.createQueue(getDestinationName()), null, false));
+        pfb.afterPropertiesSet();
+        proxy = (ITestBean) pfb.getObject();
+    }
+
+    protected void tearDown() throws Exception {
+        if (pfb != null) {
+            pfb.destroy();
+        }
+        if (exporter != null) {
+            exporter.destroy();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+        super.tearDown();
+    }
+}
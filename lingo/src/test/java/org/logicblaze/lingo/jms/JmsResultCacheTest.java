@@ -0,0 +1,166 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import org.logicblaze.lingo.SimpleMetadataStrategy;
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+import org.logicblaze.lingo.jms.impl.MultiplexingRequestor;
+import org.logicblaze.lingo.jms.impl.ResultCache;
+
+import javax.jms.Session;
+import javax.jms.Topic;
+
+import java.util.Collections;
+
+/**
+ * Tests that the results of cacheable methods are cached by the client and
+ * invalidated when they expire or when the server publishes an invalidation
+ * 
+ * @version $Revision$
+ */
+public class JmsResultCacheTest extends JmsTestSupport {
+    protected CountingTestBean service = new CountingTestBean();
+    protected JmsServiceExporter exporter;
+    protected JmsProxyFactoryBean pfb;
+    protected SimpleMetadataStrategy metadataStrategy;
+    protected ITestBean proxy;
+
+    public void testRepeatedCallsAreServedFromCache() throws Exception {
+        assertEquals(99, proxy.getAge());
+        assertEquals(99, proxy.getAge());
+        assertEquals(99, proxy.getAge());
+
+        assertEquals("invocations", 1, service.invocationCount);
+    }
+
+    public void testMethodsWhichAreNotCacheableAreInvoked() throws Exception {
+        assertEquals("myname", proxy.getName());
+        assertEquals("myname", proxy.getName());
+
+        assertEquals("invocations", 2, service.nameInvocationCount);
+    }
+
+    public void testCachedResultsExpire() throws Exception {
+        metadataStrategy.setCacheTimeToLive(200);
+        createProxy();
+
+        proxy.getAge();
+        Thread.sleep(400);
+        proxy.getAge();
+
+        assertEquals("invocations", 2, service.invocationCount);
+    }
+
+    public void testServerInvalidatesCachedResults() throws Exception {
+        proxy.getAge();
+        assertEquals("cached results", 1, pfb.getResultCache().size());
+
+        exporter.invalidateCachedResults("getAge");
+        for (int i = 0; i < 50 && pfb.getResultCache().size() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("cached results", 0, pfb.getResultCache().size());
+
+        proxy.getAge();
+        assertEquals("invocations", 2, service.invocationCount);
+    }
+
+    public void testInvalidationDuringCallIsNotLost() throws Exception {
+        service.cacheToInvalidate = pfb.getResultCache();
+        assertEquals(99, proxy.getAge());
+        assertEquals("cached results", 0, pfb.getResultCache().size());
+
+        service.cacheToInvalidate = null;
+        proxy.getAge();
+        proxy.getAge();
+        assertEquals("invocations", 2, service.invocationCount);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        Topic topic = createSession().createTopic(getDestinationName() + ".invalidate");
+
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(service);
+        exporter.setConnectionFactory(connectionFactory);
+        exporter.setCacheInvalidationTopic(topic);
+        exporter.afterPropertiesSet();
+
+        Session session = createSession();
+        session.createConsumer(session.createQueue(getDestinationName())).setMessageListener(exporter);
+
+        metadataStrategy = new SimpleMetadataStrategy(true);
+        metadataStrategy.setCacheableMethods(Collections.singleton("getAge"));
+        createProxy();
+    }
+
+    protected void createProxy() throws Exception {
+        if (pfb != null) {
+            pfb.destroy();
+        }
+        Session session = createSession();
+        JmsProducer producer = createJmsProducer();
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(ITestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setMetadataStrategy(metadataStrategy);
+        pfb.setConnectionFactory(connectionFactory);
+        pfb.setCacheInvalidationTopic(exporter.getCacheInvalidationTopic());
+        pfb.setRequestor(new MultiplexingRequestor(connection, session, producer.getMessageProducer(), session.createQueue(getDestinationName()), null, false));
+        pfb.afterPropertiesSet();
+        proxy = (ITestBean) pfb.getObject();
+    }
+
+    protected void tearDown() throws Exception {
+        if (pfb != null) {
+            pfb.destroy();
+        }
+        if (exporter != null) {
+            exporter.destroy();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+        super.tearDown();
+    }
+
+    protected static class CountingTestBean extends TestBean {
+        private int invocationCount;
+        private int nameInvocationCount;
+        private volatile ResultCache cacheToInvalidate;
+
+        public CountingTestBean() {
+            super("myname", 99);
+        }
+
+        public synchronized int getAge() {
+            invocationCount++;
+            if (cacheToInvalidate != null) {
+                cacheToInvalidate.invalidate("getAge");
+            }
+            return super.getAge();
+        }
+
+        public synchronized String getName() {
+            nameInvocationCount++;
+            return super.getName();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+import org.logicblaze.lingo.jms.impl.MultiplexingRequestor;
+import org.logicblaze.lingo.jms.impl.ReplyDispatcher;
+
+/**
+ * Tests that proxies can consume their responses from a shared reply queue
+ * 
+ * @version $Revision$
+ */
+public class JmsSharedReplyQueueTest extends JmsTestSupport {
+    protected JmsServiceExporter exporter;
+    protected JmsProxyFactoryBean[] factoryBeans = new JmsProxyFactoryBean[3];
+
+    public void testProxiesShareReplyDispatcher() throws Exception {
+        ReplyDispatcher dispatcher = getReplyDispatcher(factoryBeans[0]);
+        assertNotNull("should use a reply dispatcher", dispatcher);
+        assertEquals("registrations", factoryBeans.length, dispatcher.getRegistrationCount());
+
+        for (int i = 0; i < factoryBeans.length; i++) {
+            assertSame(dispatcher, getReplyDispatcher(factoryBeans[i]));
+            ITestBean proxy = (ITestBean) factoryBeans[i].getObject();
+            assertEquals(99, proxy.getAge());
+        }
+
+        for (int i = 0; i < factoryBeans.length; i++) {
+            factoryBeans[i].destroy();
+            factoryBeans[i] = null;
+        }
+        assertEquals("registrations", 0, dispatcher.getRegistrationCount());
+    }
+
+    public void testNewDispatcherCreatedAfterLastProxyDestroyed() throws Exception {
+        ReplyDispatcher dispatcher = getReplyDispatcher(factoryBeans[0]);
+        for (int i = 0; i < factoryBeans.length; i++) {
+            factoryBeans[i].destroy();
+            factoryBeans[i] = null;
+        }
+
+        factoryBeans[0] = createProxyFactoryBean();
+        assertNotSame("closed dispatcher should be replaced", dispatcher, getReplyDispatcher(factoryBeans[0]));
+        ITestBean proxy = (ITestBean) factoryBeans[0].getObject();
+        assertEquals(99, proxy.getAge());
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(new TestBean("myname", 99));
+        exporter.setConnectionFactory(connectionFactory);
+        exporter.setDestination(new ActiveMQQueue(getDestinationName()));
+        exporter.afterPropertiesSet();
+
+        for (int i = 0; i < factoryBeans.length; i++) {
+            factoryBeans[i] = createProxyFactoryBean();
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        for (int i = 0; i < factoryBeans.length; i++) {
+            if (factoryBeans[i] != null) {
+                factoryBeans[i].destroy();
+            }
+        }
+        exporter.destroy();
+        super.tearDown();
+    }
+
+    protected JmsProxyFactoryBean createProxyFactoryBean() throws Exception {
+        JmsProxyFactoryBean pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(ITestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setConnectionFactory(connectionFactory);
+        pfb.setDestination(new ActiveMQQueue(getDestinationName()));
+        pfb.setSharedReplyQueue(true);
+        pfb.afterPropertiesSet();
+        return pfb;
+    }
+
+    protected ReplyDispatcher getReplyDispatcher(JmsProxyFactoryBean pfb) {
+        return ((MultiplexingRequestor) pfb.getRequestor()).getReplyDispatcher();
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import edu.emory.mathcs.backport.java.util.concurrent.CountDownLatch;
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+import org.logicblaze.lingo.ResultCallback;
+import org.logicblaze.lingo.ResultIterator;
+import org.logicblaze.lingo.beans.IStreamingTestBean;
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+import org.logicblaze.lingo.jms.impl.MultiplexingRequestor;
+
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.Topic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests streaming the results of invoking a method on many servers over a
+ * topic
+ * 
+ * @version $Revision$
+ */
+public class JmsStreamingTopicTest extends JmsTestSupport {
+    protected int serverCount = 3;
+    protected JmsProxyFactoryBean pfb;
+    protected IStreamingTestBean proxy;
+
+    public void testIterateOverResults() throws Exception {
+        ResultIterator iter = proxy.getName();
+        List names = new ArrayList();
+        while (iter.hasNext()) {
+            names.add(iter.next());
+        }
+        Collections.sort(names);
+        assertEquals("names: " + names, serverCount, names.size());
+        for (int i = 0; i < serverCount; i++) {
+            assertEquals("server" + i, names.get(i));
+        }
+    }
+
+    public void testCancelIteration() throws Exception {
+        ResultIterator iter = proxy.getName();
+        assertTrue(iter.hasNext());
+        assertNotNull(iter.next());
+        iter.cancel();
+        assertFalse(iter.hasNext());
+    }
+
+    public void testCallbackReceivesEachResult() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(serverCount);
+        final List ages = Collections.synchronizedList(new ArrayList());
+        proxy.getAge(new ResultCallback() {
+            public void onResult(Object value) {
+                ages.add(value);
+                latch.countDown();
+            }
+
+            public void onException(Throwable exception) {
+                fail("Caught: " + exception);
+            }
+        });
+        assertTrue("Should have received all results but got: " + ages, latch.await(5, TimeUnit.SECONDS));
+        assertEquals(serverCount, ages.size());
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        Session session = createSession();
+        Topic topic = session.createTopic(getDestinationName());
+        for (int i = 0; i < serverCount; i++) {
+            JmsServiceExporter exporter = new JmsServiceExporter();
+            exporter.setServiceInterface(ITestBean.class);
+            exporter.setService(new TestBean("server" + i, i));
+            exporter.setConnectionFactory(connectionFactory);
+            exporter.afterPropertiesSet();
+
+            MessageConsumer consumer = createSession().createConsumer(topic);
+            consumer.setMessageListener(exporter);
+        }
+
+        JmsProducer producer = createJmsProducer();
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(IStreamingTestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setRequestor(new MultiplexingRequestor(connection, session, producer.getMessageProducer(), topic, null, false));
+        pfb.setDestination(topic);
+        pfb.setMultipleResponseTimeout(1000);
+        pfb.setConnectionFactory(connectionFactory);
+        pfb.afterPropertiesSet();
+        proxy = (IStreamingTestBean) pfb.getObject();
+    }
+
+    protected void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        super.tearDown();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import edu.emory.mathcs.backport.java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.logicblaze.lingo.SimpleMetadataStrategy;
+import org.logicblaze.lingo.beans.ITestBean;
+import org.logicblaze.lingo.beans.TestBean;
+import org.logicblaze.lingo.jms.impl.TransactedBatchRequestor;
+
+import javax.jms.DeliveryMode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests that one way invocations sent on a transacted session are only
+ * delivered when the batch is committed
+ * 
+ * @version $Revision$
+ */
+public class JmsTransactedBatchTest extends JmsTestSupport {
+    protected List ages = Collections.synchronizedList(new ArrayList());
+    protected JmsServiceExporter exporter;
+    protected JmsProxyFactoryBean pfb;
+    protected TransactedBatchRequestor requestor;
+    protected ITestBean proxy;
+
+    public void testMessagesAreCommittedWhenBatchIsFull() throws Exception {
+        createProxy(4, 0);
+        for (int i = 0; i < 5; i++) {
+            proxy.setAge(i);
+        }
+        waitForAges(4);
+        assertEquals("commit count", 1, requestor.getCommitCount());
+        assertEquals("pending count", 1, requestor.getPendingCount());
+
+        Thread.sleep(500);
+        assertEquals("ages: " + ages, 4, ages.size());
+
+        requestor.flush();
+        waitForAges(5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(new Integer(i), ages.get(i));
+        }
+    }
+
+    public void testMessagesAreCommittedAfterCommitInterval() throws Exception {
+        createProxy(100, 200);
+        proxy.setAge(1);
+        proxy.setAge(2);
+
+        assertEquals(Boolean.TRUE, requestor.getCommitFuture().get(5, TimeUnit.SECONDS));
+        assertEquals("commit count", 1, requestor.getCommitCount());
+        waitForAges(2);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestBean target = new TestBean("myname", 99) {
+            public void setAge(int age) {
+                super.setAge(age);
+                ages.add(new Integer(age));
+            }
+        };
+        exporter = new JmsServiceExporter();
+        exporter.setServiceInterface(ITestBean.class);
+        exporter.setService(target);
+        exporter.setConnectionFactory(connectionFactory);
+        exporter.setDestination(new ActiveMQQueue(getDestinationName()));
+        exporter.afterPropertiesSet();
+    }
+
+    protected void createProxy(int commitSize, long commitInterval) throws Exception {
+        JmsProducerConfig producerConfig = new JmsProducerConfig();
+        producerConfig.setTransactedMode(true);
+        producerConfig.setDeliveryMode(DeliveryMode.PERSISTENT);
+        requestor = TransactedBatchRequestor.newInstance(connectionFactory, producerConfig, new ActiveMQQueue(getDestinationName()),
+                commitSize, commitInterval);
+
+        pfb = new JmsProxyFactoryBean();
+        pfb.setServiceInterface(ITestBean.class);
+        pfb.setServiceUrl("http://myurl");
+        pfb.setMetadataStrategy(new SimpleMetadataStrategy(true));
+        pfb.setRequestor(requestor);
+        pfb.afterPropertiesSet();
+        proxy = (ITestBean) pfb.getObject();
+    }
+
+    protected void tearDown() throws Exception {
+        if (pfb != null) {
+            pfb.destroy();
+        }
+        exporter.destroy();
+        if (connection != null) {
+            connection.close();
+        }
+        super.tearDown();
+    }
+
+    protected void waitForAges(int count) throws InterruptedException {
+        for (int i = 0; i < 50 && ages.size() < count; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("ages: " + ages, count, ages.size());
+    }
+}
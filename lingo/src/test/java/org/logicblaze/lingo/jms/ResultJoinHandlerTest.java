@@ -0,0 +1,124 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms;
+
+import org.logicblaze.lingo.DefaultResultJoinStrategy;
+import org.logicblaze.lingo.jms.impl.ResultJoinHandler;
+import org.logicblaze.lingo.jms.marshall.DefaultMarshaller;
+import org.springframework.remoting.RemoteAccessException;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ */
+public class ResultJoinHandlerTest extends TestCase {
+    protected DefaultResultJoinStrategy strategy = new DefaultResultJoinStrategy();
+    protected ResultJoinHandler handler;
+
+    public void testUnblocksAsSoonAsEnoughResponsesArrive() throws Exception {
+        strategy.setMinimumResults(2);
+        strategy.setTimeout(10000);
+        handler = createHandler();
+
+        sendResponses(2, 100);
+
+        long start = System.currentTimeMillis();
+        RemoteInvocationResult result = handler.waitForResult();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(2, ((List) result.getValue()).size());
+        assertTrue("Should not have waited for the timeout but waited: " + elapsed, elapsed < 5000);
+    }
+
+    public void testUnblocksAtTimeoutWithPartialResults() throws Exception {
+        strategy.setMinimumResults(3);
+        strategy.setTimeout(700);
+        handler = createHandler();
+        handler.setTimeout(5000);
+
+        sendResponses(1, 50);
+
+        RemoteInvocationResult result = handler.waitForResult();
+        long elapsed = handler.getWaitTime();
+
+        assertEquals(1, ((List) result.getValue()).size());
+        assertTrue("Should have waited for the timeout but waited: " + elapsed, elapsed >= 700);
+        assertTrue("Should have unblocked at the timeout but waited: " + elapsed, elapsed < 3000);
+    }
+
+    public void testFailsAtResponseTimeoutWhenNoResponsesArrive() throws Exception {
+        strategy.setTimeout(10000);
+        handler = createHandler();
+        handler.setTimeout(5000);
+        handler.setResponseTimeout(300);
+
+        RemoteInvocationResult result = handler.waitForResult();
+        long elapsed = handler.getWaitTime();
+
+        assertTrue("Should have failed but was: " + result.getValue(), result.getException() instanceof RemoteAccessException);
+        assertTrue("Should have waited for the timeout but waited: " + elapsed, elapsed >= 300);
+        assertTrue("Should have given up at the timeout but waited: " + elapsed, elapsed < 3000);
+    }
+
+    public void testSlowFirstResponseIsNotTreatedAsAFailure() throws Exception {
+        strategy.setTimeout(100);
+        handler = createHandler();
+        handler.setResponseTimeout(5000);
+
+        sendResponses(1, 500);
+
+        RemoteInvocationResult result = handler.waitForResult();
+        assertEquals(1, ((List) result.getValue()).size());
+    }
+
+    protected ResultJoinHandler createHandler() {
+        DefaultMarshaller marshaller = new DefaultMarshaller() {
+            public RemoteInvocationResult extractInvocationResult(Message message) throws JMSException {
+                List value = new ArrayList();
+                value.add("response");
+                return new RemoteInvocationResult(value);
+            }
+        };
+        return new ResultJoinHandler(marshaller, strategy);
+    }
+
+    protected void sendResponses(final int count, final long delay) {
+        Thread thread = new Thread("ResponseSender") {
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        Thread.sleep(delay);
+                        handler.handle(null);
+                    }
+                }
+                catch (Exception e) {
+                    fail("Caught: " + e);
+                }
+            }
+        };
+        thread.start();
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.marshall;
+
+import org.logicblaze.lingo.LingoInvocation;
+import org.logicblaze.lingo.MethodMetadata;
+import org.logicblaze.lingo.jms.JmsTestSupport;
+import org.logicblaze.lingo.jms.Requestor;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.jms.BytesMessage;
+import javax.jms.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @version $Revision$
+ */
+public class BinaryMarshallerTest extends JmsTestSupport {
+    Marshaller marshaller = new BinaryMarshaller();
+
+    public void testMarshallInvocation() throws Exception {
+        Requestor requestor = createRequestor(getDestinationName());
+
+        List list = new ArrayList();
+        list.add("a");
+        list.add(new Integer(1));
+        Map map = new HashMap();
+        map.put("key", new long[] { 1, 2, 3 });
+        Class[] types = new Class[] { String.class, int.class, List.class, Map.class, String[].class };
+        Object[] arguments = new Object[] { "hello", new Integer(42), list, map, new String[] { "x", null } };
+        MethodMetadata metadata = new MethodMetadata(true, new boolean[] { false, false, true, false, false });
+        LingoInvocation invocation = new LingoInvocation("foo", types, arguments, metadata);
+        invocation.addAttribute("myKey", "myValue");
+
+        Message message = marshaller.createRequestMessage(requestor, invocation);
+        assertTrue("Should have created a bytes message: " + message, message instanceof BytesMessage);
+        ((BytesMessage) message).reset();
+
+        RemoteInvocation answer = marshaller.readRemoteInvocation(message);
+        assertTrue("Should be a LingoInvocation: " + answer, answer instanceof LingoInvocation);
+        assertEquals("foo", answer.getMethodName());
+        assertTrue(Arrays.equals(types, answer.getParameterTypes()));
+        assertEquals("hello", answer.getArguments()[0]);
+        assertEquals(new Integer(42), answer.getArguments()[1]);
+        assertEquals(list, answer.getArguments()[2]);
+        long[] longs = (long[]) ((Map) answer.getArguments()[3]).get("key");
+        assertTrue(Arrays.equals(new long[] { 1, 2, 3 }, longs));
+        assertTrue(Arrays.equals(new String[] { "x", null }, (String[]) answer.getArguments()[4]));
+        assertEquals("myValue", answer.getAttribute("myKey"));
+
+        MethodMetadata answerMetadata = ((LingoInvocation) answer).getMetadata();
+        assertTrue(answerMetadata.isOneWay());
+        assertFalse(answerMetadata.isStateful());
+        assertTrue(answerMetadata.isRemoteParameter(2));
+        assertFalse(answerMetadata.isRemoteParameter(1));
+    }
+
+    public void testMarshallResults() throws Exception {
+        Requestor requestor = createRequestor(getDestinationName());
+
+        Message message = marshaller.createResponseMessage(requestor.getSession(), new RemoteInvocationResult("result"), null);
+        ((BytesMessage) message).reset();
+        RemoteInvocationResult result = marshaller.extractInvocationResult(message);
+        assertEquals("result", result.getValue());
+        assertFalse(result.hasException());
+
+        message = marshaller.createResponseMessage(requestor.getSession(), new RemoteInvocationResult(new IllegalStateException("bad")), null);
+        ((BytesMessage) message).reset();
+        result = marshaller.extractInvocationResult(message);
+        assertTrue(result.getException() instanceof IllegalStateException);
+        assertEquals("bad", result.getException().getMessage());
+    }
+
+    public void testCompressionIsNotFlaggedAsDefaultMarshallerCompression() throws Exception {
+        Requestor requestor = createRequestor(getDestinationName());
+        BinaryMarshaller binaryMarshaller = new BinaryMarshaller();
+        binaryMarshaller.setCompressionThreshold(1);
+
+        Message message = binaryMarshaller.createResponseMessage(requestor.getSession(), new RemoteInvocationResult(createLargeValue()), null);
+        assertTrue(message.propertyExists(BinaryMarshaller.BINARY_FORMAT));
+        assertFalse(message.propertyExists(DefaultMarshaller.COMPRESSION));
+        ((BytesMessage) message).reset();
+        assertEquals(createLargeValue(), binaryMarshaller.extractInvocationResult(message).getValue());
+    }
+
+    public void testReadsMessagesOfDefaultMarshaller() throws Exception {
+        Requestor requestor = createRequestor(getDestinationName());
+        DefaultMarshaller defaultMarshaller = new DefaultMarshaller();
+        defaultMarshaller.setCompressionThreshold(1);
+
+        Message message = defaultMarshaller.createResponseMessage(requestor.getSession(), new RemoteInvocationResult(createLargeValue()), null);
+        assertTrue("Should have created a bytes message: " + message, message instanceof BytesMessage);
+        ((BytesMessage) message).reset();
+        assertEquals(createLargeValue(), marshaller.extractInvocationResult(message).getValue());
+
+        defaultMarshaller.setBinaryThreshold(1);
+        message = defaultMarshaller.createResponseMessage(requestor.getSession(), new RemoteInvocationResult(new byte[] { 1, 2, 3 }), null);
+        ((BytesMessage) message).reset();
+        byte[] data = (byte[]) marshaller.extractInvocationResult(message).getValue();
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, data));
+    }
+
+    public void testContainersKeepReferenceIdentity() throws Exception {
+        Map shared = new HashMap();
+        shared.put("key", "value");
+        List list = new ArrayList();
+        list.add(shared);
+        list.add(shared);
+        list.add(list);
+        list.add(new Object[] { shared });
+
+        TypeCodecRegistry registry = new TypeCodecRegistry();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        registry.writeObject(out, list);
+        out.close();
+
+        List answer = (List) registry.readObject(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+        assertEquals(4, answer.size());
+        assertEquals(shared, answer.get(0));
+        assertSame(answer.get(0), answer.get(1));
+        assertSame(answer, answer.get(2));
+        assertSame(answer.get(0), ((Object[]) answer.get(3))[0]);
+    }
+
+    protected String createLargeValue() {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < 100; i++) {
+            buffer.append("hello world ");
+        }
+        return buffer.toString();
+    }
+}
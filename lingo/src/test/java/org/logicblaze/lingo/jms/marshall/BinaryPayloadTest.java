@@ -0,0 +1,110 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.marshall;
+
+import org.logicblaze.lingo.LingoInvocation;
+import org.logicblaze.lingo.MethodMetadata;
+import org.logicblaze.lingo.jms.JmsTestSupport;
+import org.logicblaze.lingo.jms.Requestor;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.jms.BytesMessage;
+import javax.jms.Message;
+import javax.jms.ObjectMessage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Tests that large binary arguments and results are written directly into the
+ * body of a {@link BytesMessage}
+ * 
+ * @version $Revision$
+ */
+public class BinaryPayloadTest extends JmsTestSupport {
+    DefaultMarshaller marshaller = new DefaultMarshaller();
+
+    public void testByteArrayArgument() throws Exception {
+        Requestor requestor = createRequestor(getDestinationName());
+        byte[] data = createData(5000);
+        Class[] types = new Class[] { String.class, byte[].class };
+        LingoInvocation invocation = new LingoInvocation("store", types, new Object[] { "doc.pdf", data }, new MethodMetadata(false));
+
+        Message message = marshaller.createRequestMessage(requestor, invocation);
+        assertTrue("Should have created a bytes message: " + message, message instanceof BytesMessage);
+        assertSame("The arguments should be restored", data, invocation.getArguments()[1]);
+        ((BytesMessage) message).reset();
+
+        RemoteInvocation answer = marshaller.readRemoteInvocation(message);
+        assertEquals("store", answer.getMethodName());
+        assertEquals("doc.pdf", answer.getArguments()[0]);
+        assertTrue(Arrays.equals(data, (byte[]) answer.getArguments()[1]));
+    }
+
+    public void testByteBufferArgument() throws Exception {
+        Requestor requestor = createRequestor(getDestinationName());
+        ByteBuffer buffer = ByteBuffer.wrap(createData(100));
+        buffer.position(10);
+        Class[] types = new Class[] { ByteBuffer.class };
+        LingoInvocation invocation = new LingoInvocation("store", types, new Object[] { buffer }, new MethodMetadata(false));
+
+        Message message = marshaller.createRequestMessage(requestor, invocation);
+        assertTrue("Should have created a bytes message: " + message, message instanceof BytesMessage);
+        assertEquals("The position of the buffer should not change", 10, buffer.position());
+        ((BytesMessage) message).reset();
+
+        RemoteInvocation answer = marshaller.readRemoteInvocation(message);
+        assertEquals(buffer, answer.getArguments()[0]);
+    }
+
+    public void testBinaryResults() throws Exception {
+        Requestor requestor = createRequestor(getDestinationName());
+        byte[] data = createData(5000);
+
+        Message message = marshaller.createResponseMessage(requestor.getSession(), new RemoteInvocationResult(data), null);
+        assertTrue("Should have created a bytes message: " + message, message instanceof BytesMessage);
+        ((BytesMessage) message).reset();
+        assertTrue(Arrays.equals(data, (byte[]) marshaller.extractInvocationResult(message).getValue()));
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        message = marshaller.createResponseMessage(requestor.getSession(), new RemoteInvocationResult(buffer), null);
+        ((BytesMessage) message).reset();
+        assertEquals(buffer, marshaller.extractInvocationResult(message).getValue());
+    }
+
+    public void testSmallByteArraysAreSerialized() throws Exception {
+        Requestor requestor = createRequestor(getDestinationName());
+        Message message = marshaller.createResponseMessage(requestor.getSession(), new RemoteInvocationResult(createData(10)), null);
+        assertTrue("Should have created an object message: " + message, message instanceof ObjectMessage);
+        assertTrue(Arrays.equals(createData(10), (byte[]) marshaller.extractInvocationResult(message).getValue()));
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        marshaller.setBinaryThreshold(1024);
+    }
+
+    protected byte[] createData(int size) {
+        byte[] answer = new byte[size];
+        for (int i = 0; i < size; i++) {
+            answer[i] = (byte) i;
+        }
+        return answer;
+    }
+}
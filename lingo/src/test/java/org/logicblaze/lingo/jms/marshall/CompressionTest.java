@@ -0,0 +1,161 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.jms.marshall;
+
+import org.logicblaze.lingo.LingoInvocation;
+import org.logicblaze.lingo.MethodMetadata;
+import org.logicblaze.lingo.jms.JmsTestSupport;
+import org.logicblaze.lingo.jms.Requestor;
+import org.springframework.remoting.support.RemoteInvocation;
+import org.springframework.remoting.support.RemoteInvocationResult;
+
+import javax.jms.BytesMessage;
+import javax.jms.Message;
+import javax.jms.ObjectMessage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @version $Revision$
+ */
+public class CompressionTest extends JmsTestSupport {
+
+    public void testCodecs() throws Exception {
+        assertCodec(new DeflateCodec());
+        assertCodec(new LzfCodec());
+    }
+
+    public void testCorruptLzfData() throws Exception {
+        try {
+            new LzfCodec().decompress(new byte[] { 0, 0, 0, 5, 0x20, 9 });
+            fail("Should have failed to decompress");
+        }
+        catch (IOException e) {
+            System.out.println("Caught expected exception: " + e);
+        }
+    }
+
+    public void testDefaultMarshaller() throws Exception {
+        DefaultMarshaller marshaller = new DefaultMarshaller();
+        marshaller.setCompressionThreshold(1024);
+        assertMarshall(marshaller, DeflateCodec.NAME);
+
+        marshaller.setCompressionCodec(new LzfCodec());
+        assertMarshall(marshaller, LzfCodec.NAME);
+    }
+
+    public void testSmallPayloadsAreSentUncompressedAsBytes() throws Exception {
+        Requestor requestor = createRequestor(getDestinationName());
+        DefaultMarshaller marshaller = new DefaultMarshaller();
+        marshaller.setCompressionThreshold(1024);
+
+        Message message = marshaller.createRequestMessage(requestor, createInvocation("hello"));
+        assertTrue("small payload should be a bytes message", message instanceof BytesMessage);
+        assertEquals(DefaultMarshaller.NO_COMPRESSION, message.getStringProperty(DefaultMarshaller.COMPRESSION));
+
+        message = marshaller.createRequestMessage(requestor, createInvocation(createText(10000)));
+        assertTrue("large payload should be a bytes message", message instanceof BytesMessage);
+        assertEquals(DeflateCodec.NAME, message.getStringProperty(DefaultMarshaller.COMPRESSION));
+
+        // without compression payloads are sent as object messages
+        message = new DefaultMarshaller().createRequestMessage(requestor, createInvocation("hello"));
+        assertTrue("payload should be an object message", message instanceof ObjectMessage);
+    }
+
+    public void testBinaryMarshaller() throws Exception {
+        BinaryMarshaller marshaller = new BinaryMarshaller();
+        marshaller.setCompressionThreshold(1024);
+        marshaller.setCompressionCodec(new LzfCodec());
+        assertMarshall(marshaller, LzfCodec.NAME);
+    }
+
+    public void testReadWithoutCompressionEnabled() throws Exception {
+        Requestor requestor = createRequestor(getDestinationName());
+        DefaultMarshaller sender = new DefaultMarshaller();
+        sender.setCompressionThreshold(1024);
+        sender.setCompressionCodec(new LzfCodec());
+
+        Message message = sender.createResponseMessage(requestor.getSession(), new RemoteInvocationResult(createText(5000)), null);
+        assertEquals(LzfCodec.NAME, message.getStringProperty(DefaultMarshaller.COMPRESSION));
+        ((BytesMessage) message).reset();
+
+        RemoteInvocationResult result = new DefaultMarshaller().extractInvocationResult(message);
+        assertEquals(createText(5000), result.getValue());
+    }
+
+    protected void assertMarshall(DefaultMarshaller marshaller, String codecName) throws Exception {
+        Requestor requestor = createRequestor(getDestinationName());
+
+        // small payloads are not compressed
+        Message message = marshaller.createRequestMessage(requestor, createInvocation("hello"));
+        String compression = message.getStringProperty(DefaultMarshaller.COMPRESSION);
+        assertTrue("Should not be compressed: " + compression, compression == null || DefaultMarshaller.NO_COMPRESSION.equals(compression));
+        assertEquals("hello", readInvocation(marshaller, message).getArguments()[0]);
+
+        String text = createText(10000);
+        message = marshaller.createRequestMessage(requestor, createInvocation(text));
+        assertEquals(codecName, message.getStringProperty(DefaultMarshaller.COMPRESSION));
+        assertEquals(text, readInvocation(marshaller, message).getArguments()[0]);
+
+        message = marshaller.createResponseMessage(requestor.getSession(), new RemoteInvocationResult(text), null);
+        assertEquals(codecName, message.getStringProperty(DefaultMarshaller.COMPRESSION));
+        if (message instanceof BytesMessage) {
+            ((BytesMessage) message).reset();
+        }
+        assertEquals(text, marshaller.extractInvocationResult(message).getValue());
+    }
+
+    protected RemoteInvocation readInvocation(Marshaller marshaller, Message message) throws Exception {
+        if (message instanceof BytesMessage) {
+            ((BytesMessage) message).reset();
+        }
+        return marshaller.readRemoteInvocation(message);
+    }
+
+    protected LingoInvocation createInvocation(String argument) {
+        return new LingoInvocation("foo", new Class[] { String.class }, new Object[] { argument }, new MethodMetadata(false));
+    }
+
+    protected String createText(int size) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; buffer.length() < size; i++) {
+            buffer.append("Some repetitive text ").append(i % 100).append(' ');
+        }
+        return buffer.toString();
+    }
+
+    protected void assertCodec(CompressionCodec codec) throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            byte[] data = new byte[random.nextInt(20000)];
+            int range = 1 + random.nextInt(256);
+            for (int j = 0; j < data.length; j++) {
+                if (j > 0 && random.nextInt(3) == 0) {
+                    data[j] = data[random.nextInt(j)];
+                }
+                else {
+                    data[j] = (byte) random.nextInt(range);
+                }
+            }
+            byte[] compressed = codec.compress(data);
+            assertTrue("Codec: " + codec.getName() + " failed to decompress " + data.length + " bytes", Arrays.equals(data, codec.decompress(compressed)));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * 
+ * Copyright 2005 LogicBlaze, Inc. http://www.logicblaze.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ **/
+package org.logicblaze.lingo.util;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 
+ * @version $Revision$
+ */
+public class BoundedConcurrentCacheTest extends TestCase {
+    protected BoundedConcurrentCache cache = new BoundedConcurrentCache(3);
+
+    public void testEldestEntriesAreEvicted() throws Exception {
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+        cache.put("d", "4");
+
+        assertEquals("size", 3, cache.size());
+        assertNull("a should have been evicted", cache.get("a"));
+        assertEquals("4", cache.get("d"));
+    }
+
+    public void testReplacingEntriesDoesNotEvict() throws Exception {
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.put("a", "4");
+
+        assertEquals("size", 3, cache.size());
+        assertEquals("4", cache.get("a"));
+        assertEquals("2", cache.get("b"));
+    }
+
+    public void testRemovedKeysAreNotEvictedWhenAddedAgain() throws Exception {
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.remove("a");
+        cache.put("c", "3");
+        cache.put("a", "4");
+        cache.put("d", "5");
+
+        assertEquals("size", 3, cache.size());
+        assertNull("b should have been evicted", cache.get("b"));
+        assertEquals("4", cache.get("a"));
+    }
+
+    public void testPutAllIsBounded() throws Exception {
+        Map map = new HashMap();
+        for (int i = 0; i < 10; i++) {
+            map.put("key" + i, "value" + i);
+        }
+        cache.putAll(map);
+
+        assertEquals("size", 3, cache.size());
+    }
+
+    public void testViewsAreReadOnly() throws Exception {
+        cache.put("a", "1");
+        try {
+            cache.keySet().remove("a");
+            fail("Should not be able to remove through a view");
+        }
+        catch (UnsupportedOperationException e) {
+            System.out.println("Caught expected exception: " + e);
+        }
+        assertEquals("1", cache.get("a"));
+    }
+}
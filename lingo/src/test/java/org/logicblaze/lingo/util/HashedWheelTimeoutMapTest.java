@@ -0,0 +1,44 @@
+/**
+ * 
+ * Copyright 2005 LogicBlaze, Inc. http://www.logicblaze.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ * 
+ **/
+package org.logicblaze.lingo.util;
+
+/**
+ * 
+ * @version $Revision$
+ */
+public class HashedWheelTimeoutMapTest extends TimeoutMapTest {
+
+    public void testRemoveAndReplace() throws Exception {
+        map.put("a", "first", timeout);
+        map.put("a", "second", timeout);
+        assertEntry("a", "second");
+
+        map.remove("a");
+        assertEntry("a", null);
+
+        map.put("b", "value", timeout / 10);
+        Thread.sleep(timeout);
+        map.purge();
+        assertEntry("b", null);
+        assertEquals("keys: " + map.getKeys(), 0, map.getKeys().length);
+    }
+
+    protected TimeoutMap createTimeoutMap() {
+        return new HashedWheelTimeoutMap(executor, 200);
+    }
+}
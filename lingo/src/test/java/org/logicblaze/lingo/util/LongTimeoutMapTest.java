@@ -0,0 +1,85 @@
+/**
+ *
+ * Copyright 2005 LogicBlaze, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **/
+package org.logicblaze.lingo.util;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * @version $Revision$
+ */
+public class LongTimeoutMapTest extends TestCase {
+    protected LongTimeoutMap map = new LongTimeoutMap(null, 200L, 4, 2);
+    protected long timeout = 500L;
+
+    public void testPutGetAndRemove() throws Exception {
+        map.put(1, "first", timeout);
+        map.put(1, "second", timeout);
+        assertEntry(1, "second");
+        assertEquals(1, map.size());
+
+        assertEquals("second", map.remove(1));
+        assertEntry(1, null);
+        assertNull(map.remove(1));
+        assertEquals(0, map.size());
+    }
+
+    public void testManyEntriesSurviveResizeAndRemoval() throws Exception {
+        int count = 10000;
+        for (long i = 1; i <= count; i++) {
+            map.put(i, new Long(i), timeout * 100);
+        }
+        assertEquals(count, map.size());
+
+        // remove every other entry so that entries are shifted back
+        for (long i = 1; i <= count; i += 2) {
+            assertEquals(new Long(i), map.remove(i));
+        }
+        assertEquals(count / 2, map.size());
+        for (long i = 1; i <= count; i++) {
+            assertEntry(i, (i % 2 == 0) ? new Long(i) : null);
+        }
+    }
+
+    public void testExpiredEntriesArePurged() throws Exception {
+        map.put(1, "quick", timeout / 10);
+        map.put(2, "long", timeout * 100);
+        Thread.sleep(timeout);
+
+        assertEquals("purged", 1, map.purge());
+        assertEntry(1, null);
+        assertEntry(2, "long");
+        assertEquals(1, map.size());
+    }
+
+    public void testAccessRefreshesExpiryTime() throws Exception {
+        map.put(1, "value", timeout);
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(timeout / 2);
+            map.purge();
+            assertEntry(1, "value");
+        }
+        Thread.sleep(timeout * 2);
+        map.purge();
+        assertEntry(1, null);
+    }
+
+    protected void assertEntry(long key, Object expected) {
+        assertEquals("value for: " + key, expected, map.get(key));
+    }
+}
@@ -26,7 +26,7 @@ import junit.framework.TestCase;
  */
 public class TimeoutMapTest extends TestCase {
     ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
-    protected DefaultTimeoutMap map = new DefaultTimeoutMap(executor, 200);
+    protected TimeoutMap map = createTimeoutMap();
     protected long timeout = 500L;
     protected int loop = 10;
 
@@ -66,6 +66,10 @@ public class TimeoutMapTest extends TestCase {
 
     }
     
+    protected TimeoutMap createTimeoutMap() {
+        return new DefaultTimeoutMap(executor, 200);
+    }
+
     protected void assertEntry(Object key, Object expected) {
         Object actual = map.get(key);
         assertEquals("value for: " + key, expected, actual);